@@ -0,0 +1,276 @@
+package com.jimnastic.modernscramblednet;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.CellDirection;
+
+/**
+ * The data blips which flow out from the server along the connected network.
+ * <p>
+ * A blip moving in towards the centre of a tile is incoming; one moving out is outgoing. At each
+ * step, an incoming blip becomes outgoing on all the tile's other connections, and an outgoing
+ * blip passes on to the next tile, if that tile connects back. Each connection direction can have
+ * one blip on it, so a tile's blips are two bitmasks of directions. The server sends out a new
+ * wave of blips every few steps.
+ * <p>
+ * Blips only ever exist on the part of the network connected to the server, so rather than
+ * sweep the whole board we keep a list of the tiles which have blips, and step, bound and draw
+ * only those. The cost of a frame follows the number of blips in flight, not the board area.
+ * <p>
+ * The blips belong to the simulation thread, which steps them, and copies them into a
+ * BoardSnapshot at the end of each step; the renderer bounds and draws them from the snapshot.
+ */
+final class BlipField
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty blip field.
+     *
+     * @param board The board the blips flow over. Its grid size must not change.
+     */
+    BlipField(Board board)
+    {
+        this.board = board;
+        gridWidth = board.getGridWidth();
+        int tiles = gridWidth * board.getGridHeight();
+        incoming = new byte[tiles];
+        outgoing = new byte[tiles];
+        listed = new int[tiles];
+        active = new int[tiles];
+        spare = new int[tiles];
+        transfer = new byte[tiles];
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Drop all the blips; e.g. for a new game.
+     */
+    void reset()
+    {
+        for (int i = 0; i < activeCount; ++i)
+        {
+            incoming[active[i]] = 0;
+            outgoing[active[i]] = 0;
+        }
+        activeCount = 0;
+        ++listGen;
+    }
+
+    /**
+     * Drop the blips on one tile; e.g. because it has started rotating. The tile stays in the
+     * active list until the next step, but has nothing to draw.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     */
+    void clear(int x, int y)
+    {
+        int tile = board.index(x, y);
+        incoming[tile] = 0;
+        outgoing[tile] = 0;
+    }
+
+    /**
+     * Move all the blips on one step, i.e. half a cell width. This steps them from whichever
+     * connection leg they're on to the next one.
+     *
+     * @param count Blip generation count; the server sends out new blips every few generations.
+     */
+    void step(int count)
+    {
+        // The server joins the active tiles when it sends out a wave
+        int root = board.index(board.getRootX(), board.getRootY());
+        boolean emit = count % EMIT_STEPS == 0;
+        if (emit && listed[root] != listGen)
+            active[activeCount++] = root;
+
+        // Turn each tile's incoming blips into outgoing ones on its other connections, and note
+        // its outgoing blips which pass on to the next tile. We don't pass them on yet, as the
+        // next tile may still be to do.
+        for (int i = 0; i < activeCount; ++i)
+        {
+            int tile = active[i];
+            int links = links(tile);
+            transfer[i] = (byte) (outgoing[tile] & links);
+            int in = incoming[tile];
+            int out = in != 0 ? links & ~in : 0;
+            if (emit && tile == root)
+                out |= links;
+            outgoing[tile] = (byte) out;
+            incoming[tile] = 0;
+        }
+
+        // Now pass the blips on, building the new list of active tiles as we go.
+        int[] next = spare;
+        int nextCount = 0;
+        int gen = ++listGen;
+        for (int i = 0; i < activeCount; ++i)
+        {
+            int tile = active[i];
+            if (outgoing[tile] != 0 && listed[tile] != gen)
+            {
+                listed[tile] = gen;
+                next[nextCount++] = tile;
+            }
+
+            int moving = transfer[i];
+            if (moving == 0)
+                continue;
+            int x = tile % gridWidth;
+            int y = tile / gridWidth;
+            for (CellDirection d : CellDirection.cardinals)
+            {
+                if ((moving & d.ordinal()) == 0)
+                    continue;
+                int n = board.next(x, y, d);
+                if (n < 0)
+                    continue;
+                CellDirection back = d.reverse();
+                if ((links(n) & back.ordinal()) == 0)
+                    continue;
+                incoming[n] |= (byte) back.ordinal();
+                if (listed[n] != gen)
+                {
+                    listed[n] = gen;
+                    next[nextCount++] = n;
+                }
+            }
+        }
+
+        spare = active;
+        active = next;
+        activeCount = nextCount;
+    }
+
+    /**
+     * Copy the blips into a snapshot for the renderer. Only the tiles which have blips are
+     * copied.
+     *
+     * @param snap The snapshot to fill in.
+     */
+    void capture(BoardSnapshot snap)
+    {
+        int n = 0;
+        for (int i = 0; i < activeCount; ++i)
+        {
+            int tile = active[i];
+            if (incoming[tile] == 0 && outgoing[tile] == 0)
+                continue;
+            snap.blipTiles[n] = tile;
+            snap.blipIn[n] = incoming[tile];
+            snap.blipOut[n] = outgoing[tile];
+            ++n;
+        }
+        snap.blipCount = n;
+    }
+
+    /**
+     * Add the area of the screen covered by the blips in a snapshot to a rectangle.
+     *
+     * @param snap   The snapshot to bound; its cells give the tiles' screen positions.
+     * @param bounds Rectangle to add the blips' area to.
+     */
+    static void addBounds(BoardSnapshot snap, Rect bounds)
+    {
+        Cell[][] cells = snap.cells;
+        int w = snap.gridWidth;
+        for (int i = 0; i < snap.blipCount; ++i)
+        {
+            int tile = snap.blipTiles[i];
+            cells[tile % w][tile / w].addBlipBounds(bounds, snap.blipIn[i], snap.blipOut[i]);
+        }
+    }
+
+    /**
+     * Draw all the blips in a snapshot, in one pass after the cells, so that blips passing from
+     * one cell to the next aren't overdrawn by the next cell. The sprites all come from the one
+     * atlas, so a hardware canvas can batch them.
+     *
+     * @param snap   The snapshot to draw; its cells draw each tile's blips.
+     * @param canvas Canvas to draw into.
+     * @param frac   Fractional position of the blips along the connection legs they're on.
+     * @param noise  Offset into the terminal data noise table, which should move on every frame.
+     * @return The number of blips drawn.
+     */
+    static int draw(BoardSnapshot snap, Canvas canvas, float frac, int noise)
+    {
+        Cell[][] cells = snap.cells;
+        int w = snap.gridWidth;
+        int drawn = 0;
+        for (int i = 0; i < snap.blipCount; ++i)
+        {
+            int tile = snap.blipTiles[i];
+            int in = snap.blipIn[i];
+            int out = snap.blipOut[i];
+            cells[tile % w][tile / w].doDrawBlips(canvas, frac, in, out, noise);
+            drawn += Integer.bitCount(in) + Integer.bitCount(out);
+        }
+        return drawn;
+    }
+
+    /**
+     * Get the number of tiles which have blips.
+     *
+     * @return The number of active tiles.
+     */
+    int activeTiles()
+    {
+        return activeCount;
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Get the directions a tile is connected in right now; none if it's rotating.
+     *
+     * @param tile Index of the tile.
+     * @return Connection bits, as in CellDirection.ordinal().
+     */
+    private int links(int tile)
+    {
+        int x = tile % gridWidth;
+        int y = tile / gridWidth;
+        if (board.isRotating(x, y))
+            return 0;
+        return board.dirs(x, y).ordinal() & 0x0f;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final int EMIT_STEPS = 6;   // Steps between waves of blips from the server
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final Board board;          // The board the blips flow over
+    private final int gridWidth;        // Width of the board's grid, for tile indices
+
+    // Each tile's blips: bitmasks of the directions with incoming and outgoing blips
+    private final byte[] incoming;
+    private final byte[] outgoing;
+
+    // The tiles which have blips, and a spare list to build the next step's in
+    private int[] active;
+    private int[] spare;
+    private int activeCount = 0;
+
+    // Per active tile, the outgoing blips to pass on in the current step
+    private final byte[] transfer;
+
+    // Per tile, the generation of the active list it was last added to
+    private final int[] listed;
+    private int listGen = 1;
+}
@@ -0,0 +1,94 @@
+package com.jimnastic.modernscramblednet;
+
+/**
+ * A copy of everything the renderer needs to draw the board, as of one step of the game logic.
+ * <p>
+ * The simulation thread fills in a snapshot at the end of each step, and publishes it through a
+ * SnapshotBuffer; from then on it doesn't change until the renderer has finished with it. So the
+ * renderer reads the game state without taking any lock, and never sees it half way through a
+ * step. The snapshots are re-used rather than created for each step.
+ * <p>
+ * Each tile's state is kept in arrays indexed by the board's tile index; the blips are kept as a
+ * list of the tiles which have them.
+ */
+final class BoardSnapshot
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty snapshot.
+     *
+     * @param cells The board's cell matrix, which the renderer draws.
+     */
+    BoardSnapshot(Cell[][] cells)
+    {
+        this.cells = cells;
+        gridWidth = cells.length;
+        gridHeight = cells[0].length;
+        int tiles = gridWidth * gridHeight;
+        dirs = new byte[tiles];
+        flags = new byte[tiles];
+        rotateTarget = new float[tiles];
+        rotateStart = new long[tiles];
+        rotateTime = new long[tiles];
+        highlightStart = new long[tiles];
+        blipTiles = new int[tiles];
+        blipIn = new byte[tiles];
+        blipOut = new byte[tiles];
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Tile flags: connected to the server, locked, blind, the server, solved, focused, and
+    // showing a highlight
+    static final int CONNECTED = 0x01;
+    static final int LOCKED = 0x02;
+    static final int BLIND = 0x04;
+    static final int ROOT = 0x08;
+    static final int SOLVED = 0x10;
+    static final int FOCUSED = 0x20;
+    static final int HIGHLIGHT = 0x40;
+
+    // ******************************************************************** //
+    // Public Data.
+    // ******************************************************************** //
+
+    // The cell matrix, and its size
+    final Cell[][] cells;
+    final int gridWidth;
+    final int gridHeight;
+
+    // Number of the step this shows, counting from 1; 0 if it has never been filled in
+    long serial = 0;
+
+    // Simulation time of the step, in ms
+    long time = 0;
+
+    // Per tile: connected directions, as a CellDirection ordinal, and flags
+    final byte[] dirs;
+    final byte[] flags;
+
+    // Per tile rotation: the angle to turn by from the start, 0 if not rotating; the simulation
+    // time it started, or Cell.NOT_STARTED; and the time each quarter turn takes, in ms
+    final float[] rotateTarget;
+    final long[] rotateStart;
+    final long[] rotateTime;
+
+    // Per tile highlight: the simulation time it started, or Cell.NOT_STARTED
+    final long[] highlightStart;
+
+    // Whether the blips are shown; and if so, the tiles which have them, and the directions of
+    // their incoming and outgoing blips, for the first blipCount tiles
+    boolean drawBlips = false;
+    final int[] blipTiles;
+    final byte[] blipIn;
+    final byte[] blipOut;
+    int blipCount = 0;
+
+    // Simulation time in ms at which the blips last moved on
+    long blipsLastAdvance = 0;
+}
@@ -3,6 +3,8 @@ package com.jimnastic.modernscramblednet;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -13,21 +15,37 @@ import android.view.MotionEvent;
 import android.view.WindowManager;
 
 import com.jimnastic.modernscramblednet.MainActivity.Sound;
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.CellDirection;
+import com.jimnastic.netcore.GameRecord;
+import com.jimnastic.netcore.Generator;
+import com.jimnastic.netcore.HintEngine;
+import com.jimnastic.netcore.IntList;
+import com.jimnastic.netcore.MoveLog;
+import com.jimnastic.netcore.PuzzleQueue;
+import com.jimnastic.netcore.Solver;
+import com.jimnastic.netcore.XoshiroRandom;
 
 import org.hermit.android.core.SurfaceRunner;
 
-import java.security.SecureRandom;
-import java.util.EnumMap;
-import java.util.LinkedList;
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * This implements the game board by laying out a grid of Cell objects.
+ * This implements the game board view by laying out a grid of Cell objects over a netcore Board,
+ * which holds the game logic.
  * <p>
  * Unlike the original knetwalk, we have to deal with a physical display whose size can vary
  * dramatically, but which we would like to fill; on the other hand, it may be too small for a
  * "full-sized" game, particularly bearing in mind the minimum size a cell can be and still allow a
  * finger to select it. We therefore put a lot of work into figuring out how big the board should be
+ * <p>
+ * Three threads are involved. The game logic runs on the simulation thread, which is the only
+ * writer of the game state while the game is running; the UI thread sends it the user's input
+ * through a lock-free command queue. At the end of each step, the logic publishes a snapshot of
+ * the state, which the renderer draws from without taking any lock. A new, restored or replayed
+ * game is prepared on the UI thread, without the view's lock, and handed to the logic to start
+ * through the same queue; the lock, which the logic holds for each step, is only taken by the UI
+ * thread briefly, e.g. to save the game.
  */
 public class BoardView
         extends SurfaceRunner
@@ -41,10 +59,6 @@ public class BoardView
     {
         parentApp = parent;
 
-        // Animation delay
-        SurfaceRunner.animationDelay = 20;
-        //setDelay(30);
-
         findMatrix();
 
         // Calculate the size and shape of the cell matrix
@@ -55,33 +69,32 @@ public class BoardView
 
     private void initMatrix()
     {
-        // Create all the cells in the calculated board. In appSize() we will take care of
-        // positioning them. Set the cell grid and root so we have a valid state to save
+        // Create the board, and a view cell for each of its tiles. In appSize() we will take care
+        // of positioning them. The board starts with a valid root so we have a state to save
         Log.i(MainActivity.TAG, "Create board " + gridWidth + "x" + gridHeight);
+        board = new Board(gridWidth, gridHeight);
+        blips = new BlipField(board);
         cellMatrix = new Cell[gridWidth][gridHeight];
         for (int y = 0; y < gridHeight; ++y)
         {
             for (int x = 0; x < gridWidth; ++x)
             {
-                Cell cell = new Cell(x, y);
+                Cell cell = new Cell(board, x, y);
                 cellMatrix[x][y] = cell;
             }
         }
-        rootCell = cellMatrix[0][0];
-
-        // Create the connected flags and connecting cell connectingCells (used in updateConnections())
-        isConnected = new boolean[gridWidth][gridHeight];
+        snapshots = new SnapshotBuffer(cellMatrix);
 
         // Set the initial focus on the root cell
         focusedCell = null;
-        setFocus(rootCell);
+        setFocus(rootCell());
     }
 
     // #4 - Called from MainActivity.onCreate()
     //Enable or disable the network animation
     void setAnimEnable(boolean enable)
     {
-        drawBlips = enable;
+        send(CommandQueue.OP_BLIPS, enable ? 1 : 0);
     }
 
     // ******************************************************************** //
@@ -94,27 +107,23 @@ public class BoardView
      */
     enum Skill
     {
-        // Skill, Menu item ID, brch, does board wrap?, cells with over this many connections are blind
-        NOVICE(R.string.skill_novice, R.id.skill_novice, 2, false, 9),
-        NORMAL(R.string.skill_normal, R.id.skill_normal, 2, false, 9),
-        EXPERT(R.string.skill_expert, R.id.skill_expert, 2, false, 9),
-        MASTER(R.string.skill_master, R.id.skill_master, 3, true, 9),
-        INSANE(R.string.skill_insane, R.id.skill_insane, 3, true, 3);
-
-        Skill(int skillLevelLabel, int skillLevelId, int branches, boolean isBoardWrapped, int bd)
+        // Skill, Menu item ID, game rules
+        NOVICE(R.string.skill_novice, R.id.skill_novice, com.jimnastic.netcore.Skill.NOVICE),
+        NORMAL(R.string.skill_normal, R.id.skill_normal, com.jimnastic.netcore.Skill.NORMAL),
+        EXPERT(R.string.skill_expert, R.id.skill_expert, com.jimnastic.netcore.Skill.EXPERT),
+        MASTER(R.string.skill_master, R.id.skill_master, com.jimnastic.netcore.Skill.MASTER),
+        INSANE(R.string.skill_insane, R.id.skill_insane, com.jimnastic.netcore.Skill.INSANE);
+
+        Skill(int skillLevelLabel, int skillLevelId, com.jimnastic.netcore.Skill skillRules)
         {
             label = skillLevelLabel;
             id = skillLevelId;
-            this.branches = branches;
-            wrapped = isBoardWrapped;
-            blind = bd;
+            rules = skillRules;
         }
 
         public final int label;         // Res. ID of the label for this skill
         public final int id;            // Numeric ID for this skill level
-        public final int branches;      // Max branches off each square; at least 2
-        public final boolean wrapped;   // If true, network wraps around the edges
-        public final int blind;         // Squares with this many or more connections are blind
+        public final com.jimnastic.netcore.Skill rules;    // Branching, wrapping and blind rules
     }
 
     /**
@@ -176,6 +185,37 @@ public class BoardView
         private final int[][] sizes = new int[Skill.values().length][2];
     }
 
+    // ******************************************************************** //
+    // Private Types
+    // ******************************************************************** //
+
+    /**
+     * A game set up on the UI thread, for the game logic to start: a new
+     * puzzle, which may be a recorded game to replay, or a game restored from
+     * saved state. The UI thread does the slow part, building the puzzle or
+     * reading back the state, so that the game logic only has to copy it in.
+     */
+    private static final class GameStart
+    {
+        GameStart(Skill sk)
+        {
+            skill = sk;
+        }
+
+        final Skill skill;                  // Skill level of the game
+
+        PuzzleQueue.Puzzle puzzle = null;   // The puzzle to play; null for a restored game
+
+        GameRecord replay = null;           // The record to replay on the puzzle, if any
+        float replaySpeed = 1;              // The speed to replay it at
+
+        Board board = null;                 // The restored board; null for a new game
+        int[] moveLog = null;               // The saved move history, if any
+        GameRecord record = null;           // The game's restored record, if any
+        Board solution = null;              // The restored solved state, if any
+        HintEngine hints = null;            // Works out hints for the restored game
+    }
+
     // ******************************************************************** //
     // Constructor
     // ******************************************************************** //
@@ -357,7 +397,7 @@ public class BoardView
         }
 
         // Load all the pixmaps for the game tiles etc
-        Cell.initPixmaps(parentApp.getResources(), cellWidth, cellHeight);
+        Cell.initPixmaps(parentApp, cellWidth, cellHeight);
     }
 
     /**
@@ -370,6 +410,7 @@ public class BoardView
     protected void animStart()
     {
         Log.v(MainActivity.TAG, "BoardView.animStart()");
+        sim.start();
     }
 
     /**
@@ -382,6 +423,7 @@ public class BoardView
     protected void animStop()
     {
         Log.v(MainActivity.TAG, "BoardView.animStop()");
+        sim.stop();
     }
 
     //The application is closing down. Clean up any resources
@@ -398,7 +440,7 @@ public class BoardView
 
 
     /**
-     * Set up the board for a new game.
+     * Set up the board for a new game. This is for the UI thread.
      *
      * @param sk Skill level for the game; set the board up accordingly.
      */
@@ -406,357 +448,217 @@ public class BoardView
     {
         Log.v(MainActivity.TAG, "BoardView.setupBoard()");
 
-        // Check if the board size has changed in the settings
-        int oldGridWidth = gridWidth;
-        int oldGridHeight = gridHeight;
-        FindMaximumGridforScreenSize();
-
-        if (gridWidth != oldGridWidth || gridHeight != oldGridHeight)
+        // Check if the board size has changed in the settings. This rebuilds
+        // the board, so it's done holding our lock; it's rare, and quick
+        synchronized (this)
         {
-            Log.i(MainActivity.TAG, "Board size changed, re-initializing matrix");
-            initMatrix();
-            if (lastAppWidth > 0 && lastAppHeight > 0)
-                appSize(lastAppWidth, lastAppHeight, lastAppConfig);
-        }
-
-        autosolveStop();
-        gameSkill = sk;
-
-        // Reset the board for this game
-        resetBoard(sk);
+            int oldGridWidth = gridWidth;
+            int oldGridHeight = gridHeight;
+            FindMaximumGridforScreenSize();
 
-        // Require at least 85% of the cells active
-        int minCells = (int) (boardWidth * boardHeight * 0.85);
-
-        // Loop doing board setup until we get a valid board
-        int tries, cells = 0;
-        for (tries = 0; cells < minCells && tries < 10; ++tries)
-            cells = createNet(sk);
-        Log.i(MainActivity.TAG, "Created net in " + tries + " tries with " + cells + " cells (min " + minCells + ")");
-
-        // Now, save the "solved" state of the board.
-        solvedState = new Bundle();
-        saveBoard(solvedState);
-
-        // Jumble the board. Also, if we're in blind mode, tell the appropriate cells to go blind
-        for (int x = boardStartX; x < boardEndX; x++)
-        {
-            for (int y = boardStartY; y < boardEndY; y++)
+            if (gridWidth != oldGridWidth || gridHeight != oldGridHeight)
             {
-                cellMatrix[x][y].rotate((RandomNumberGenerator.nextInt(4) - 2) * 90);
-                if (cellMatrix[x][y].numDirs() >= sk.blind)
-                    cellMatrix[x][y].setBlind(true);
+                Log.i(MainActivity.TAG, "Board size changed, re-initializing matrix");
+                puzzles.invalidate();
+                initMatrix();
+                if (lastAppWidth > 0 && lastAppHeight > 0)
+                    appSize(lastAppWidth, lastAppHeight, lastAppConfig);
             }
         }
 
-        // Figure out the active connections
-        updateConnections();
-
-        // Invalidate all the cells
-        for (int x = 0; x < gridWidth; x++)
-            for (int y = 0; y < gridHeight; y++)
-                cellMatrix[x][y].invalidate();
-    }
-
-    /**
-     * Reset the board for a given skill level
-     *
-     * @param sk Skill level for the game; set the board up accordingly
-     */
-    private void resetBoard(Skill sk) {
-        // Save the width and height of the playing board for this skill
-        // level, and the board placement within the overall cell grid.
-        boardWidth = screenConfig.getBoardWidth(sk, gridWidth, gridHeight);
-        boardHeight = screenConfig.getBoardHeight(sk, gridWidth, gridHeight);
-        boardStartX = (gridWidth - boardWidth) / 2;
-        boardEndX = boardStartX + boardWidth;
-        boardStartY = (gridHeight - boardHeight) / 2;
-        boardEndY = boardStartY + boardHeight;
-
-        // Reset the cells. If we're wrapped, set the surrounding cells
-        // to None; else Free, to show that there's no wraparound.
-        Log.i("TAG", "Reset board " + gridWidth + "x" + gridHeight);
-        boolean wrap = gameSkill.wrapped;
-        Cell u, d, l, r;
-        for (int x = 0; x < gridWidth; x++) {
-            for (int y = 0; y < gridHeight; y++) {
-                cellMatrix[x][y].reset(wrap ? Cell.CellDirection.NONE : Cell.CellDirection.FREE);
-
-                // Re-calculate who this cell's neighbours are.
-                u = d = l = r = null;
-                if (wrap || y > boardStartY)
-                    u = cellMatrix[x][decr(y, boardStartY, boardEndY)];
-                if (wrap || y < boardEndY - 1)
-                    d = cellMatrix[x][incr(y, boardStartY, boardEndY)];
-                if (wrap || x > boardStartX)
-                    l = cellMatrix[decr(x, boardStartX, boardEndX)][y];
-                if (wrap || x < boardEndX - 1)
-                    r = cellMatrix[incr(x, boardStartX, boardEndX)][y];
-                cellMatrix[x][y].setNeighbours(u, d, l, r);
+        // Take a puzzle from the prefetch queue. If there isn't one ready, create a network with
+        // enough cells in it; the generator builds the candidates in parallel, and if it was
+        // interrupted, we do it here. This is done without our lock, so the current game
+        // carries on meanwhile; the game logic starts the new one when it's ready.
+        Board layout = newBoard(sk);
+        PuzzleQueue.Puzzle puzzle = puzzles.take(layout);
+        if (puzzle == null)
+        {
+            Board net = generator.generate(layout, RandomNumberGenerator);
+            if (net == null)
+            {
+                net = new Board(layout);
+                net.generate(sk.rules, RandomNumberGenerator.nextLong());
             }
+            puzzle = new PuzzleQueue.Puzzle(net);
         }
+
+        GameStart game = new GameStart(sk);
+        game.puzzle = puzzle;
+        startGame(game);
     }
 
     /**
-     * Get the current playing area width. This varies with the skill level.
+     * Create a board for a game, with the playing area this screen has for
+     * the game's skill level. This is for the UI thread.
      *
-     * @return Playing area width in tiles.
+     * @param sk Skill level for the game.
+     * @return The new board; its tiles are all empty.
      */
-    int getBoardWidth()
+    private Board newBoard(Skill sk)
     {
-        return boardWidth;
+        // The board centres the playing area within the overall cell grid, and works out
+        // who each tile's neighbours are.
+        int bw = screenConfig.getBoardWidth(sk, gridWidth, gridHeight);
+        int bh = screenConfig.getBoardHeight(sk, gridWidth, gridHeight);
+        Board b = new Board(gridWidth, gridHeight);
+        b.reset(sk.rules, bw, bh);
+        return b;
     }
 
     /**
-     * Get the current playing area height. This varies with the skill level.
+     * Hand a game which has been set up on the UI thread to the game logic,
+     * which starts it. If the simulation isn't running, the logic is
+     * stepped here and now, so the game is in place before this returns.
+     * This is for the UI thread.
      *
-     * @return Playing area height in tiles.
+     * @param game The game to start. If an earlier one hasn't been started
+     *             yet, it's dropped, as this one replaces it.
      */
-    int getBoardHeight()
+    private void startGame(GameStart game)
     {
-        return boardHeight;
+        pendingGame.set(game);
+        send(CommandQueue.OP_START, 0);
+        sim.flush();
     }
 
     /**
-     * Create a network layout. This function may be called multiple times after
-     * resetBoard(), to get a network with enough cells.
-     *
-     * @param sk Skill level for the game; create the network accordingly.
-     * @return The number of cells used in the layout.
+     * Start the game which the UI thread has set up, if it's still waiting.
+     * This runs in the game logic, holding our lock.
      */
-    private int createNet(Skill sk)
+    private void startPendingGame()
     {
-        Log.i(MainActivity.TAG, "_" +
-                "\r\n Drawing playable area on grid" +
-                "\r\n x start = " + boardStartX +
-                "\r\n x end   = " + boardEndX +
-                "\r\n y start = " + boardStartY +
-                "\r\n y end   = " + boardEndY);
-
-        // Reset the cells' directions, and reset the root cell
-        for (int x = boardStartX; x < boardEndX; x++)
-        {
-            for (int y = boardStartY; y < boardEndY; y++)
-            {
-                cellMatrix[x][y].setDirs(Cell.CellDirection.FREE);
-                cellMatrix[x][y].setRoot(false);
-            }
-        }
-
-        // Set the rootCell cell (the server) to a random cell
-        int rootX = RandomNumberGenerator.nextInt(boardWidth) + boardStartX;
-        int rootY = RandomNumberGenerator.nextInt(boardHeight) + boardStartY;
-        rootCell = cellMatrix[rootX][rootY];
-        rootCell.setConnected(true);
-        rootCell.setRoot(true);
-        setFocus(rootCell);
-
-        // Set up the connectingCells of cells awaiting connection. Start by adding the root cell
-        Vector<Cell> list = new Vector<>();
-        list.add(rootCell);
-        if (RandomNumberGenerator.nextBoolean())
-            addRandomDir(list);
-
-        // Loop while there are still cells to be connected, connecting them in random directions
-        while (!list.isEmpty())
-        {
-            // Randomly do the first cell, or defer it and do the next one.
-            // This prevents unduly long, straight branches.
-            if (RandomNumberGenerator.nextBoolean())
-            {
-                // Add a random direction from this cell
-                addRandomDir(list);
-
-                // 50% of the time, add a second direction, if we can find one
-                if (RandomNumberGenerator.nextBoolean())
-                    addRandomDir(list);
-
-                // A third pass makes networks more complex, but also introduces 4-way crosses
-                if (sk.branches >= 3 && RandomNumberGenerator.nextInt(3) == 0)
-                    addRandomDir(list);
-            } else
-                list.add(list.firstElement());
+        GameStart game = pendingGame.getAndSet(null);
+        if (game == null)
+            return;
 
-            // Pop the first element off the connectingCells
-            list.remove(0);
-        }
+        // If the board has been rebuilt since the game was set up, it no longer fits; a new
+        // game is on its way
+        Board b = game.puzzle != null ? game.puzzle.solution : game.board;
+        if (b.getGridWidth() != gridWidth || b.getGridHeight() != gridHeight)
+            return;
 
-        // Count the number of connected cells in this board
-        int cells = 0;
-        for (int x = boardStartX; x < boardEndX; x++)
-            for (int y = boardStartY; y < boardEndY; y++)
-                if (cellMatrix[x][y].dirs() != Cell.CellDirection.FREE)
-                    ++cells;
+        autosolveStop();
+        replaying = null;
+        gameSkill = game.skill;
+        resetCells();
+        if (game.puzzle != null)
+            startPuzzle(game.puzzle);
+        else
+            restoreGame(game);
 
-        Log.i(MainActivity.TAG, "Created net with " + cells + " cells");
-        return cells;
+        if (game.replay != null)
+            startReplay(game.replay, game.replaySpeed);
     }
 
     /**
-     * Add a connection in a random direction from the first cell in the given
-     * cell connectingCells. We enumerate the free adjacent cells around the
-     * starting cell, then pick one to connect to at random. If there is no free
-     * adjacent cell, we do nothing.
-     * <p>
-     * If we connect to a cell, it is added to the passed-in connectingCells.
+     * Start a game on a puzzle. This runs in the game logic, holding our
+     * lock, after the cells have been reset.
      *
-     * @param list Current list of cells awaiting connection.
+     * @param puzzle The puzzle to play.
      */
-    private void addRandomDir(Vector<Cell> list)
+    private void startPuzzle(PuzzleQueue.Puzzle puzzle)
     {
-        // Start with the first cell in the cell connectingCells
-        Cell cell = list.firstElement();
-
-        // List the adjacent cells which are free
-        EnumMap<Cell.CellDirection, Cell> freecells = new EnumMap<>(Cell.CellDirection.class);
-        for (Cell.CellDirection d : Cell.CellDirection.cardinals)
-        {
-            Cell ucell = cell.next(d);
-            if (ucell != null && ucell.dirs() == Cell.CellDirection.FREE)
-                freecells.put(d, ucell);
-        }
-
-        if (freecells.isEmpty())
+        board.copyFrom(puzzle.solution);
+        Log.i(MainActivity.TAG, "Created net with " + board.activeCells() + " cells on "
+                + board.getBoardWidth() + "x" + board.getBoardHeight()
+                + ", seed " + Long.toHexString(board.getSeed()));
+        setFocus(rootCell());
+
+        // Now, save the "solved" state of the board. The puzzle is ours, so we can just keep it.
+        solvedState = puzzle.solution;
+
+        // Jumble the board into the puzzle's scrambled state, animating each cell into its
+        // jumbled position. Also, if we're in blind mode, tell the appropriate cells to go blind
+        for (int x = board.getBoardStartX(); x < board.getBoardEndX(); x++)
         {
-            return;
+            for (int y = board.getBoardStartY(); y < board.getBoardEndY(); y++)
+            {
+                cellMatrix[x][y].rotate(puzzle.turn(x, y));
+                blips.clear(x, y);
+                if (puzzle.scrambled.isBlind(x, y))
+                    board.setBlind(x, y, true);
+            }
         }
 
-        // Pick one of the free adjacents at random
-        Object[] keys = freecells.keySet().toArray();
-        Cell.CellDirection key = (Cell.CellDirection) keys[RandomNumberGenerator.nextInt(keys.length)];
-        Cell dest = freecells.get(key);
+        // Figure out the active connections. The scramble isn't the player's
+        // doing, so there's nothing to undo yet
+        updateConnections();
+        moveLog.clear();
 
-        // Make a link to that cell, and a corresponding link back
-        cell.addDir(key);
-        assert dest != null;
-        dest.addDir(key.reverse);
+        // Start recording the game. The puzzle comes with its hints
+        record = new GameRecord(board);
+        recordStart = sim.now();
+        hints = puzzle.hints;
 
-        // Add the new cell to the outstanding connectingCells
-        list.add(dest);
+        // Show the new game
+        publish(sim.now());
+        sim.wake();
+        requestRender();
     }
 
-    // ******************************************************************** //
-    // Board Logic.
-    // ******************************************************************** //
-
     /**
-     * Scan the board to see which cells are connected to the server. Update the state of every cell
-     * accordingly. This function is called each time a cell is rotated, to re-compute the
-     * connectedness of every cell
-     *
-     * @return true if one or more cells have been connected that previously weren't
+     * Reset the cells' display state for a new game. This runs in the game
+     * logic, holding our lock.
      */
-    private synchronized boolean updateConnections()
+    private void resetCells()
     {
-        // Reset the array of connected flags per cell
-        for (int x = 0; x < gridWidth; x++)
-            for (int y = 0; y < gridHeight; y++)
-                isConnected[x][y] = false;
-
-        // Clear the list of cells which are connected but haven't had their onward connections checked yet
-        connectingCells.clear();
-
-        // If the root cell is rotated, then it's not connected to
-        // anything -- no-one is connected. Otherwise, flag the root
-        // cell as connected and add it to the connectingCells.
-        if (!rootCell.isRotated())
-        {
-            isConnected[rootCell.x()][rootCell.y()] = true;
-            connectingCells.add(rootCell);
-        }
-
-        // While there are still cells to investigate, check them for
-        // connections that we haven't flagged yet, and add those cells
-        // to the connectingCells.
-        while (!connectingCells.isEmpty())
-        {
-            Cell cell = connectingCells.remove();
-
-            for (Cell.CellDirection d : Cell.CellDirection.cardinals)
-                if (hasNewConnection(cell, d, isConnected))
-                    connectingCells.add(cell.next(d));
-        }
-
-        // Finally, scan the connection flags. Set every cell's connected
-        // status accordingly. Count connected cells, and cells that are
-        // connected but weren't previously.
-        int newConnections = 0;
+        Log.i(MainActivity.TAG, "Reset board " + gridWidth + "x" + gridHeight);
         for (int x = 0; x < gridWidth; x++)
-        {
             for (int y = 0; y < gridHeight; y++)
-            {
-                if (isConnected[x][y])
-                {
-                    if (!cellMatrix[x][y].isConnected())
-                        ++newConnections;
-                }
-                cellMatrix[x][y].setConnected(isConnected[x][y]);
-            }
-        }
-
-        // Tell the caller whether we got a new one.
-        return newConnections != 0;
+                cellMatrix[x][y].reset();
+        blips.reset();
     }
 
     /**
-     * Determine whether we have a connection from the given cell in the given direction which
-     * hasn't already been logged in got[][]
+     * Get the current playing area width. This varies with the skill level.
      *
-     * @param cell Starting cell
-     * @param dir  Direction to look in
-     * @param got  Array of flags showing which cells we have already found connections for. If we
-     *             find a new connection, we will set the flag for it in here
-     * @return true if we found a new connection in the given direction
+     * @return Playing area width in tiles.
      */
-    private boolean hasNewConnection(Cell cell, Cell.CellDirection dir, boolean[][] got)
+    synchronized int getBoardWidth()
     {
-        // Find the cell we're going to, if any
-        Cell other = cell.next(dir);
-        Cell.CellDirection otherdir = dir.reverse;
+        return board.getBoardWidth();
+    }
 
-        // If there's no cell there, then there's no connection. If we have already marked it connected, we're done
-        if (other == null || got[other.x()][other.y()])
-            return false;
+    /**
+     * Get the current playing area height. This varies with the skill level.
+     *
+     * @return Playing area height in tiles.
+     */
+    synchronized int getBoardHeight()
+    {
+        return board.getBoardHeight();
+    }
 
-        // See if there's an actual connection. If either cell is rotated, there's no connection
-        if (!cell.hasConnection(dir) || !other.hasConnection(otherdir))
-            return false;
+    // ******************************************************************** //
+    // Board Logic.
+    // ******************************************************************** //
 
-        // OK, there's a connection, and it's new. Mark it
-        got[other.x()][other.y()] = true;
-        return true;
+    /**
+     * Bring the cells' connected states up to date. This function is called each time a cell is
+     * rotated; the board only revisits the parts of the network affected by the cells which have
+     * changed since the last call, and the cells whose state flipped are redrawn as they're dirty
+     *
+     * @return true if one or more cells have been connected that previously weren't
+     */
+    private boolean updateConnections()
+    {
+        return board.updateConnections();
     }
 
     /**
      * Determine whether the board is currently in a solved state/all terminals are connected to
      * the server
      * <p>
-     * Note that in some layouts, it is possible to connect all the terminals without using all the
-     * cable sections. Since the game intro asks the user to connect all the terminals, which makes
-     * sense, we look for unconnected terminals specifically.
-     * <p>
      * NOTE: We assume that updateConnections() has been called to set the connected states of all
      * cells correctly for the current board state.
      *
      * @return true if the board is currently in a solved state -- ie. every terminal cell is
      * connected to the server.
      */
-    synchronized boolean isSolved()
+    private boolean isSolved()
     {
-        // Scan the board; any non-connected non-empty cell means we're not done yet
-        for (int x = boardStartX; x < boardEndX; x++)
-        {
-            for (int y = boardStartY; y < boardEndY; y++)
-            {
-                Cell cell = cellMatrix[x][y];
-
-                // If there's an unconnected terminal, we're not solved.
-                if (cell.numDirs() == 1 && !cell.isConnected())
-                    return false;
-            }
-        }
-
-        return true;
+        return board.isSolved();
     }
 
     /**
@@ -765,27 +667,22 @@ public class BoardView
      * Note that in some layouts (particularly in Expert mode), it is possible
      * to connect all the terminals without using all the cable sections, so the
      * answer may be non-0 on a solved board.
-     * <p>
-     * NOTE: We assume that updateConnections() has been called to set the
-     * connected states of all cells correctly for the current board state.
      *
      * @return The number of unconnected cells in the board.
      */
-    int unconnectedCells()
+    synchronized int unconnectedCells()
     {
-        int unused = 0;
-
-        for (int x = boardStartX; x < boardEndX; x++)
-        {
-            for (int y = boardStartY; y < boardEndY; y++)
-            {
-                Cell cell = cellMatrix[x][y];
-                if (cell.dirs() != Cell.CellDirection.FREE && !cell.isConnected())
-                    ++unused;
-            }
-        }
+        return board.unconnectedCells();
+    }
 
-        return unused;
+    /**
+     * Find the view cell which displays the root tile of the board; where the server is.
+     *
+     * @return The cell displaying the server.
+     */
+    private Cell rootCell()
+    {
+        return cellMatrix[board.getRootX()][board.getRootY()];
     }
 
     // ******************************************************************** //
@@ -793,36 +690,42 @@ public class BoardView
     // ******************************************************************** //
 
     /**
-     * Update the state of the application for the current frame.
+     * Run one step of the game logic. This is called by the simulation, on
+     * its own thread, at fixed steps of simulation time, holding our lock; so
+     * the logic runs at the same speed however long the frames take to draw.
      *
-     * <p>
-     * Applications must override this, and can use it to update for example the
-     * physics of a game. This may be a no-op in some cases.
-     *
-     * <p>
-     * doDraw() will always be called after this method is called; however, the
-     * converse is not true, as we sometimes need to draw just to update the
-     * screen. Hence this method is useful for updates which are dependent on
-     * time rather than frames.
-     *
-     * @param now Current time in ms.
+     * @param now Simulation time in ms.
+     * @return The time in ms until the logic next needs a step; 0 for the
+     * next step; or Simulation.IDLE if nothing is due until the user does
+     * something.
      */
-    @Override
-    protected void doUpdate(long now)
+    private synchronized long simStep(long now)
     {
+        // Apply the user's input, and any recorded moves which are due
+        applyCommands();
+        if (replaying != null)
+            replayMoves(now);
+
+        // Take up the autosolver's solution, if it's been solving in the background
+        if (autosolving != null && autosolving.done)
+            autosolveSolved();
+
         // See if we have programmed moves to execute. If so, see if it's time for the next one
         if (programmedMoves != null && now - lastProgMove > SOLVE_STEP_TIME)
         {
-            if (programmedMoves.isEmpty())
+            if (progMoveNext == programmedMoves.size())
             {
-                // Since the last move has completed, we're now finished
-                autosolveStop();
+                // Since the last move has completed, we're now finished. The
+                // menus belong to the UI thread
+                programmedMoves = null;
+                lastProgMove = 0;
+                post(autosolveDone);
             } else
             {
-                // Get the next move and execute it
-                int[] move = programmedMoves.removeFirst();
-                Cell mc = cellMatrix[move[0]][move[1]];
-                int dirn = move[2];
+                // Get the next move
+                int move = programmedMoves.get(progMoveNext);
+                int tile = Board.moveTile(move);
+                Cell mc = cellMatrix[tile % gridWidth][tile / gridWidth];
 
                 // If the cell isn't focused, focus it, and that's our move.
                 // If the cell is locked, unlock it, and that's our move.
@@ -830,67 +733,331 @@ public class BoardView
                 if (mc != focusedCell)
                 {
                     setFocus(mc);
-                    programmedMoves.addFirst(move);
-                } else if (mc.isLocked())
+                } else if (board.isLocked(mc.x(), mc.y()))
                 {
-                    mc.setLocked(false);
-                    programmedMoves.addFirst(move);
+                    board.setLocked(mc.x(), mc.y(), false);
+                    recordMove(tile, 0, true);
                 } else
                 {
-                    // Make the cell's content visible. Do the move
-                    mc.setBlind(false);
-                    mc.rotate(dirn, SOLVE_ROTATE_TIME);
-                    updateConnections();
+                    // Make the cell's content visible. Do the move. The
+                    // rotation starts at this step
+                    board.setBlind(mc.x(), mc.y(), false);
+                    mc.rotate(Board.moveAngle(move), SOLVE_ROTATE_TIME);
+                    blips.clear(mc.x(), mc.y());
+                    connectionsPending = true;
+                    recordMove(tile, Board.moveAngle(move) > 0 ? 1 : 3, false);
+                    ++progMoveNext;
                 }
 
                 lastProgMove = now;
             }
         }
 
-        // Update all the cells. Flag if any cell changed its connection state
+        // Step all the cells. Flag if any cell changed its connection state, and whether any
+        // are still animating
         Cell changedCell = null;
+        boolean anim = false;
         for (int x = 0; x < gridWidth; ++x)
+        {
             for (int y = 0; y < gridHeight; ++y)
-                if (cellMatrix[x][y].doUpdate(now))
-                    changedCell = cellMatrix[x][y];
+            {
+                Cell cell = cellMatrix[x][y];
+                if (cell.doUpdate(now))
+                    changedCell = cell;
+                anim |= cell.isAnimating();
+            }
+        }
 
         // Update all the data blips
         if (drawBlips)
         {
             if (now - blipsLastAdvance >= BLIPS_TIME)
             {
-                for (int x = 0; x < gridWidth; ++x)
-                    for (int y = 0; y < gridHeight; ++y)
-                        cellMatrix[x][y].advanceBlips(blipCount);
-                ++blipCount;
-                for (int x = 0; x < gridWidth; ++x)
-                    for (int y = 0; y < gridHeight; ++y)
-                        cellMatrix[x][y].transferBlips();
+                blips.step(blipCount++);
                 blipsLastAdvance += BLIPS_TIME;
                 if (blipsLastAdvance < now)
                     blipsLastAdvance = now;
             }
         }
 
-        // If the connection state changed, update the network
-        if (changedCell != null)
+        // If the connection state changed, update the network. This is done
+        // once per step, for all the taps and turns in it
+        if (changedCell != null || connectionsPending)
         {
+            connectionsPending = false;
             if (updateConnections())
                 parentApp.postSound(Sound.CONNECT);
 
             // If we're done, report it
-            if (isSolved())
+            if (changedCell != null && isSolved())
             {
                 // Un-blind all cells
-                for (int x = boardStartX; x < boardEndX; x++)
-                    for (int y = boardStartY; y < boardEndY; y++)
-                        cellMatrix[x][y].setBlind(false);
+                board.clearBlind();
 
                 blink(changedCell);
+                anim = true;
                 parentApp.postState();
                 parentApp.postSound(Sound.WIN);
             }
         }
+
+        // Show the renderer where we've got to
+        publish(now);
+
+        // Say when we next need a step. Cell animations need every step;
+        // otherwise, the next blip move or programmed move
+        if (anim)
+            return 0;
+        long delay = Simulation.IDLE;
+        if (drawBlips)
+            delay = Math.max(0, blipsLastAdvance + BLIPS_TIME - now);
+        if (programmedMoves != null)
+        {
+            long move = Math.max(0, lastProgMove + SOLVE_STEP_TIME + 1 - now);
+            delay = delay == Simulation.IDLE ? move : Math.min(delay, move);
+        }
+        if (replaying != null)
+        {
+            long due = replayStart + (long) Math.ceil(replaying.time(replayNext) / replaySpeed);
+            long move = Math.max(0, due - now);
+            delay = delay == Simulation.IDLE ? move : Math.min(delay, move);
+        }
+        return delay;
+    }
+
+    /**
+     * Apply all the commands waiting from the UI thread. This is only called
+     * from simStep(), so the commands are only ever taken by the thread
+     * stepping the logic.
+     */
+    private void applyCommands()
+    {
+        for (int cmd = commands.poll(); cmd != CommandQueue.EMPTY; cmd = commands.poll())
+            applyCommand(cmd);
+        logRotation();
+    }
+
+    /**
+     * Apply a command from the UI thread. User input is ignored while the
+     * autosolver is running.
+     *
+     * @param cmd The command, packed by CommandQueue.command().
+     */
+    private void applyCommand(int cmd)
+    {
+        // Taps on one cell are only added up while nothing else comes between them
+        int op = CommandQueue.op(cmd);
+        if (op != CommandQueue.OP_ROTATE)
+            logRotation();
+
+        int arg = CommandQueue.arg(cmd);
+        switch (op)
+        {
+            case CommandQueue.OP_ROTATE:
+                if (!isScripted() && focusedCell != null)
+                    cellRotate(focusedCell);
+                break;
+            case CommandQueue.OP_LOCK:
+                if (!isScripted() && focusedCell != null)
+                    cellToggleLock(focusedCell);
+                break;
+            case CommandQueue.OP_FOCUS:
+                if (!isScripted() && arg < gridWidth * gridHeight)
+                    setFocus(cellMatrix[arg % gridWidth][arg / gridWidth]);
+                break;
+            case CommandQueue.OP_AUTOSOLVE:
+                if (programmedMoves != null || autosolving != null)
+                    autosolveStop();
+                else if (replaying == null)
+                    autosolveStart();
+                break;
+            case CommandQueue.OP_SOLVED:
+                // Display the fully-connected version of the server.
+                board.setSolved(board.getRootX(), board.getRootY(), true);
+                break;
+            case CommandQueue.OP_BLIPS:
+                drawBlips = arg != 0;
+                break;
+            case CommandQueue.OP_UNDO:
+                if (!isScripted())
+                    undoMove();
+                break;
+            case CommandQueue.OP_REDO:
+                if (!isScripted())
+                    redoMove();
+                break;
+            case CommandQueue.OP_HINT:
+                if (!isScripted())
+                    giveHint();
+                break;
+            case CommandQueue.OP_START:
+                startPendingGame();
+                break;
+        }
+    }
+
+    /**
+     * Determine whether the board is being played by the autosolver or a
+     * replay, in which case the user's input is ignored.
+     *
+     * @return true if the moves are scripted.
+     */
+    private boolean isScripted()
+    {
+        return programmedMoves != null || replaying != null;
+    }
+
+    /**
+     * Publish a snapshot of the game state to the renderer. This is called
+     * holding our lock, at the end of each logic step, and when a game is set
+     * up or restored.
+     *
+     * @param now Simulation time of the state, in ms.
+     */
+    private void publish(long now)
+    {
+        BoardSnapshot snap = snapshots.back();
+        snap.serial = ++snapshotSerial;
+        snap.time = now;
+        for (int x = 0; x < gridWidth; ++x)
+            for (int y = 0; y < gridHeight; ++y)
+                cellMatrix[x][y].capture(snap);
+
+        snap.drawBlips = drawBlips;
+        snap.blipsLastAdvance = blipsLastAdvance;
+        if (drawBlips)
+            blips.capture(snap);
+        else
+            snap.blipCount = 0;
+        snapshots.publish();
+    }
+
+    /**
+     * Run the game logic headless, as fast as it can be computed, through a
+     * stretch of simulation time; e.g. to benchmark the logic, or to play out
+     * an autosolve. This must only be called while the animation isn't
+     * running.
+     *
+     * @param ms The simulation time to run for, in ms.
+     */
+    void simulate(long ms)
+    {
+        sim.advance(ms);
+    }
+
+    /**
+     * Update the state of the application for the current frame.
+     *
+     * <p>
+     * The game logic runs separately, in simStep(); here we pick up the
+     * latest snapshot it published, and work out where the animations are at
+     * the time we're drawing, which may be a little after the snapshot was
+     * taken, so they move smoothly. We draw from the snapshot, and take no
+     * locks.
+     *
+     * <p>
+     * doDraw() will always be called after this method is called; however, the
+     * converse is not true, as we sometimes need to draw just to update the
+     * screen.
+     *
+     * @param now Current time in ms. We use the simulation's clock instead.
+     * @return true if anything changed which needs to be drawn.
+     */
+    @Override
+    protected boolean doUpdate(long now)
+    {
+        BoardSnapshot snap = snapshots.acquire();
+        frame = snap;
+        if (snap.serial == 0)
+            return false;
+        renderNow = Math.max(snap.time, Math.min(sim.renderTime(), snap.time + SIM_STEP_TIME));
+
+        // Interpolate all the cells' animations, and flag whether any are
+        // still animating or need drawing
+        Cell[][] cells = snap.cells;
+        boolean changed = false;
+        boolean anim = false;
+        for (int x = 0; x < snap.gridWidth; ++x)
+        {
+            for (int y = 0; y < snap.gridHeight; ++y)
+            {
+                Cell cell = cells[x][y];
+                anim |= cell.prepare(snap, renderNow);
+                changed |= cell.needsDraw();
+            }
+        }
+        animating = anim;
+
+        // The blips move on every frame
+        return changed || snap.drawBlips;
+    }
+
+    /**
+     * Say when we next need a frame. Cell animations and blips need every
+     * frame; otherwise we're idle until the logic or the user changes
+     * something, and asks for a frame.
+     *
+     * @param now Current time in ms, as passed to doUpdate().
+     * @return The delay in ms until the next frame is needed, or FRAME_IDLE.
+     */
+    @Override
+    protected long frameDelay(long now)
+    {
+        if (animating || (frame != null && frame.drawBlips))
+            return 0;
+        return FRAME_IDLE;
+    }
+
+    /**
+     * Prepare the current frame off-screen, and say which part of the screen
+     * it changes.
+     *
+     * <p>
+     * The dirty cells redraw themselves into the backing bitmap. The blips are
+     * drawn straight to the screen, so the area they covered last frame has to
+     * be redrawn to clear them, along with the area they cover now; so a frame
+     * with only blips moving costs the blips' area, not the whole screen.
+     *
+     * @param now   Current time in ms, as passed to doUpdate().
+     * @param dirty Empty on entry; we add the area of the screen which has
+     *              changed.
+     */
+    @Override
+    protected void doPrepare(long now, Rect dirty)
+    {
+        BoardSnapshot snap = frame;
+        if (snap == null || snap.serial == 0)
+            return;
+
+        // Draw all the cells into the backing bitmap. Only the dirty cells will redraw themselves.
+        // A hardware frame draws the cells straight to the screen, so we just note which changed
+        boolean hardware = getRenderer() == Renderer.HARDWARE;
+        Cell[][] cells = snap.cells;
+        int dirtyCells = 0;
+        for (int x = 0; x < snap.gridWidth; ++x)
+        {
+            for (int y = 0; y < snap.gridHeight; ++y)
+            {
+                Cell cell = cells[x][y];
+                if (!cell.needsDraw())
+                    continue;
+                ++dirtyCells;
+                if (!hardware)
+                    cell.doDraw(backingCanvas, dirty);
+                else
+                    cell.validate(dirty);
+            }
+        }
+        getFrameStats().addDirtyCells(dirtyCells);
+
+        // Add the old and new blip areas
+        dirty.union(blipBounds);
+        blipBounds.setEmpty();
+        if (snap.drawBlips)
+        {
+            BlipField.addBounds(snap, blipBounds);
+            dirty.union(blipBounds);
+        }
     }
 
     /**
@@ -898,11 +1065,14 @@ public class BoardView
      *
      * <p>
      * Applications must override this, and are expected to draw the entire
-     * screen into the provided canvas.
+     * screen into the provided canvas. It is clipped to the area which
+     * doPrepare() said has changed; or with the hardware renderer, it covers
+     * the whole screen.
      *
      * <p>
-     * This method will always be called after a call to doUpdate(), and also
-     * when the screen needs to be re-drawn.
+     * This method will always be called after calls to doUpdate() and
+     * doPrepare(), unless nothing changed, and also when the screen needs to
+     * be re-drawn.
      *
      * @param canvas The Canvas to draw into.
      * @param now    Current time in ms. Will be the same as that passed to
@@ -911,23 +1081,35 @@ public class BoardView
     @Override
     protected void doDraw(Canvas canvas, long now)
     {
-        // Draw all the cells into the backing bitmap. Only the dirty cells will redraw themselves
-        for (int x = 0; x < gridWidth; ++x)
-            for (int y = 0; y < gridHeight; ++y)
-                cellMatrix[x][y].doDraw(backingCanvas);
+        // If the game hasn't published anything yet, there's nothing to show
+        BoardSnapshot snap = frame;
+        if (snap == null || snap.serial == 0)
+        {
+            canvas.drawColor(Color.BLACK);
+            return;
+        }
 
-        // Now push the backing bitmap to the screen
-        canvas.drawBitmap(backingBitmap, 0, 0, null);
+        // Push the backing bitmap to the screen. The canvas is clipped, so only the changed
+        // area is copied. A hardware canvas starts blank, so we draw all the cells into it
+        // instead; the GPU does the rotations and blending
+        if (getRenderer() == Renderer.HARDWARE)
+        {
+            canvas.drawColor(Color.BLACK);
+            for (int x = 0; x < snap.gridWidth; ++x)
+                for (int y = 0; y < snap.gridHeight; ++y)
+                    snap.cells[x][y].drawCell(canvas);
+        }
+        else
+            canvas.drawBitmap(backingBitmap, 0, 0, null);
 
         // Draw the data blips in a separate pass so they can overlap
         // adjacent cells without getting overdrawn. We draw directly
         // to the screen.
-        if (drawBlips)
+        if (snap.drawBlips)
         {
-            float frac = (float) (now - blipsLastAdvance) / (float) BLIPS_TIME;
-            for (int x = 0; x < gridWidth; ++x)
-                for (int y = 0; y < gridHeight; ++y)
-                    cellMatrix[x][y].doDrawBlips(canvas, frac);
+            float frac = (float) (renderNow - snap.blipsLastAdvance) / (float) BLIPS_TIME;
+            frac = Math.max(0f, Math.min(frac, 1f));
+            getFrameStats().addBlips(BlipField.draw(snap, canvas, frac, noiseRng.nextInt()));
         }
     }
 
@@ -946,8 +1128,7 @@ public class BoardView
             pressedCell = findCell(event.getX(), event.getY());
             if (pressedCell != null)
             {
-                if (programmedMoves == null)
-                    setFocus(pressedCell);
+                send(CommandQueue.OP_FOCUS, pressedCell.y() * gridWidth + pressedCell.x());
                 pressDown();
             }
         } else if (event.getAction() == MotionEvent.ACTION_UP)
@@ -1000,8 +1181,7 @@ public class BoardView
 
             // If we got here, rotate the cell -- except user input is ignored
             // while executing programmed moves.
-            if (programmedMoves == null)
-                cellRotate(focusedCell);
+            send(CommandQueue.OP_ROTATE, 0);
         }
     }
 
@@ -1014,11 +1194,24 @@ public class BoardView
         public void run()
         {
             longPressed = true;
-            if (programmedMoves == null)
-                cellToggleLock(focusedCell);
+            send(CommandQueue.OP_LOCK, 0);
         }
     };
 
+    /**
+     * Send a command to the game logic, and wake it to apply it. This is for
+     * the UI thread only.
+     *
+     * @param op  The operation; one of CommandQueue's OP_ values.
+     * @param arg The operation's argument.
+     */
+    private void send(int op, int arg)
+    {
+        if (!commands.offer(CommandQueue.command(op, arg)))
+            Log.w(MainActivity.TAG, "BoardView: command queue full, dropped op " + op);
+        sim.wake();
+    }
+
     // ******************************************************************** //
     // Cell Actions.
     // ******************************************************************** //
@@ -1038,20 +1231,24 @@ public class BoardView
             focusedCell.setFocused(false);
         focusedCell = cell;
         if (focusedCell != null)
+        {
             focusedCell.setFocused(true);
+            board.setFocus(focusedCell.x(), focusedCell.y());
+        }
     }
 
     /**
-     * The given cell has been told to rotate.
+     * The given cell has been told to rotate. This and the other cell actions
+     * run in the game logic, holding our lock.
      *
      * @param cell The cell
      */
-    void cellRotate(Cell cell)
+    private void cellRotate(Cell cell)
     {
         // See if the cell is empty or locked; give the user some negative
         // feedback if so.
-        Cell.CellDirection d = cell.dirs();
-        if (d == Cell.CellDirection.FREE || d == Cell.CellDirection.NONE || cell.isLocked())
+        CellDirection d = board.dirs(cell.x(), cell.y());
+        if (d == CellDirection.FREE || d == CellDirection.NONE || board.isLocked(cell.x(), cell.y()))
         {
             parentApp.postSound(Sound.CLICK);
             blink(cell);
@@ -1061,12 +1258,36 @@ public class BoardView
         // Give the user a click. Set up an animation to do the rotation.
         parentApp.postSound(Sound.TURN);
         cell.rotate(90);
-
-        // This cell is no longer connected. Update the connection state.
-        updateConnections();
+        blips.clear(cell.x(), cell.y());
+        int tile = board.index(cell.x(), cell.y());
+        if (tile != batchTile)
+            logRotation();
+        batchTile = tile;
+        ++batchQuarters;
+        recordMove(tile, 1, false);
+
+        // This cell is no longer connected. The connection state is updated
+        // at the end of the step, once for all the taps in it.
+        connectionsPending = true;
 
         // Tell the parent we clicked this cell.
-        parentApp.cellClicked(cell);
+        parentApp.postClick(cell);
+    }
+
+    /**
+     * Log the taps on one cell which have been added up in this step, as
+     * one move. The move log itself is append-only, so this is the only
+     * place taps are merged: only within the commands applied in one step,
+     * e.g. a fast double tap, or taps sent while the logic was busy, which
+     * the player sees as one turn. Taps in different steps are different
+     * moves, and are undone one by one.
+     */
+    private void logRotation()
+    {
+        if (batchTile >= 0)
+            moveLog.rotate(batchTile, batchQuarters);
+        batchTile = -1;
+        batchQuarters = 0;
     }
 
     /**
@@ -1074,22 +1295,113 @@ public class BoardView
      *
      * @param cell The cell to toggle.
      */
-    void cellToggleLock(Cell cell)
+    private void cellToggleLock(Cell cell)
     {
         // See if the cell is empty; give the user some negative
         // feedback if so.
-        Cell.CellDirection d = cell.dirs();
-        if (d == Cell.CellDirection.FREE || d == Cell.CellDirection.NONE)
+        CellDirection d = board.dirs(cell.x(), cell.y());
+        if (d == CellDirection.FREE || d == CellDirection.NONE)
         {
             parentApp.postSound(Sound.CLICK);
             blink(cell);
             return;
         }
 
-        cell.setLocked(!cell.isLocked());
+        board.setLocked(cell.x(), cell.y(), !board.isLocked(cell.x(), cell.y()));
+        moveLog.toggleLock(board.index(cell.x(), cell.y()));
+        recordMove(board.index(cell.x(), cell.y()), 0, true);
         parentApp.postSound(Sound.POP);
     }
 
+    /**
+     * Undo the player's last move, if any. The cell is focused and turned
+     * back the short way, like any other move, so the connections are only
+     * repaired around it.
+     */
+    private void undoMove()
+    {
+        if (!moveLog.canUndo())
+        {
+            parentApp.postSound(Sound.CLICK);
+            return;
+        }
+        int move = moveLog.undo();
+        applyMove(MoveLog.tile(move), (4 - MoveLog.quarters(move)) & 3, MoveLog.isLock(move));
+    }
+
+    /**
+     * Redo the player's last undone move, if any.
+     */
+    private void redoMove()
+    {
+        if (!moveLog.canRedo())
+        {
+            parentApp.postSound(Sound.CLICK);
+            return;
+        }
+        int move = moveLog.redo();
+        applyMove(MoveLog.tile(move), MoveLog.quarters(move), MoveLog.isLock(move));
+    }
+
+    /**
+     * Make a move from the move log, or a replay. It isn't logged again, but
+     * it is recorded, unless it's from a replay.
+     *
+     * @param tile     The index of the tile to move.
+     * @param quarters The quarter turns to rotate it by, clockwise.
+     * @param lock     true to toggle its lock.
+     */
+    private void applyMove(int tile, int quarters, boolean lock)
+    {
+        Cell cell = cellMatrix[tile % gridWidth][tile / gridWidth];
+        setFocus(cell);
+        if (lock)
+        {
+            board.setLocked(cell.x(), cell.y(), !board.isLocked(cell.x(), cell.y()));
+            parentApp.postSound(Sound.POP);
+        }
+        if (quarters != 0)
+        {
+            parentApp.postSound(Sound.TURN);
+            cell.rotate(MoveLog.angle(quarters));
+            blips.clear(cell.x(), cell.y());
+            connectionsPending = true;
+            if (replaying == null)
+                parentApp.postClick(cell);
+        }
+        recordMove(tile, quarters, lock);
+    }
+
+    /**
+     * Record a move in the game's record; unless it's from a replay of
+     * the record.
+     *
+     * @param tile     The index of the tile moved.
+     * @param quarters The quarter turns it was rotated by, clockwise.
+     * @param lock     true if its lock was toggled.
+     */
+    private void recordMove(int tile, int quarters, boolean lock)
+    {
+        if (record != null && replaying == null)
+            record.add(sim.now() - recordStart, MoveLog.entry(tile, quarters, lock));
+    }
+
+    /**
+     * Undo the player's last move. This is for the UI thread.
+     */
+    void undo()
+    {
+        send(CommandQueue.OP_UNDO, 0);
+    }
+
+    /**
+     * Redo the player's last undone move. This is for the UI thread.
+     */
+    void redo()
+    {
+        send(CommandQueue.OP_REDO, 0);
+    }
+
     /**
      * Blink the given cell, to indicate a mis-click etc.
      *
@@ -1105,8 +1417,7 @@ public class BoardView
      */
     void setSolved()
     {
-        // Display the fully-connected version of the server.
-        rootCell.setSolved(true);
+        send(CommandQueue.OP_SOLVED, 0);
     }
 
     // ******************************************************************** //
@@ -1114,423 +1425,447 @@ public class BoardView
     // ******************************************************************** //
 
     /**
-     * Auto-solve the puzzle, by generating a list of programmed moves which
-     * will set each cell to the position it was in when the network was
-     * created.
-     * <p>
-     * We generate the moves list in breadth-first order. This is harder to do,
-     * but looks nicer.
+     * Start the auto-solver, or stop it if it's running.
      */
     void autosolve()
     {
-        // If we're already solving, just toggle the state.
-        if (programmedMoves != null)
+        send(CommandQueue.OP_AUTOSOLVE, 0);
+    }
+
+    /**
+     * Auto-solve the puzzle, by generating a list of programmed moves which
+     * will set each cell to its solved position.  We take the solution the
+     * hint engine found when the game was set up; failing that, the saved
+     * solution.  If we have neither, the board is solved in the background,
+     * so the game logic isn't held up by a long search. This runs in the
+     * game logic.
+     */
+    private void autosolveStart()
+    {
+        Board solution = hints != null ? hints.getSolution(board) : null;
+        if (solution == null)
+            solution = solvedState;
+        if (solution != null)
         {
-            autosolveStop();
+            autosolveMoves(solution);
             return;
         }
 
-        Bundle solution = solvedState;
-        if (solution == null)
-            return;
+        autosolving = new BackgroundSolve(board);
+        Thread t = new Thread(autosolving, "Autosolve");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+        post(autosolveStarted);
+    }
 
-        // Read the solved state, accounting for device rotations etc.
-        GameState state = new GameState(gridWidth, gridHeight, gameSkill);
-        if (!restoreBoard(solution, state))
-            return;
+    /**
+     * Take up the result of the autosolver's background solve. This runs in
+     * the game logic, once the solve is done.
+     */
+    private void autosolveSolved()
+    {
+        Board solution = autosolving.solution;
+        autosolving = null;
+        if (solution == null || !autosolveMoves(solution))
+            autosolveStop();
+    }
 
+    /**
+     * Start making the moves which take the board to a solution. This runs
+     * in the game logic.
+     *
+     * @param solution The solution to make.
+     * @return true if the moves were started; false if the solution doesn't
+     * fit the board.
+     */
+    private boolean autosolveMoves(Board solution)
+    {
         // Create the programmed move list.
-        programmedMoves = new LinkedList<>();
-
-        // Clear the list of cells which are connected but
-        // haven't had their onward connections checked yet.
-        connectingCells.clear();
+        IntList moves = board.solve(solution, simRng);
+        if (moves == null)
+            return false;
+        programmedMoves = moves;
 
-        // Reset the array of solved flags per cell.
-        for (int x = 0; x < gridWidth; x++)
-            for (int y = 0; y < gridHeight; y++)
-                isConnected[x][y] = false;
+        // The solver's moves aren't logged, so the player's can't be undone
+        // over them
+        moveLog.clear();
+        progMoveNext = 0;
 
-        // Set the root cell up to be solved first.
-        connectingCells.add(state.root);
-        isConnected[state.root.x()][state.root.y()] = true;
+        // Make the first move at the next logic step
+        lastProgMove = sim.now() - SOLVE_STEP_TIME;
+        post(autosolveStarted);
+        return true;
+    }
 
-        // While there are still cells to investigate, solve them, check
-        // them for connections that we haven't flagged yet, and add those
-        // cells to the connectingCells.
-        while (!connectingCells.isEmpty())
+    /**
+     * A solve which the autosolver runs in the background, on a copy of the
+     * board, when it has no solution to hand. The game logic checks at each
+     * step whether it's done.
+     */
+    private final class BackgroundSolve implements Runnable
+    {
+        BackgroundSolve(Board b)
         {
-            Cell cell = connectingCells.removeFirst();
-            solveCell(cell, programmedMoves);
+            problem = new Board(b);
+        }
 
-            for (Cell.CellDirection d : Cell.CellDirection.cardinals)
-            {
-                if (cell.hasConnection(d))
-                {
-                    Cell next = cell.next(d);
-                    if (next != null && !isConnected[next.x()][next.y()])
-                    {
-                        connectingCells.addLast(next);
-                        isConnected[next.x()][next.y()] = true;
-                    }
-                }
-            }
+        @Override
+        public void run()
+        {
+            Solver solver = new Solver(problem);
+            boolean found = solver.solve();
+            Log.i(MainActivity.TAG, "Autosolve: " + (found ? "solved" : "gave up") + " in "
+                    + solver.getSolveTime() / 1000000 + "ms, " + solver.getNodes() + " nodes");
+            solution = found ? solver.getSolution() : null;
+            done = true;
+            sim.wake();
         }
 
-        lastProgMove = 0;
-        parentApp.selectAutosolveMode(true);
+        private final Board problem;            // Copy of the board to solve
+        private Board solution = null;          // The solution, null if none was found
+        private volatile boolean done = false;  // Set once the solve has finished
     }
 
     /**
-     * Stop the autosolver.
+     * Tell the UI that the autosolver has started, or finished. These are
+     * posted from the simulation thread, so we keep the one instance of each.
      */
-    void autosolveStop()
+    private final Runnable autosolveStarted = new Runnable()
     {
-        programmedMoves = null;
-        lastProgMove = 0;
-        parentApp.selectAutosolveMode(false);
-    }
+        @Override
+        public void run()
+        {
+            parentApp.selectAutosolveMode(true);
+        }
+    };
 
-    /**
-     * Solve the given cell. This doesn't actually do anything, except add a
-     * move to the given moves list to put the cell into the solved state.
-     *
-     * @param sc    The solved version of the cell.
-     * @param moves List of moves that we're building.
-     */
-    private void solveCell(Cell sc, LinkedList<int[]> moves)
+    private final Runnable autosolveDone = new Runnable()
     {
-        Cell mc = cellMatrix[sc.x()][sc.y()];
-        Cell.CellDirection sd = sc.dirs();
-        Cell.CellDirection md = mc.dirs();
-        if (sc.dirs() != md)
+        @Override
+        public void run()
         {
-            int[] move;
-            if (mc.rotatedDirs(90) == sd)
-            {
-                move = new int[]{mc.x(), mc.y(), 90};
-                moves.add(move);
-            } else if (mc.rotatedDirs(-90) == sd)
-            {
-                move = new int[]{mc.x(), mc.y(), -90};
-                moves.add(move);
-            } else if (mc.rotatedDirs(180) == sd)
-            {
-                int rot = RandomNumberGenerator.nextBoolean() ? 90 : -90;
-                move = new int[]{mc.x(), mc.y(), rot};
-                moves.add(move);
-                move = new int[]{mc.x(), mc.y(), rot};
-                moves.add(move);
-            }
+            parentApp.selectAutosolveMode(false);
         }
+    };
+
+    /**
+     * Stop the autosolver. This is called holding our lock.
+     */
+    private void autosolveStop()
+    {
+        autosolving = null;
+        programmedMoves = null;
+        lastProgMove = 0;
+        post(autosolveDone);
     }
 
     // ******************************************************************** //
-    // State Save/Restore.
+    // Hints.
     // ******************************************************************** //
 
     /**
-     * Save game state so that the user does not lose anything if the game
-     * process is killed while we are in the background.
-     *
-     * @param outState A Bundle in which to place any state information we wish to
-     *                 save.
+     * Show the player a hint: focus the most constrained cell which is out
+     * of place, highlight it, and say how many taps turn it into place. This
+     * is for the UI thread.
      */
-    protected void saveState(Bundle outState)
+    void showHint()
     {
-        // Save the game state of the board.
-        saveBoard(outState);
-
-        // Also save the solved state, if any.
-        if (solvedState != null)
-            outState.putBundle("solvedState", solvedState);
+        send(CommandQueue.OP_HINT, 0);
     }
 
     /**
-     * Save game state so that the user does not lose anything if the game
-     * process is killed while we are in the background.
-     *
-     * @param outState A Bundle in which to place any state information we wish to
-     *                 save.
+     * Show a hint, in the game logic. The hint engine was built with the
+     * game, off this thread, so this is just a scan of the board. If there's
+     * nothing to suggest, give the user some negative feedback.
      */
-    private void saveBoard(Bundle outState)
+    private void giveHint()
     {
-        outState.putInt("gridWidth", gridWidth);
-        outState.putInt("gridHeight", gridHeight);
-        outState.putInt("rootX", rootCell.x());
-        outState.putInt("rootY", rootCell.y());
-        outState.putInt("focusX", focusedCell.x());
-        outState.putInt("focusY", focusedCell.y());
-
-        // Save the states of all the cells which are in use.
-        for (int x = 0; x < gridWidth; ++x)
+        int hint = hints != null ? hints.hint(board) : HintEngine.NONE;
+        if (hint == HintEngine.NONE)
         {
-            for (int y = 0; y < gridHeight; ++y)
-            {
-                String key = "cell " + x + "," + y;
-                outState.putBundle(key, cellMatrix[x][y].saveState());
-            }
+            parentApp.postSound(Sound.CLICK);
+            return;
         }
+        int tile = HintEngine.tile(hint);
+        Cell cell = cellMatrix[tile % gridWidth][tile / gridWidth];
+        setFocus(cell);
+        blink(cell);
+        int taps = HintEngine.quarters(board, hint);
+        if (taps != 0)
+            parentApp.postHint(taps);
     }
 
+    // ******************************************************************** //
+    // Replay.
+    // ******************************************************************** //
+
     /**
-     * Restore our game state from the given Bundle.
+     * Get the record of the current game. This is for the UI thread.
      *
-     * @param map   A Bundle containing the saved state.
-     * @param skill Skill level of the saved game.
-     * @return true if the state was restored OK; false if the saved state was
-     * incompatible with the current configuration.
+     * @return The record, saved as by GameRecord.save(); null if the game
+     * isn't being recorded.
      */
-    boolean restoreState(Bundle map, Skill skill)
+    synchronized byte[] saveRecord()
     {
-        // Restore the game state of the board.
-        gameSkill = skill;
-        resetBoard(skill);
-
-        // Restore the actual game state.
-        GameState state = new GameState(cellMatrix);
-        boolean ok = restoreBoard(map, state);
-        rootCell = state.root;
-        setFocus(state.focus);
-
-        // Also restore the solved state, if any.
-        if (ok && map.containsKey("solvedState"))
-        {
-            solvedState = map.getBundle("solvedState");
-            ok = solvedState != null;
-        }
-
-        return ok;
+        return record != null ? record.save() : null;
     }
 
     /**
-     * Restore our game state from the given Bundle.
+     * Replay the current game from the start, as the player played it.
+     * This is for the UI thread.
      *
-     * @param map   A Bundle containing the saved state.
-     * @param state Record to place the restored state in.
-     * @return true if the state was restored OK; false if the saved state was
-     * incompatible with the current configuration.
+     * @param speed The speed to replay at; 1 for the speed it was played at.
+     * @return true if the replay started; false if the game has no record.
      */
-    private boolean restoreBoard(Bundle map, GameState state)
+    boolean replay(float speed)
     {
-        // Check that the saved board size is compatible with what we
-        // have now. If it is identical, then do a straight restore; if
-        // it's rotated, then restore and rotate.
-        int sgw = map.getInt("gridWidth");
-        int sgh = map.getInt("gridHeight");
-        if (sgw == gridWidth && sgh == gridHeight)
-            return restoreNormal(map, state);
-        else if (sgw == gridHeight && sgh == gridWidth)
+        GameRecord rec;
+        synchronized (this)
         {
-            if (gridWidth > gridHeight)
-                return restoreRotLeft(map, state);
-            else
-                return restoreRotRight(map, state);
-        } else
-            return false;
+            rec = record;
+        }
+        return rec != null && replay(rec, speed);
     }
 
     /**
-     * Restore our game state from the given Bundle.
+     * Replay a recorded game from the start. The game is set up again from
+     * the record, and each move is made through the game logic, animated,
+     * at its recorded time scaled by the speed; the user's input is ignored
+     * until the replay is done, and then the game carries on from there.
+     * This is for the UI thread.
      *
-     * @param map   A Bundle containing the saved state.
-     * @param state Record to place the restored state in.
-     * @return true if the state was restored OK; false if the saved state was
-     * incompatible with the current configuration.
+     * @param rec   The record. The game must fit the board: the same grid,
+     *              and the playing area this screen has for its skill level.
+     * @param speed The speed to replay at; 1 for the speed it was played at.
+     * @return true if the replay started; false if the record doesn't fit.
      */
-    private boolean restoreNormal(Bundle map, GameState state)
+    boolean replay(GameRecord rec, float speed)
     {
-        // Set up the root cell and focused cell.
-        int rx = map.getInt("rootX");
-        int ry = map.getInt("rootY");
-        state.root = state.matrix[rx][ry];
-        int fx = map.getInt("focusX");
-        int fy = map.getInt("focusY");
-        state.focus = state.matrix[fx][fy];
-
-        // Restore the states of all the cells which are in use.
-        for (int x = 0; x < gridWidth; ++x)
+        Skill sk = null;
+        for (Skill s : Skill.values())
+            if (s.rules == rec.getSkill())
+                sk = s;
+        if (sk == null || speed <= 0
+                || rec.getGridWidth() != gridWidth || rec.getGridHeight() != gridHeight
+                || rec.getBoardWidth() != screenConfig.getBoardWidth(sk, gridWidth, gridHeight)
+                || rec.getBoardHeight() != screenConfig.getBoardHeight(sk, gridWidth, gridHeight))
         {
-            for (int y = 0; y < gridHeight; ++y)
-            {
-                String key = "cell " + x + "," + y;
-                state.matrix[x][y].restoreState(map.getBundle(key));
-            }
+            Log.w(MainActivity.TAG, "BoardView: record doesn't fit the board; not replayed");
+            return false;
         }
 
+        // Build the puzzle here, without our lock; the game logic starts the
+        // replay on it
+        GameStart game = new GameStart(sk);
+        game.puzzle = rec.puzzle();
+        game.replay = rec;
+        game.replaySpeed = speed;
+        startGame(game);
         return true;
     }
 
     /**
-     * Restore our game state from the given Bundle, rotating the board left as
-     * we do so.
+     * Replay a recorded game headless, running the game logic as fast as it
+     * can be computed; e.g. to check that a change to the game logic leaves
+     * real games as they were, or to benchmark it with real input. At a high
+     * speed, many moves are made in each step of the logic, just as when a
+     * player taps fast. This must only be called while the animation isn't
+     * running.
      *
-     * @param map   A Bundle containing the saved state.
-     * @param state Record to place the restored state in.
-     * @return true if the state was restored OK; false if the saved state was
-     * incompatible with the current configuration.
+     * @param rec   The record, as for replay(GameRecord, float).
+     * @param speed The speed to replay at, relative to the recorded times.
+     * @return true if the game ended solved; false if not, or the record
+     * doesn't fit.
      */
-    private boolean restoreRotLeft(Bundle map, GameState state)
+    boolean replayHeadless(GameRecord rec, float speed)
     {
-        // Set up the root cell. Flip the co-ordinates.
-        int rx = map.getInt("rootX");
-        int ry = map.getInt("rootY");
-        state.root = state.matrix[ry][gridHeight - rx - 1];
-        int fx = map.getInt("focusX");
-        int fy = map.getInt("focusY");
-        state.focus = state.matrix[fy][gridHeight - fx - 1];
+        if (!replay(rec, speed))
+            return false;
+        do
+            simulate(REPLAY_SETTLE_TIME);
+        while (isReplaying());
 
-        // Restore the states of all the cells which are in use.
-        for (int y = 0; y < gridHeight; ++y)
+        // Let the last moves finish
+        simulate(REPLAY_SETTLE_TIME);
+        synchronized (this)
         {
-            for (int x = 0; x < gridWidth; ++x)
-            {
-                if (x >= state.matrix.length || y >= state.matrix[x].length)
-                    return false;
-                String key = "cell " + y + "," + x;
-                Bundle cmap = map.getBundle(key);
-                if (cmap == null)
-                    return false;
-                state.matrix[x][gridHeight - y - 1].restoreState(cmap);
-                state.matrix[x][gridHeight - y - 1].rotateImmediate(-90);
-            }
+            return isSolved();
         }
-
-        return true;
     }
 
     /**
-     * Restore our game state from the given Bundle, rotating the board right as
-     * we do so.
+     * Determine whether a replay is running.
      *
-     * @param map   A Bundle containing the saved state.
-     * @param state Record to place the restored state in.
-     * @return true if the state was restored OK; false if the saved state was
-     * incompatible with the current configuration.
+     * @return true if a replay is running.
      */
-    private boolean restoreRotRight(Bundle map, GameState state)
+    synchronized boolean isReplaying()
     {
-        // Set up the root cell. Flip the co-ordinates.
-        int rx = map.getInt("rootX");
-        int ry = map.getInt("rootY");
-        state.root = state.matrix[gridWidth - ry - 1][rx];
-        int fx = map.getInt("focusX");
-        int fy = map.getInt("focusY");
-        state.focus = state.matrix[gridWidth - fy - 1][fx];
-
-        // Restore the states of all the cells which are in use.
-        for (int y = 0; y < gridHeight; ++y)
-        {
-            for (int x = 0; x < gridWidth; ++x)
-            {
-                if (x >= state.matrix.length || y >= state.matrix[x].length)
-                    return false;
-                String key = "cell " + y + "," + x;
-                Bundle cmap = map.getBundle(key);
-                if (cmap == null)
-                    return false;
-                state.matrix[gridWidth - x - 1][y].restoreState(cmap);
-                state.matrix[gridWidth - x - 1][y].rotateImmediate(90);
-            }
-        }
-
-        return true;
+        return replaying != null;
     }
 
-    // ******************************************************************** //
-    // Utilities.
-    // ******************************************************************** //
+    /**
+     * Start a replay on the game which has just been set up from its record.
+     * This runs in the game logic, holding our lock.
+     *
+     * @param rec   The record.
+     * @param speed The speed to replay at.
+     */
+    private void startReplay(GameRecord rec, float speed)
+    {
+        // The record is the game's record again; moves made after the
+        // replay are added to it
+        record = rec;
+        replaying = rec;
+        replayNext = 0;
+        replayStart = sim.now();
+        replaySpeed = speed;
+        if (rec.size() == 0)
+            replayDone(sim.now());
+    }
 
     /**
-     * Return the given value plus one, but wrapped within the given range.
+     * Make the recorded moves which are due, in the game logic.
      *
-     * @param v   Value to increment.
-     * @param min Minimum allowed value, inclusive.
-     * @param max Maximum allowed value, not inclusive.
-     * @return The incremented value, wrapped around to stay in range.
+     * @param now Current simulation time in ms.
      */
-    private static int incr(int v, int min, int max)
+    private void replayMoves(long now)
     {
-        return v < max - 1 ? ++v : min;
+        long time = (long) ((now - replayStart) * replaySpeed);
+        while (replayNext < replaying.size() && replaying.time(replayNext) <= time)
+        {
+            int move = replaying.move(replayNext++);
+            applyMove(MoveLog.tile(move), MoveLog.quarters(move), MoveLog.isLock(move));
+        }
+        if (replayNext == replaying.size())
+            replayDone(now);
     }
 
     /**
-     * Return the given value minus one, but wrapped within the given range.
+     * Finish a replay. The game's record carries on from the end of the
+     * replay, as if the player had just made its last move.
      *
-     * @param v   Value to decrement.
-     * @param min Minimum allowed value, inclusive.
-     * @param max Maximum allowed value, not inclusive.
-     * @return The decremented value, wrapped around to stay in range.
+     * @param now Current simulation time in ms.
      */
-    private static int decr(int v, int min, int max)
+    private void replayDone(long now)
     {
-        return v > min ? --v : max - 1;
+        recordStart = now - replaying.duration();
+        replaying = null;
+        moveLog.clear();
     }
 
     // ******************************************************************** //
-    // Private Classes.
+    // State Save/Restore.
     // ******************************************************************** //
 
     /**
-     * A game state. Saves a state of the game board, either to save where we
-     * are, or to record an initial or solved position.
+     * Save game state so that the user does not lose anything if the game
+     * process is killed while we are in the background.
+     *
+     * @param outState A Bundle in which to place any state information we wish to
+     *                 save.
      */
-    private class GameState
+    protected void saveState(Bundle outState)
     {
-        // Create a game state based on the given cell matrix.
-        GameState(Cell[][] m)
+        // Start any game which is still waiting for the game logic, so that
+        // it's the one we save
+        sim.flush();
+        synchronized (this)
         {
-            matrix = m;
+            // Save the game state of the board.
+            outState.putByteArray("board", board.saveBoard());
+            outState.putIntArray("moveLog", moveLog.save(board));
+            if (record != null)
+                outState.putByteArray("record", record.save());
+
+            // Also save the solved state, if any -- unless the board has a seed,
+            // in which case we can generate the solution again from that.
+            if (solvedState != null && !board.hasSeed())
+                outState.putByteArray("solvedState", solvedState.saveBoard());
         }
+    }
 
-        // Create a game state with a new cell matrix.
-        GameState(int w, int h, Skill skill)
+    /**
+     * Restore our game state from the given Bundle. This is for the UI
+     * thread; the state is read back here, without our lock, and the game
+     * logic takes it over.
+     *
+     * @param map   A Bundle containing the saved state.
+     * @param skill Skill level of the saved game.
+     * @return true if the state was restored OK; false if the saved state was
+     * incompatible with the current configuration.
+     */
+    boolean restoreState(Bundle map, Skill skill)
+    {
+        // Restore the game state of the board. The board takes care of
+        // rotating the saved state if the device has been rotated. If it
+        // won't restore, there's no game to take over; the caller starts a
+        // new one
+        GameStart game = new GameStart(skill);
+        game.board = newBoard(skill);
+        if (!game.board.restoreBoard(map.getByteArray("board")))
+            return false;
+        game.board.updateConnections();
+        game.hints = new HintEngine(game.board);
+
+        // The move history is restored onto the board by the game logic.
+        // Without it, the game can still be played; there's just nothing to
+        // undo
+        game.moveLog = map.getIntArray("moveLog");
+
+        // Restore the game's record, so that it carries on. It must be the
+        // record of this game, on this layout; if the board has been rotated,
+        // the recorded moves no longer fit, so we stop recording
+        Board b = game.board;
+        GameRecord rec = null;
+        if (b.hasSeed())
+            rec = GameRecord.restore(map.getByteArray("record"));
+        if (rec != null && (rec.getSkill() != b.getSkill() || rec.getSeed() != b.getSeed()
+                || rec.getGridWidth() != b.getGridWidth()
+                || rec.getGridHeight() != b.getGridHeight()
+                || rec.getBoardWidth() != b.getBoardWidth()
+                || rec.getBoardHeight() != b.getBoardHeight()))
+            rec = null;
+        game.record = rec;
+
+        // Also restore the solved state, if any; if it wasn't saved, generate
+        // it again from the board's seed.  If we can't get it, the game still
+        // goes on, and autosolve() works it out from the board.
+        if (map.containsKey("solvedState") || game.board.hasSeed())
         {
-            matrix = new Cell[w][h];
-            for (int y = 0; y < h; ++y)
-            {
-                for (int x = 0; x < w; ++x)
-                {
-                    Cell cell = new Cell(x, y);
-                    matrix[x][y] = cell;
-                }
-            }
-
-            // Save the width and height of the playing board for this skill
-            // level, and the board placement within the overall cell grid.
-            int bw = Screen.HUGE.getBoardWidth(skill, w, h);
-            int bh = Screen.HUGE.getBoardHeight(skill, w, h);
-            int bsx = (w - bw) / 2;
-            int bex = bsx + bw;
-            int bsy = (h - bh) / 2;
-            int bey = bsy + bh;
-
-            boolean wrap = skill.wrapped;
-            Cell u, d, l, r;
-            for (int x = 0; x < w; x++)
-            {
-                for (int y = 0; y < h; y++)
-                {
-                    matrix[x][y].reset(wrap ? Cell.CellDirection.NONE : Cell.CellDirection.FREE);
-
-                    // Re-calculate who this cell's neighbours are.
-                    u = d = l = r = null;
-                    if (wrap || y > bsy)
-                        u = matrix[x][decr(y, bsy, bey)];
-                    if (wrap || y < bey - 1)
-                        d = matrix[x][incr(y, bsy, bey)];
-                    if (wrap || x > bsx)
-                        l = matrix[decr(x, bsx, bex)][y];
-                    if (wrap || x < bex - 1)
-                        r = matrix[incr(x, bsx, bex)][y];
-                    matrix[x][y].setNeighbours(u, d, l, r);
-                }
-            }
+            Board solution = new Board(gridWidth, gridHeight);
+            solution.reset(skill.rules, game.board.getBoardWidth(), game.board.getBoardHeight());
+            boolean solved = map.containsKey("solvedState")
+                    ? solution.restoreBoard(map.getByteArray("solvedState"))
+                    : solution.restoreSolution(map.getByteArray("board"));
+            game.solution = solved ? solution : null;
         }
 
-        Cell root = null;
-        Cell focus = null;
-        Cell[][] matrix;
+        startGame(game);
+        return true;
+    }
+
+    /**
+     * Take over a game restored from saved state. This runs in the game
+     * logic, holding our lock, after the cells have been reset.
+     *
+     * @param game The restored game.
+     */
+    private void restoreGame(GameStart game)
+    {
+        board.copyFrom(game.board);
+        if (!moveLog.restore(game.moveLog, board))
+            moveLog.clear();
+
+        hints = game.hints;
+        record = game.record;
+        if (record != null)
+            recordStart = sim.now() - record.duration();
+        setFocus(cellMatrix[board.getFocusX()][board.getFocusY()]);
+        solvedState = game.solution;
+
+        publish(sim.now());
+        sim.wake();
+        requestRender();
     }
 
     // ******************************************************************** //
@@ -1543,7 +1878,17 @@ public class BoardView
 
     private static final long SOLVE_ROTATE_TIME = 350;// Time taken to rotate a cell in solve mode, in ms
 
-    private static final SecureRandom RandomNumberGenerator = new SecureRandom();// Random number generator for the game
+    private static final long SIM_STEP_TIME = 10;// Length of a step of the game logic, in ms
+
+    private static final int COMMAND_QUEUE_SIZE = 64;// Most input commands waiting for the game logic
+
+    private static final int MOVE_LOG_CAPACITY = 256;// Moves the move log has room for before it grows
+
+    private static final long REPLAY_SETTLE_TIME = 2000;// Simulation time in ms a headless replay runs for between checks, and after the last move
+
+    private static final int PREFETCH_DEPTH = 2;// Number of puzzles to keep ready per skill and board size
+
+    private static final XoshiroRandom RandomNumberGenerator = new XoshiroRandom();// Random number generator for setting up games; UI thread only
 
     private MainActivity parentApp;// The parent application
 
@@ -1552,25 +1897,92 @@ public class BoardView
 
     //private Screen screenConfig = Screen.HUGE;// Screen configuration which matches the physical screen size
 
-    private boolean drawBlips = true;// If true, draw blips representing data moving through the network
+    private boolean animating = false;// If true, some cell had an animation running in the last frame; renderer only
+
+    // The game logic's clock and thread. It steps the logic holding our lock, and asks for a
+    // frame after each step
+    private final Simulation sim = new Simulation(new Simulation.Logic()
+    {
+        @Override
+        public long step(long now)
+        {
+            return simStep(now);
+        }
+
+        @Override
+        public void stepped()
+        {
+            requestRender();
+        }
+    }, this, SIM_STEP_TIME);
+
+    // Input from the UI thread to the game logic; and the game it has set up for the logic to
+    // start, on the next OP_START, if it hasn't yet
+    private final CommandQueue commands = new CommandQueue(COMMAND_QUEUE_SIZE);
+    private final AtomicReference<GameStart> pendingGame = new AtomicReference<>();
+
+    // Snapshots of the game state from the logic to the renderer, and the number of the last
+    // one published; replaced with the cell matrix, which they refer to
+    private volatile SnapshotBuffer snapshots;
+    private long snapshotSerial = 0;
+
+    // The renderer's state: the snapshot being drawn, the simulation time in ms which the frame
+    // shows, and the random number generator for the terminal data noise
+    private BoardSnapshot frame = null;
+    private long renderNow = 0;
+    private final XoshiroRandom noiseRng = new XoshiroRandom();
+
+    private final Rect blipBounds = new Rect();// Screen area covered by the blips drawn in the last frame
+
+    private boolean drawBlips = true;// If true, draw blips representing data moving through the network; game logic only
+
+    private final XoshiroRandom simRng = new XoshiroRandom();// Random number generator for the game logic; game logic only
 
     private Skill gameSkill;// The skill level of the current game
 
-    private Cell rootCell;    // The rootCell cell of the layout; where the server is
+    private Board board;    // The game logic; the cells are views of its tiles
 
-    private Cell focusedCell;    // The cell which currently has the focus
+    // The player's moves, for undo and redo; and the cell tapped in the commands being applied,
+    // or -1, with the quarter turns its taps add up to, which are logged as one move; game
+    // logic only
+    private final MoveLog moveLog = new MoveLog(MOVE_LOG_CAPACITY);
+    private int batchTile = -1;
+    private int batchQuarters = 0;
+
+    // Works out hints for the current game; null if there are none. It's built with the game,
+    // off the simulation thread, as it solves the network
+    private HintEngine hints = null;
 
-    private boolean[][] isConnected;    // Connected flags for each cell in the board; used in updateConnections()
+    // The record of the current game, null if it isn't being recorded; and
+    // the simulation time in ms at which the game started
+    private GameRecord record = null;
+    private long recordStart = 0;
 
-    private LinkedList<Cell> connectingCells = new LinkedList<>();    // List of outstanding connected cells; used in updateConnections()
+    // The record being replayed, null if none; the next move to make; and
+    // the simulation time in ms at which the replay started, and its speed
+    private GameRecord replaying = null;
+    private int replayNext = 0;
+    private long replayStart = 0;
+    private float replaySpeed = 1;
+
+    private boolean connectionsPending = false;// If true, cells have started rotating this step, so the connections need updating; game logic only
+
+    private BlipField blips;    // The data blips flowing over the board
+
+    private final Generator generator = new Generator();    // Builds new networks in parallel
+
+    // Puzzles built in the background, so that new games start straight away
+    private final PuzzleQueue puzzles = new PuzzleQueue(PREFETCH_DEPTH, new XoshiroRandom());
+
+    private Cell focusedCell;    // The cell which currently has the focus
 
     private Cell pressedCell = null;    // Cell currently being pressed in a touch event
 
-    private long blipsLastAdvance = 0;    // The time in ms at which we last completed a data blip move cycle
+    private long blipsLastAdvance = 0;    // The simulation time in ms at which we last completed a data blip move cycle
 
     private int blipCount = 0;    // Count of data blip generations
 
-    private long lastProgMove = 0;    // Time a which we executed the last move in the programme
+    private long lastProgMove = 0;    // Simulation time at which we executed the last move in the programme
 
     // Width and height of the playing board, in cells. This is tailored to suit the screen size
     // and orientation. It should be invariant on any given device except that it will rotate 90
@@ -1583,7 +1995,7 @@ public class BoardView
     private Cell[][] cellMatrix;
 
     // "Solved" (i.e. initial, pre-scrambled) state of the board. This is the canonical solution
-    private Bundle solvedState = null;
+    private Board solvedState = null;
 
     // Width and height of the cells in the board, in pixels
     private int cellWidth;
@@ -1593,16 +2005,6 @@ public class BoardView
     private int paddingX = 0;
     private int paddingY = 0;
 
-    // Size of the game board, and offset of the first and last active cells.
-    // These are set up to define the actual board area in use for a given
-    // game. These change depending on the skill level.
-    private int boardWidth;
-    private int boardHeight;
-    private int boardStartX;
-    private int boardStartY;
-    private int boardEndX;
-    private int boardEndY;
-
     // Backing bitmap for the board, and a Canvas to draw in it
     private Bitmap backingBitmap = null;
     private Canvas backingCanvas = null;
@@ -1613,10 +2015,15 @@ public class BoardView
     private Handler longPressHandler = new Handler(Looper.getMainLooper());
     private boolean longPressed = false;
 
-    // Programed moves - if this list is non-null and non-empty, it contains a set of moves
-    // to be performed without user input. Each move consists of a cell X and Y, and the number
-    // of degrees to rotate the cell - which must be either -180, -90, 90, or 180.
-    private LinkedList<int[]> programmedMoves = null;
+    // Programed moves - if this list is non-null, it contains a set of moves to be performed
+    // without user input, from progMoveNext on. Each move is packed by Board.move(), and
+    // consists of a tile, and the number of degrees to rotate it - either -90 or 90.
+    private IntList programmedMoves = null;
+    private int progMoveNext = 0;
+
+    // The autosolver's solve in the background, if it has no solution to hand and is working one
+    // out; null if not. Game logic only
+    private BackgroundSolve autosolving = null;
 
     private static final int CELL_MIN = 28;        //The minimum cell size in pixels
     private static final int CELL_MAX = 500;    //The maximum cell size in pixels
@@ -1,105 +1,55 @@
 package com.jimnastic.modernscramblednet;
 
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
-import android.os.Bundle;
+import android.graphics.Rect;
 
-import java.security.SecureRandom;
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.CellDirection;
+import com.jimnastic.netcore.XoshiroRandom;
+
+import java.io.File;
 
 /**
- * This class implements a cell in the game board. It handles the logic and
- * state of the cell, and implements the visible view of the cell.
+ * This class implements the visible view of a cell in the game board. The
+ * logical state of the cell lives in the netcore Board; this class handles the
+ * animation and drawing of it.
+ * 
+ * <p>
+ * The animation state belongs to the simulation thread, which copies it into a
+ * BoardSnapshot at each step. The renderer draws from the snapshot, and keeps
+ * its own record of what it last drew, so the two threads share nothing but
+ * the snapshots.
  */
 class Cell {
 
-	// ******************************************************************** //
-	// Public Types.
-	// ******************************************************************** //
-
-	/**
-	 * Define the connected direction combinations. The enum is carefully
-	 * organised so that the ordinal() of each value is a bitmask representing
-	 * the connected directions. This allows us to manipulate directions more
-	 * easily.
-	 * 
-	 * Each enum value also stores the ID of the bitmap representing it, or zero
-	 * if none. Note that this is the bitmap for the cabling layer, not the
-	 * background or foreground (terminal etc).
-	 */
-	enum CellDirection {
-		FREE(0), // Unconnected cell.
-		___L(R.drawable.cable0001),
-		__D_(R.drawable.cable0010),
-		__DL(R.drawable.cable0011),
-		_R__(R.drawable.cable0100),
-		_R_L(R.drawable.cable0101),
-		_RD_(R.drawable.cable0110),
-		_RDL(R.drawable.cable0111),
-		U___(R.drawable.cable1000),
-		U__L(R.drawable.cable1001),
-		U_D_(R.drawable.cable1010),
-		U_DL(R.drawable.cable1011),
-		UR__(R.drawable.cable1100),
-		UR_L(R.drawable.cable1101),
-		URD_(R.drawable.cable1110),
-		URDL(R.drawable.cable1111),
-		NONE(0); // Not a cell.
-
-		CellDirection(int img) {
-			imageId = img;
-		}
-
-		private static CellDirection getDir(int bits) {
-			return dirs[bits];
-		}
-
-		static final CellDirection[] dirs = values();
-		static final CellDirection[] cardinals = {
-			___L,
-			__D_,
-			_R__,
-			U___
-		};
-		static final int[][] cardinalOffs = {
-			{ -1, 0 }, // ___L
-			{ 0, 1 }, // __D_
-			{ 1, 0 }, // _R__
-			{ 0, -1 }, // U___
-		};
-
-		// The direction which is the reverse of this one.
-		CellDirection reverse = null;
-		static {
-			U___.reverse = __D_;
-			_R__.reverse = ___L;
-			__D_.reverse = U___;
-			___L.reverse = _R__;
-		}
-
-		final int imageId;
-
-		private Bitmap normalImg = null;
-		private Bitmap greyImg = null;
-	}
-
 	// ******************************************************************** //
 	// Constructor.
 	// ******************************************************************** //
 
 	/**
 	 * Set up this cell.
+	 * @param b
+	 *            The board holding the cell's game state.
 	 * @param x
 	 *            This cell's x-position in the board grid.
 	 * @param y
 	 *            This cell's y-position in the board grid.
 	 */
-	Cell(int x, int y) {
+	Cell(Board b, int x, int y) {
+		board = b;
 		xindex = x;
 		yindex = y;
+		tile = b.index(x, y);
 
 		// Create the temp objects used in drawing
 		cellLeft = 0;
@@ -109,7 +59,7 @@ class Cell {
 		cellPaint = new Paint();
 
 		// Reset the cell's state.
-		reset(CellDirection.NONE);
+		reset();
 	}
 
 	// ******************************************************************** //
@@ -117,65 +67,107 @@ class Cell {
 	// ******************************************************************** //
 
 	/**
-	 * Initialise the pixmaps used by the Cell class.
+	 * Initialise the pixmaps used by the Cell class. All the images are packed
+	 * into one atlas for the cell size. The atlases are cached in memory, so
+	 * going back to a cell size we've had before, e.g. on rotation, doesn't
+	 * load the images again; and in the app's cache directory, so a new
+	 * process can load an atlas in one go rather than build it.
 	 * 
-	 * @param res
-	 *            Handle on the application resources.
+	 * @param context
+	 *            Context to load the images with.
 	 * @param width
 	 *            The cell width.
 	 * @param height
 	 *            The cell height
 	 */
-	static void initPixmaps(Resources res, int width, int height) {
-		// Load all the cable pixmaps
-		for (CellDirection d : CellDirection.dirs) {
-			if (d.imageId == 0)
-				continue;
-
-			// Load the pixmap for this cable configuration. Scale it to the right size
-			Bitmap base = BitmapFactory.decodeResource(res, d.imageId);
-			Bitmap pixmap = Bitmap
-					.createScaledBitmap(base, width, height, true);
-			d.normalImg = pixmap;
-
-			// Create a greyed-out version of the image for the disconnected version of the node
-			d.greyImg = greyOut(pixmap);
+	static void initPixmaps(Context context, int width, int height) {
+		if (spriteCache == null) {
+			Context app = context.getApplicationContext();
+			Resources res = app.getResources();
+			int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+			File dir = new File(app.getCacheDir(), "sprites");
+			if (!dir.isDirectory() && !dir.mkdirs())
+				dir = null;
+			spriteCache = new SpriteCache(budget, dir, spriteVersion(app), SPRITE_COUNT,
+					(w, h, config) -> createAtlas(res, w, h, config));
 		}
 
-		// Load the other pixmaps we use
-		for (Image i : Image.values()) {
-			Bitmap base = BitmapFactory.decodeResource(res, i.resid);
-			i.bitmap = Bitmap.createScaledBitmap(base, width, height, true);
+		// Sprites need alpha, whatever the format of the surface.
+		atlas = spriteCache.get(width, height, Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * Get the version tag for saved atlases. This changes whenever the app is
+	 * installed or updated, which is when the images can change.
+	 * 
+	 * @param context
+	 *            The app's context.
+	 * @return The version tag.
+	 */
+	private static String spriteVersion(Context context) {
+		try {
+			PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+			return Long.toHexString(info.lastUpdateTime);
+		} catch (PackageManager.NameNotFoundException e) {
+			return "0";
 		}
 	}
 
 	/**
-	 * Create a greyed-out version of the given pixmap.
+	 * Load all our images into a new atlas. The sprites are added in the
+	 * order of their fixed indices, so an atlas saved by one process can be
+	 * used by another.
 	 * 
-	 * @param pixmap
-	 *            Base pixmap
-	 * @return Greyed-out version of this pixmap.
+	 * @param res
+	 *            Resources to load the images from.
+	 * @param width
+	 *            The cell width.
+	 * @param height
+	 *            The cell height
+	 * @param config
+	 *            Pixel format for the atlas.
+	 * @return The new atlas.
 	 */
-	private static Bitmap greyOut(Bitmap pixmap) {
-		// Get the pixel data from the pixmap
-		int width = pixmap.getWidth();
-		int height = pixmap.getHeight();
-		int[] pixelCount = new int[width * height];
-		pixmap.getPixels(pixelCount, 0, width, 0, 0, width, height);
-
-		// Grey-out the image in the pixel data
-		for (int y = 0; y < height; ++y) {
-			for (int x = 0; x < width; ++x) {
-				int pix = pixelCount[y * width + x];
-				int r = (Color.red(pix) * 2 / 3);
-				int g = (Color.green(pix) * 2 / 3);
-				int b = (Color.blue(pix) * 2 / 3);
-				pixelCount[y * width + x] = Color.argb(Color.alpha(pix), r, g, b);
-			}
+	private static SpriteAtlas createAtlas(Resources res, int width, int height, Bitmap.Config config) {
+		SpriteAtlas a = new SpriteAtlas(width, height, SPRITE_COUNT, config);
+
+		// Load the background, equipment and blip pixmaps
+		for (Image i : Image.values())
+			addImage(a, res, i.resid, width, height);
+
+		// Load all the cable pixmaps
+		for (CellDirection d : CellDirection.dirs) {
+			int imageId = CABLE_IMAGES[d.ordinal()];
+			if (imageId != 0)
+				addImage(a, res, imageId, width, height);
 		}
 
-		// Create and return a pixmap from the greyed-out pixel data
-		return Bitmap.createBitmap(pixelCount, width, height, Bitmap.Config.ARGB_8888);
+		return a;
+	}
+
+	/**
+	 * Load an image, scale it to the cell size, and add it to an atlas.
+	 * 
+	 * @param a
+	 *            The atlas to add to.
+	 * @param res
+	 *            Resources to load the image from.
+	 * @param resid
+	 *            Resource ID of the image.
+	 * @param width
+	 *            The cell width.
+	 * @param height
+	 *            The cell height
+	 * @return The image's index in the atlas.
+	 */
+	private static int addImage(SpriteAtlas a, Resources res, int resid, int width, int height) {
+		Bitmap base = BitmapFactory.decodeResource(res, resid);
+		Bitmap pixmap = Bitmap.createScaledBitmap(base, width, height, true);
+		int sprite = a.add(pixmap);
+		if (pixmap != base)
+			pixmap.recycle();
+		base.recycle();
+		return sprite;
 	}
 
 	// ******************************************************************** //
@@ -183,31 +175,17 @@ class Cell {
 	// ******************************************************************** //
 
 	/**
-	 * Reset the state of this cell, and set the cell's isConnected directions
-	 * to the given value.
-	 * 
-	 * @param d
-	 *            Connection directions to set for the cell.
+	 * Reset the animation state of this cell. The game state is reset by the
+	 * Board.
 	 */
-	void reset(CellDirection d) {
-		connectedDirs = d;
-		isConnected = false;
-		isFullyConnected = false;
-		isRoot = false;
-		isLocked = false;
-		isBlind = false;
+	void reset() {
 		rotateTarget = 0;
 		rotateStart = 0;
 		rotateAngle = 0;
 		highlightOn = false;
 		highlightStart = 0;
 		highlightPos = 0;
-		blipsIncoming = 0;
-		blipsOutgoing = 0;
-		blipsTransfer = 0;
 		haveFocus = false;
-
-		invalidate();
 	}
 
 	// ******************************************************************** //
@@ -257,265 +235,10 @@ class Cell {
 		return yindex;
 	}
 
-	// ******************************************************************** //
-	// Neighbouring Cell Tracking.
-	// ******************************************************************** //
-
-	/**
-	 * Set the cell's neighbours in the game matrix. A neighbour may be null if
-	 * there is no neighbour in that direction. If wrapping is enabled, the
-	 * neighbour setup should reflect this.
-	 * 
-	 * This information can change between games, due to board size and wrapping
-	 * changes.
-	 * 
-	 * @param u
-	 *            Neighbouring cell up from this one.
-	 * @param d
-	 *            Neighbouring cell down from this one.
-	 * @param l
-	 *            Neighbouring cell left from this one.
-	 * @param r
-	 *            Neighbouring cell right from this one.
-	 */
-	void setNeighbours(Cell u, Cell d, Cell l, Cell r) {
-		nextU = u;
-		nextD = d;
-		nextL = l;
-		nextR = r;
-	}
-
-	/**
-	 * Get the neighbouring cell in the given direction from this cell.
-	 * 
-	 * @param d
-	 *            The direction to look in.
-	 * @return The next cell in the given direction; may be null, or may
-	 *         actually be at the other edge of the board if wrapping is on.
-	 */
-	Cell next(CellDirection d) {
-		switch (d) {
-		case U___:
-			return nextU;
-		case _R__:
-			return nextR;
-		case __D_:
-			return nextD;
-		case ___L:
-			return nextL;
-		default:
-			throw new RuntimeException("Cell.next() called with bad dir");
-		}
-	}
-
-	// ******************************************************************** //
-	// Connection State.
-	// ******************************************************************** //
-
-	/**
-	 * Return the directions that this cell is connected to, outwards (ie.
-	 * ignoring whether there is a matching inward connection in the next cell).
-	 * 
-	 * @return The directions that this cell is connected to, outwards.
-	 */
-	CellDirection dirs() {
-		return connectedDirs;
-	}
-
-	/**
-	 * Return the directions that this cell would be connected to, outwards, if
-	 * it was rotated in the given direction.
-	 * 
-	 * @param a
-	 *            The angle in degrees to rotate to; clockwise positive.
-	 * @return The directions that this cell is connected to, outwards.
-	 */
-	CellDirection rotatedDirs(int a) {
-		int bits = connectedDirs.ordinal();
-
-		if (a == 90)
-			bits = ((bits & 0x01) << 3) | ((bits & 0x0e) >> 1);
-		else if (a == -90)
-			bits = ((bits & 0x08) >> 3) | ((bits & 0x07) << 1);
-		else if (a == 180 || a == -180)
-			bits = ((bits & 0x0c) >> 2) | ((bits & 0x03) << 2);
-		else
-			return null;
-
-		return CellDirection.getDir(bits);
-	}
-
-	/**
-	 * Query whether this cell has a connection in the given direction(s)
-	 * 
-	 * @param d	Direction(s) to check
-	 * @return	True if the cell is connected in all the given directions; else false
-	 */
-	boolean hasConnection(CellDirection d) {
-		return !isRotated()
-				&& (connectedDirs.ordinal() & d.ordinal()) == d.ordinal();
-	}
-
-	/**
-	 * Determine how many connections this cell has outwards (ie. ignoring whether there is a
-	 * matching inward connection in the next cell)
-	 * 
-	 * @return The number of outward connections from this cell
-	 */
-	int numDirs() {
-		if (connectedDirs == CellDirection.NONE)
-			return 0;
-
-		int bits = connectedDirs.ordinal();
-		int n = 0;
-		for (int i = 0; i < 4; ++i) {
-			n += bits & 0x01;
-			bits >>= 1;
-		}
-		return n;
-	}
-
-	/**
-	 * Add the given direction as a direction this cell is connected to,
-	 * outwards (ie. no attempt is made to make the reciprocal connection in the
-	 * other cell).
-	 * 
-	 * @param d
-	 *            New connected direction to add for this cell.
-	 */
-	void addDir(CellDirection d)
-	{
-		int bits = connectedDirs.ordinal();
-		if ((bits & d.ordinal()) == d.ordinal())
-			return;
-
-		bits |= d.ordinal();
-		setDirs(CellDirection.getDir(bits));
-	}
-
-	/**
-	 * Set the connected directions of this cell to the given value.
-	 * 
-	 * @param d
-	 *            New connected directions for this cell.
-	 */
-	void setDirs(CellDirection d)
-	{
-		if (d == connectedDirs)
-			return;
-		connectedDirs = d;
-		invalidate();
-	}
-
 	// ******************************************************************** //
 	// Display Options.
 	// ******************************************************************** //
 
-	/**
-	 * Set the "root" flag on this cell. The root cell displays the server
-	 * image.
-	 * 
-	 * @param b
-	 *            New "root" flag for this cell.
-	 */
-	void setRoot(boolean b)
-	{
-		if (isRoot == b)
-			return;
-		isRoot = b;
-		invalidate();
-	}
-
-	/**
-	 * Set this cell's "blind" flag. A blind cell doesn't display its
-	 * connections; it does display the server or terminal if appropriate. This
-	 * is used to make the game harder.
-	 * 
-	 * @param b
-	 *            The new "blind" flag (true = blind).
-	 */
-	void setBlind(boolean b)
-	{
-		if (b != isBlind) {
-			isBlind = b;
-			invalidate();
-		}
-	}
-
-	/**
-	 * Rotate this cell right now -- no animation. This is used during restore,
-	 * when we need to adjust the state of the board for device rotations, not
-	 * during play.
-	 * 
-	 * @param a
-	 *            The angle in degrees to rotate to; clockwise positive.
-	 */
-	void rotateImmediate(int a)
-	{
-		setDirs(rotatedDirs(a));
-		invalidate();
-	}
-
-	/**
-	 * Determine whether this cell's "locked" flag is set.
-	 * 
-	 * @return This cell's "locked" flag.
-	 */
-	boolean isLocked()
-	{
-		return isLocked;
-	}
-
-	//Set the "locked" flag on this cell. A locked cell is marked by a highlighted background
-	void setLocked(boolean newlocked)
-	{
-		if (isLocked == newlocked)
-			return;
-		isLocked = newlocked;
-		invalidate();
-	}
-
-	/**
-	 * Determine whether this cell's "connected" flag is set.
-	 * 
-	 * @return This cell's "connected" flag.
-	 */
-	boolean isConnected()
-	{
-		return isConnected;
-	}
-
-	/**
-	 * Set this cell's "connected" flag; this determines how the cell is
-	 * displayed (cables are greyed-out if not connected).
-	 * 
-	 * @param b
-	 *            New "connected" flag for this cell.
-	 */
-	void setConnected(boolean b)
-	{
-		if (isConnected == b)
-			return;
-		isConnected = b;
-
-		invalidate();
-	}
-
-	/**
-	 * Set this cell's "fully connected" flag; this determines how the cell is
-	 * displayed. For the server, this is used to indicate victory.
-	 *
-	 * @param b
-	 *            New "fully connected" flag for this cell.
-	 */
-	void setSolved(boolean b)
-	{
-		if (isFullyConnected == b)
-			return;
-		isFullyConnected = b;
-		invalidate();
-	}
-
 	/**
 	 * Set whether this cell is focused or not.
 	 * 
@@ -525,21 +248,9 @@ class Cell {
 	 */
 	void setFocused(boolean focused)
 	{
-		// We do our own focus highlight in onDraw(), so when the focus state changes, we have to redraw.
+		// We do our own focus highlight in drawCell(); the renderer sees the
+		// change in the next snapshot.
 		haveFocus = focused;
-		invalidate();
-	}
-
-	/**
-	 * Add a data blip on the incoming connection in the given direction, if we
-	 * have one.
-	 * 
-	 * @param d
-	 *            Direction the blip is in, from our point of view.
-	 */
-	void setBlip(CellDirection d) {
-		if (hasConnection(d))
-			blipsIncoming |= d.ordinal();
 	}
 
 	// ******************************************************************** //
@@ -575,60 +286,67 @@ class Cell {
 	 *            Time in ms over which to do the rotation.
 	 */
 	void rotate(int a, long time) {
-		// If we're not already rotating, set it up.
+		// If we're not already rotating, set it up. The rotation starts at
+		// the next logic step, on the simulation clock.
 		if (rotateTarget == 0) {
-			rotateStart = System.currentTimeMillis();
+			rotateStart = NOT_STARTED;
 			rotateAngle = 0f;
 			rotateTime = time;
 		}
 
-		// Add the given rotation in.
+		// Add the given rotation in. Whole turns queued up by fast tapping
+		// change nothing, so drop them: if the rotation hasn't started yet,
+		// down to nothing; otherwise down to at most one turn past the
+		// quarter we're in, so the animation carries on smoothly.
 		rotateTarget += a;
+		if (rotateStart == NOT_STARTED)
+			rotateTarget %= 360f;
+		else
+			while (Math.abs(rotateTarget) > 360f)
+				rotateTarget -= Math.signum(rotateTarget) * 360f;
 
-		// All data blips are lost.
-		blipsIncoming = 0;
-		blipsOutgoing = 0;
-		blipsTransfer = 0;
-	}
-
-	/**
-	 * Query whether this cell is currently rotated off the orthogonal
-	 * 
-	 * @return True if the cell is not at its base angle
-	 */
-	boolean isRotated() {
-		return rotateTarget != 0;
+		// While we're off the orthogonal, the tile has no connections.
+		board.setRotating(xindex, yindex, rotateTarget != 0);
 	}
 
 	//Set the highlight state of the cell
 	void doHighlight() {
 		// If one is currently running, just start over
 		highlightOn = true;
-		highlightStart = System.currentTimeMillis();
+		highlightStart = NOT_STARTED;
 		highlightPos = 0;
 	}
 
 	/**
-	 * Update the state of the application for the current frame.
-	 * 
-	 * <p>
-	 * Applications must override this, and can use it to update for example the
-	 * physics of a game. This may be a no-op in some cases.
+	 * Determine whether this cell has a rotation or highlight animation in
+	 * progress, which will need drawing on the next frame.
 	 * 
-	 * <p>
-	 * doDraw() will always be called after this method is called; however, the
-	 * converse is not true, as we sometimes need to draw just to update the
-	 * screen. Hence this method is useful for updates which are dependent on
-	 * time rather than frames.
+	 * @return true if the cell is animating.
+	 */
+	boolean isAnimating() {
+		return rotateTarget != 0 || highlightOn;
+	}
+
+	/**
+	 * Run one step of this cell's logic. This moves on the rotation, turning
+	 * the tile's connections as it passes each quarter turn, and runs out the
+	 * highlight. It is called at each step of the simulation, which is
+	 * separate from drawing; interpolate() works out what to draw.
 	 * 
 	 * @param now
-	 *            Current time in ms.
+	 *            Current simulation time in ms.
 	 * @return true if this cell changed its connection state.
 	 */
 	protected boolean doUpdate(long now) {
 		// Flag if we changed our connection state.
 		boolean changed = false;
 
+		// Start any animations which have been asked for since the last step.
+		if (rotateTarget != 0 && rotateStart == NOT_STARTED)
+			rotateStart = now;
+		if (highlightOn && highlightStart == NOT_STARTED)
+			highlightStart = now;
+
 		// If we've got a rotation going on, move it on.
 		if (rotateTarget != 0) {
 			// Calculate the angle based on how long we've been going.
@@ -637,13 +355,12 @@ class Cell {
 			if (rotateTarget < 0)
 				rotateAngle = -rotateAngle;
 
-			// If we've gone past 90 degrees, change the connected directions.
-			// Rotate the directions bits (the bottom 4 bits of the ordinal)
-			// right or left, as appropriate.
+			// If we've gone past 90 degrees, change the connected directions
+			// of the tile right or left, as appropriate.
 			if (Math.abs(rotateAngle) >= 90f) {
-				CellDirection dir;
+				int dir;
 				if (rotateTarget > 0) {
-					dir = rotatedDirs(90);
+					dir = 90;
 					if (rotateAngle >= rotateTarget)
 						rotateAngle = rotateTarget = 0f;
 					else {
@@ -652,7 +369,7 @@ class Cell {
 						rotateStart += rotateTime;
 					}
 				} else {
-					dir = rotatedDirs(-90);
+					dir = -90;
 					if (rotateAngle <= rotateTarget)
 						rotateAngle = rotateTarget = 0f;
 					else {
@@ -661,11 +378,10 @@ class Cell {
 						rotateStart += rotateTime;
 					}
 				}
-				setDirs(dir);
+				board.setRotating(xindex, yindex, rotateTarget != 0);
+				board.rotate(xindex, yindex, dir);
 				changed = true;
 			}
-
-			invalidate();
 		}
 
 		// If there's a highlight showing, advance it.
@@ -681,75 +397,90 @@ class Cell {
 				highlightStart = 0;
 				highlightPos = 0;
 			}
-
-			invalidate();
 		}
 
 		return changed;
 	}
 
 	/**
-	 * Move on all the data blips one step, i.e. half a cell width. This steps
-	 * them from whichever connection leg they're on to the next one.
-	 * 
-	 * @param count
-	 *            Blip generation count.
-	 */
-	void advanceBlips(int count) {
-		// See which outgoing blips need to be transferred onto the next
-		// cell. Accumulate their directions in blipsTransfer.
-		blipsTransfer = 0;
-		for (int c = 0; c < CellDirection.cardinals.length; ++c) {
-			CellDirection d = CellDirection.cardinals[c];
-			int ord = d.ordinal();
-			if ((blipsOutgoing & ord) != 0 && hasConnection(d))
-				blipsTransfer |= ord;
-		}
-		blipsOutgoing = 0;
-
-		// All incoming blips get deleted, and become outgoing blips on
-		// whatever directions did not have incoming blips.
-		if (blipsIncoming != 0) {
-			for (int c = 0; c < CellDirection.cardinals.length; ++c) {
-				CellDirection d = CellDirection.cardinals[c];
-				int ord = d.ordinal();
-				if ((blipsIncoming & ord) == 0 && hasConnection(d))
-					blipsOutgoing |= ord;
-			}
-		}
-		blipsIncoming = 0;
-
-		// If we're the server, create new outgoing blips once in a while.
-		if (isRoot && count % 6 == 0) {
-			for (int c = 0; c < CellDirection.cardinals.length; ++c) {
-				CellDirection d = CellDirection.cardinals[c];
-				int ord = d.ordinal();
-				if (hasConnection(d))
-					blipsOutgoing |= ord;
-			}
+	 * Copy this cell's state into a snapshot for the renderer. This is called
+	 * by the simulation thread at the end of each step.
+	 * 
+	 * @param snap
+	 *            The snapshot to fill in.
+	 */
+	void capture(BoardSnapshot snap) {
+		int f = 0;
+		if (board.isConnected(xindex, yindex))
+			f |= BoardSnapshot.CONNECTED;
+		if (board.isLocked(xindex, yindex))
+			f |= BoardSnapshot.LOCKED;
+		if (board.isBlind(xindex, yindex))
+			f |= BoardSnapshot.BLIND;
+		if (board.isRoot(xindex, yindex))
+			f |= BoardSnapshot.ROOT;
+		if (board.isSolved(xindex, yindex))
+			f |= BoardSnapshot.SOLVED;
+		if (haveFocus)
+			f |= BoardSnapshot.FOCUSED;
+		if (highlightOn)
+			f |= BoardSnapshot.HIGHLIGHT;
+
+		snap.dirs[tile] = (byte) board.dirs(xindex, yindex).ordinal();
+		snap.flags[tile] = (byte) f;
+		snap.rotateTarget[tile] = rotateTarget;
+		snap.rotateStart[tile] = rotateStart;
+		snap.rotateTime[tile] = rotateTime;
+		snap.highlightStart[tile] = highlightStart;
+	}
+
+	/**
+	 * Work out how to draw this cell at the given time, from a snapshot of
+	 * the game state. This is called by the renderer before drawing each
+	 * frame; the time may be a little ahead of the snapshot, so the
+	 * animations move smoothly between steps, but they're held at the point
+	 * the logic will next act on. If anything has changed since the cell was
+	 * last drawn, it needs drawing.
+	 * 
+	 * @param snap
+	 *            The snapshot to draw.
+	 * @param time
+	 *            Time to draw at, on the simulation clock, in ms.
+	 * @return true if the cell is animating.
+	 */
+	boolean prepare(BoardSnapshot snap, long time) {
+		final int dirs = snap.dirs[tile];
+		final int flags = snap.flags[tile];
+		final float target = snap.rotateTarget[tile];
+
+		float angle = 0f;
+		if (target != 0) {
+			long start = snap.rotateStart[tile];
+			if (start != NOT_STARTED)
+				angle = (float) (time - start) / (float) snap.rotateTime[tile] * 90f;
+			angle = Math.max(0f, Math.min(angle, Math.abs(target)));
+			if (target < 0)
+				angle = -angle;
 		}
 
-		// Note that we don't invalidate(). Blips are drawn directly to
-		// the screen in a separate pass.
-	}
+		int hpos = 0;
+		if ((flags & BoardSnapshot.HIGHLIGHT) != 0) {
+			long start = snap.highlightStart[tile];
+			float frac = 0f;
+			if (start != NOT_STARTED)
+				frac = (float) (time - start) / (float) HIGHLIGHT_TIME;
+			hpos = Math.max(0, Math.min((int) (frac * cellWidth * 2), cellWidth * 2 - 1));
+		}
 
-	/**
-	 * Pass on all blips which were outgoing onto their next cell.
-	 */
-	void transferBlips() {
-		for (int c = 0; c < CellDirection.cardinals.length; ++c) {
-			CellDirection d = CellDirection.cardinals[c];
-			int ord = d.ordinal();
-			if ((blipsTransfer & ord) != 0) {
-				Cell n = next(d);
-				if (n != null)
-					n.setBlip(d.reverse);
-			}
+		if (dirs != drawDirs || flags != drawFlags || angle != drawAngle || hpos != drawHighlightPos) {
+			drawDirs = dirs;
+			drawFlags = flags;
+			drawAngle = angle;
+			drawHighlightPos = hpos;
+			invalidate();
 		}
-		blipsTransfer = 0;
 
-		// Note that we don't invalidate(). Blips are drawn directly to
-		// the screen in a separate pass.
+		return target != 0 || (flags & BoardSnapshot.HIGHLIGHT) != 0;
 	}
 
 	// ******************************************************************** //
@@ -757,24 +488,64 @@ class Cell {
 	// ******************************************************************** //
 
 	/**
-	 * Set this cell's state to be invalid, forcing a redraw.
+	 * Set this cell's state to be invalid, forcing a redraw. This is for the
+	 * renderer's thread only.
 	 */
 	void invalidate() {
 		stateValid = false;
 	}
 
+	/**
+	 * Determine whether this cell needs to be redrawn by doDraw().
+	 * 
+	 * @return true if the cell's rendered state is out of date.
+	 */
+	boolean needsDraw() {
+		return !stateValid;
+	}
+
 	/**
 	 * This method is called to ask the cell to draw itself. Note that this
 	 * draws the cell but not any data blips, which are drawn separately.
 	 * 
 	 * @param canvas
 	 *            Canvas to draw into
+	 * @param dirty
+	 *            If we redraw, our area is added to this.
 	 */
-	protected void doDraw(Canvas canvas) {
+	protected void doDraw(Canvas canvas, Rect dirty) {
 		// Nothing to do if we're up to date.
-		if (stateValid)
+		if (!needsDraw())
 			return;
 
+		drawCell(canvas);
+		validate(dirty);
+	}
+
+	/**
+	 * Mark this cell as drawn, and add its area to the area of the screen
+	 * which has changed.
+	 * 
+	 * @param dirty
+	 *            Rectangle to add our area to.
+	 */
+	void validate(Rect dirty) {
+		dirty.union(cellLeft, cellTop, cellLeft + cellWidth, cellTop + cellHeight);
+		stateValid = true;
+	}
+
+	/**
+	 * Draw this cell into the given canvas, whether or not it has changed.
+	 * This draws the cell but not any data blips, which are drawn separately.
+	 * It draws the state worked out by the last call to prepare().
+	 * 
+	 * @param canvas
+	 *            Canvas to draw into
+	 */
+	void drawCell(Canvas canvas) {
+		final CellDirection connectedDirs = CellDirection.dirs[drawDirs];
+		final boolean isConnected = (drawFlags & BoardSnapshot.CONNECTED) != 0;
+
 		final int sx = cellLeft;
 		final int sy = cellTop;
 		final int ex = sx + cellWidth;
@@ -794,62 +565,61 @@ class Cell {
 				bgImage = Image.NOTHING;
 			else if (connectedDirs == CellDirection.FREE)
 				bgImage = Image.EMPTY;
-			else if (isLocked)
+			else if ((drawFlags & BoardSnapshot.LOCKED) != 0)
 				bgImage = Image.LOCKED;
-			canvas.drawBitmap(bgImage.bitmap, sx, sy, null);
+			atlas.draw(canvas, bgImage.sprite, sx, sy, null);
 		}
 
 		// Draw the highlight band, if active.
-		if (highlightOn) {
+		if ((drawFlags & BoardSnapshot.HIGHLIGHT) != 0) {
 			cellPaint.setStyle(Paint.Style.STROKE);
 			cellPaint.setStrokeWidth(5f);
 			cellPaint.setColor(Color.WHITE);
-			if (highlightPos < cellWidth)
-				canvas.drawLine(sx, sy + highlightPos, sx + highlightPos, sy,
+			if (drawHighlightPos < cellWidth)
+				canvas.drawLine(sx, sy + drawHighlightPos, sx + drawHighlightPos, sy,
 						cellPaint);
 			else {
-				int hp = highlightPos - cellWidth;
+				int hp = drawHighlightPos - cellWidth;
 				canvas.drawLine(sx + hp, ey, ex, sy + hp, cellPaint);
 			}
 		}
 
 		// If we're not empty, draw the cables / equipment.
 		if (connectedDirs != CellDirection.FREE && connectedDirs != CellDirection.NONE) {
-			if (!isBlind) {
+			if ((drawFlags & BoardSnapshot.BLIND) == 0) {
 				// We need to rotate the drawing matrix if the cable is
 				// rotated.
 				canvas.save();
-				if (rotateTarget != 0)
-					canvas.rotate(rotateAngle, midx, midy);
+				if (drawAngle != 0f)
+					canvas.rotate(drawAngle, midx, midy);
 
-				// Draw the cable pixmap.
-				Bitmap pixmap = isConnected ? connectedDirs.normalImg
-						: connectedDirs.greyImg;
-				canvas.drawBitmap(pixmap, sx, sy, null);
+				// Draw the cable pixmap; greyed out if it's disconnected.
+				atlas.draw(canvas, cableSprite[connectedDirs.ordinal()], sx, sy,
+						isConnected ? null : GREY_PAINT);
 				canvas.restore();
 			}
 
 			// Draw the equipment (terminal, server) if any.
 			{
 				Image equipImage = null;
-				if (isRoot) {
-					if (isFullyConnected)
+				if ((drawFlags & BoardSnapshot.ROOT) != 0) {
+					if ((drawFlags & BoardSnapshot.SOLVED) != 0)
 						equipImage = Image.SERVER1;
 					else
 						equipImage = Image.SERVER;
-				} else if (numDirs() == 1) {
+				} else if (connectedDirs.numDirs() == 1) {
 					if (isConnected)
 						equipImage = Image.COMP2;
 					else
 						equipImage = Image.COMP1;
 				}
 				if (equipImage != null)
-					canvas.drawBitmap(equipImage.bitmap, sx, sy, null);
+					atlas.draw(canvas, equipImage.sprite, sx, sy, null);
 			}
 		}
 
 		// If this is the focused cell, indicate this by drawing a border around it
-		if (haveFocus) {
+		if ((drawFlags & BoardSnapshot.FOCUSED) != 0) {
 			cellPaint.setStyle(Paint.Style.STROKE);
 			cellPaint.setColor(0x602969CE);
 			cellPaint.setStrokeWidth(4);
@@ -857,8 +627,25 @@ class Cell {
 		}
 
 		canvas.restore();
+	}
 
-		stateValid = true;
+	/**
+	 * Add the area which this cell's data blips will be drawn in, if it has
+	 * any, to the given rectangle. Blips on their way in or out may stick
+	 * out half a cell on any side.
+	 * 
+	 * @param bounds
+	 *            Rectangle to add our blips' area to.
+	 * @param in
+	 *            Directions with incoming blips.
+	 * @param out
+	 *            Directions with outgoing blips.
+	 */
+	void addBlipBounds(Rect bounds, int in, int out) {
+		if ((in == 0 && out == 0) || (drawFlags & BoardSnapshot.BLIND) != 0)
+			return;
+		bounds.union(cellLeft - cellWidth / 2, cellTop - cellHeight / 2,
+				cellLeft + cellWidth * 3 / 2, cellTop + cellHeight * 3 / 2);
 	}
 
 	/**
@@ -869,14 +656,18 @@ class Cell {
 	 * @param canvas	Canvas to draw into
 	 * @param frac		Fractional position of the data blips, if any, along whatever connection leg
 	 *                  they're on
+	 * @param in		Directions with incoming blips
+	 * @param out		Directions with outgoing blips
+	 * @param noise		Offset into the noise table for this frame
 	 */
-	protected void doDrawBlips(Canvas canvas, float frac) {
+	protected void doDrawBlips(Canvas canvas, float frac, int in, int out, int noise) {
 		// Normal cable sections and the server get blips, including the section of cable going into
 		// a terminal cell. Otherwise, terminals get special treatment
-		if (isRoot || numDirs() > 1 || (numDirs() == 1 && frac < 0.3f))
-			drawBlips(canvas, frac);
+		final int numDirs = Integer.bitCount(drawDirs & 0x0f);
+		if ((drawFlags & BoardSnapshot.ROOT) != 0 || numDirs > 1 || (numDirs == 1 && frac < 0.3f))
+			drawBlips(canvas, frac, in, out);
 		else
-			drawTermData(canvas);
+			drawTermData(canvas, in, noise);
 	}
 
 	/**
@@ -887,11 +678,13 @@ class Cell {
 	 * @param canvas	Canvas to draw into
 	 * @param frac		Fractional position of the data blips, if any, along whatever connection
 	 *                  leg they're on.
+	 * @param in		Directions with incoming blips
+	 * @param out		Directions with outgoing blips
 	 */
-	private void drawBlips(Canvas canvas, float frac) {
+	private void drawBlips(Canvas canvas, float frac, int in, int out) {
 		// We don't check stateValid. Blips are always drawn. But if this cell's wiring is
 		// invisible, then its blips need to be too
-		if (isBlind)
+		if ((drawFlags & BoardSnapshot.BLIND) != 0)
 			return;
 
 		final int sx = cellLeft;
@@ -902,8 +695,8 @@ class Cell {
 
 		// Now draw in all blips. We use "glow-in" / "glow-out" images for the server; otherwise
 		// blips, whose colour depends on whether this cell is connected
-		final Image[] blips = isRoot ? BLIP_T_IMAGES
-				: isConnected ? BLIP_IMAGES : BLIP_G_IMAGES;
+		final Image[] blips = (drawFlags & BoardSnapshot.ROOT) != 0 ? BLIP_T_IMAGES
+				: (drawFlags & BoardSnapshot.CONNECTED) != 0 ? BLIP_IMAGES : BLIP_G_IMAGES;
 		final int nblips = blips.length;
 		int indexIn = Math.round((float) (nblips - 1) * frac) % nblips;
 		if (indexIn < 0)
@@ -917,21 +710,21 @@ class Cell {
 			int ord = d.ordinal();
 			final int xoff = CellDirection.cardinalOffs[c][0];
 			final int yoff = CellDirection.cardinalOffs[c][1];
-			if ((blipsIncoming & ord) != 0)
+			if ((in & ord) != 0)
 			{
 				final float inp = (1.0f - frac) * cellWidth / 2f;
 				final float x = sx + xoff * inp;
 				final float y = sy + yoff * inp;
 				Image blipImage = blips[indexIn];
-				canvas.drawBitmap(blipImage.bitmap, x, y, cellPaint);
+				atlas.draw(canvas, blipImage.sprite, x, y, cellPaint);
 			}
-			if ((blipsOutgoing & ord) != 0)
+			if ((out & ord) != 0)
 			{
 				final float outp = frac * cellWidth / 2f;
 				final float x = sx + xoff * outp;
 				final float y = sy + yoff * outp;
 				Image blipImage = blips[indexOut];
-				canvas.drawBitmap(blipImage.bitmap, x, y, cellPaint);
+				atlas.draw(canvas, blipImage.sprite, x, y, cellPaint);
 			}
 		}
 	}
@@ -942,11 +735,13 @@ class Cell {
 	 * cropped by the drawing of the next cell
 	 * 
 	 * @param canvas	Canvas to draw into
+	 * @param in		Directions with incoming blips
+	 * @param noise		Offset into the noise table for this frame
 	 */
-	private void drawTermData(Canvas canvas) {
+	private void drawTermData(Canvas canvas, int in, int noise) {
 		// We don't check stateValid. Blips are always drawn
 		// If this cell is invisible or not connected, or there's no blip, then nothing gets drawn
-		if (isBlind || !isConnected || blipsIncoming == 0)
+		if ((drawFlags & BoardSnapshot.BLIND) != 0 || (drawFlags & BoardSnapshot.CONNECTED) == 0 || in == 0)
 			return;
 
 		final int sx = cellLeft;
@@ -955,59 +750,16 @@ class Cell {
 		cellPaint.setStyle(Paint.Style.STROKE);
 		cellPaint.setStrokeWidth(1f);
 		cellPaint.setColor(0xff00ff00);
+		// Each terminal reads its own run of the noise table, which moves on every frame
+		int n = noise + xindex * 37 + yindex * 101;
 		for (float y = cellHeight / 3f; y < cellHeight * 0.55f; y += 2f)
 		{
 			float l = cellWidth / 3f;
-			float r = cellWidth / 3f * rng.nextFloat() + cellWidth / 3f;
+			float r = cellWidth / 3f * NOISE[n++ & NOISE_MASK] + cellWidth / 3f;
 			canvas.drawLine(sx + l, sy + y, sx + r, sy + y, cellPaint);
 		}
 	}
 
-	/**
-	 * Save the game state of this cell, as part of saving the overall game state
-	 * 
-	 * @return A Bundle containing the saved state
-	 */
-	Bundle saveState()
-	{
-		Bundle map = new Bundle();
-
-		// Save the aspects of the state which aren't part of the board configuration (that gets
-		// recreated on reload)
-		map.putString("connectedDirs", connectedDirs.toString());
-		map.putFloat("currentAngle", rotateAngle);
-		map.putInt("highlightPos", highlightPos);
-		map.putBoolean("isConnected", isConnected);
-		map.putBoolean("isFullyConnected", isFullyConnected);
-		map.putBoolean("isBlind", isBlind);
-		map.putBoolean("isRoot", isRoot);
-		map.putBoolean("isLocked", isLocked);
-
-		// Note: we don't save the focus state; focus save and restore is done in BoardView
-
-		return map;
-	}
-
-	/**
-	 * Restore the game state of this cell from the given Bundle, as part of restoring the overall
-	 * game state
-	 * 
-	 * @param map	A Bundle containing the saved state
-	 */
-	void restoreState(Bundle map)
-	{
-		connectedDirs 	 = CellDirection.valueOf(map.getString("connectedDirs"));
-		rotateAngle 	 = map.getFloat("currentAngle");
-		highlightPos	 = map.getInt("highlightPos");
-		isConnected		 = map.getBoolean("isConnected");
-		isFullyConnected = map.getBoolean("isFullyConnected");
-		isBlind 		 = map.getBoolean("isBlind");
-		isRoot 			 = map.getBoolean("isRoot");
-		isLocked 		 = map.getBoolean("isLocked");
-
-		// Phew! Time for a redraw, but we'll invalidate() at the board level
-	}
-
 	//This enumeration defines the images, other than the cable images, which we use
 	private enum Image
 	{
@@ -1046,9 +798,64 @@ class Cell {
 		}
 
 		public final int resid;
-		public Bitmap bitmap = null;
+		public final int sprite = ordinal();	// Index of the image in the atlas
+	}
+
+	// Resource IDs of the cable images for each CellDirection, indexed by
+	// ordinal; zero if none. Note that this is the bitmap for the cabling
+	// layer, not the background or foreground (terminal etc).
+	private static final int[] CABLE_IMAGES =
+		{
+			0,
+			R.drawable.cable0001,
+			R.drawable.cable0010,
+			R.drawable.cable0011,
+			R.drawable.cable0100,
+			R.drawable.cable0101,
+			R.drawable.cable0110,
+			R.drawable.cable0111,
+			R.drawable.cable1000,
+			R.drawable.cable1001,
+			R.drawable.cable1010,
+			R.drawable.cable1011,
+			R.drawable.cable1100,
+			R.drawable.cable1101,
+			R.drawable.cable1110,
+			R.drawable.cable1111,
+			0
+		};
+
+	// Atlas indices of the scaled cable images, indexed by CellDirection
+	// ordinal. The Images come first in the atlas, then the cables.
+	private static final int[] cableSprite = new int[CABLE_IMAGES.length];
+
+	// Number of sprites in an atlas
+	private static final int SPRITE_COUNT;
+
+	static {
+		int next = Image.values().length;
+		for (int i = 0; i < CABLE_IMAGES.length; ++i)
+			if (CABLE_IMAGES[i] != 0)
+				cableSprite[i] = next++;
+		SPRITE_COUNT = next;
 	}
 
+	// Paint which greys out the cables of disconnected cells, by scaling
+	// the colour down to 2/3, as they're drawn. Only used on the render
+	// thread.
+	private static final Paint GREY_PAINT = new Paint();
+
+	static {
+		ColorMatrix grey = new ColorMatrix();
+		grey.setScale(2f / 3f, 2f / 3f, 2f / 3f, 1f);
+		GREY_PAINT.setColorFilter(new ColorMatrixColorFilter(grey));
+	}
+
+	// The atlas for the current cell size, and the cache of atlases we've
+	// built; the cache is created by the first initPixmaps()
+	private static SpriteAtlas atlas = null;
+	private static SpriteCache spriteCache = null;
+
 	// Images to show network data blips
 	private static final Image[] BLIP_IMAGES =
 		{
@@ -1098,27 +905,35 @@ class Cell {
 	// Time taken to display a highlight flash, in ms.
 	private static final long HIGHLIGHT_TIME = 200;
 
-	// Random number generator for the game
-	private static final SecureRandom rng = new SecureRandom();
+	// Start time of an animation which has been asked for, but which the
+	// logic hasn't started yet
+	static final long NOT_STARTED = -1;
+
+	// Table of random values in [0, 1) for the terminal data lines, so that
+	// drawing a frame doesn't call the random number generator per line
+	private static final int NOISE_MASK = 255;
+	private static final float[] NOISE = new float[NOISE_MASK + 1];
+
+	static {
+		XoshiroRandom rng = new XoshiroRandom();
+		for (int i = 0; i < NOISE.length; ++i)
+			NOISE[i] = rng.nextFloat();
+	}
 
 	// ******************************************************************** //
 	// Private Data.
 	// ******************************************************************** //
 
-	// Our neighbouring cells up, down, left and right. This changes from game to game as each
-	// skill level has its own board size and may or may not wrap. null if there is no
-	// neighbour in that direction
-	private Cell nextU;
-	private Cell nextD;
-	private Cell nextL;
-	private Cell nextR;
-
-	// The directions in which this cell is isConnected. This is set up at the start of each game
-	private CellDirection connectedDirs;
+	// The board holding this cell's game state, and our position and tile
+	// index in it
+	private final Board board;
+	private final int xindex, yindex;
+	private final int tile;
 
 	// If we're currently rotating, the rotation target angle
-	// clockwise positive, anti negative; the time in ms at which we started;
-	// and the current angle in degrees. rotateDirection == 0 if not rotating
+	// clockwise positive, anti negative; the simulation time in ms at which
+	// we started, or NOT_STARTED; and the current angle in degrees as of the
+	// last logic step. rotateTarget == 0 if not rotating
 	private float rotateTarget = 0;
 	private long rotateStart = 0;
 	private float rotateAngle = 0f;
@@ -1126,40 +941,19 @@ class Cell {
 	// Status information for the highlight band across the cell.
 	// This is used to draw a diagonal band of highlightPos flicking across the cell, to
 	// highlight it when it is misclicked etc. Flag whether there is a highlight currently
-	// showing; and if so, the time in ms at which it started, and its current position across
-	// the cell. The range of the latter is zero to cellWidth * 2
+	// showing; and if so, the simulation time in ms at which it started, or NOT_STARTED, and
+	// its position across the cell as of the last logic step. The range of the position is
+	// zero to cellWidth * 2
 	private boolean highlightOn = false;
 	private long highlightStart = 0;
 	private int highlightPos;
 
-	// Blips drawn over the network to indicate the flow of data. A blip moving in towards the
-	// centre of the cell is incoming; one moving out is outgoing. An incoming blip becomes
-	// outgoing when it hits the centre. Each connection direction can have one blip on it, so
-	// we use bitmasks to track where blips are: each of these values is just a bitmaps of which
-	// directions have a blip, incoming or outgoing respectively
-	private int blipsIncoming = 0;
-	private int blipsOutgoing = 0;
-
-	// During a blip calculation pass, this value accumulates the data blips that need to be
-	// passed on to other cells
-	private int blipsTransfer = 0;
-
-	// True if the cell is currently isConnected (directly or not) to the server. This causes it
-	// to be displayed dark (not grey)
-	private boolean isConnected;
-
-	// True if the cell is currently part of a fully connected network - in other words, a solved
-	// puzzle. This may cause it to be displayed differently; e.g. the server shows green LEDs
-	private boolean isFullyConnected;
-
-	// True if the cell is blind. This is a difficulty factor
-	private boolean isBlind;
-
-	// True if this is the root cell of the network; ie. the server
-	private boolean isRoot;
-
-	// True if the cell has been isLocked by the user; this causes the background to be highlighted
-	private boolean isLocked;
+	// The renderer's record of what it last drew: the connected directions, the snapshot
+	// flags, the rotation angle and the highlight position. Renderer only
+	private int drawDirs = -1;
+	private int drawFlags = 0;
+	private float drawAngle = 0f;
+	private int drawHighlightPos = 0;
 
 	private boolean haveFocus;			// True if this cell has the focus
 	private long rotateTime = 250;		// Duration of the current rotation in ms
@@ -1169,5 +963,4 @@ class Cell {
 	private int cellHeight;				// Cell's current height
 	private Paint cellPaint;			// Painter used in onDraw()
 	private boolean stateValid = false; // True if the cell's rendered state is up to date
-	private final int xindex, yindex;	// The cell's position in the board
 }
@@ -0,0 +1,156 @@
+package com.jimnastic.modernscramblednet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue of input commands, from one producer thread to one consumer thread; the UI
+ * thread sends the user's input, and the simulation thread applies it to the game state.
+ * <p>
+ * Commands are ints, packed by command(), in a fixed ring; so sending one never blocks, and never
+ * allocates. Each side owns its own end of the ring. The producer publishes a command by moving
+ * the tail on with an ordered write, after filling the slot, so the consumer never sees a slot
+ * before its command; and the consumer frees slots the same way with the head.
+ */
+final class CommandQueue
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty queue.
+     *
+     * @param capacity The most commands the queue can hold; rounded up to a power of two.
+     */
+    CommandQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        ring = new int[size];
+        mask = size - 1;
+    }
+
+    // ******************************************************************** //
+    // Command Packing.
+    // ******************************************************************** //
+
+    /**
+     * Pack a command into an int.
+     *
+     * @param op  The operation; one of the OP_ values.
+     * @param arg The operation's argument, e.g. a tile index; must not be negative.
+     * @return The packed command.
+     */
+    static int command(int op, int arg)
+    {
+        return arg << OP_BITS | op;
+    }
+
+    /**
+     * Get the operation of a packed command.
+     *
+     * @param cmd A command packed by command().
+     * @return The operation; one of the OP_ values.
+     */
+    static int op(int cmd)
+    {
+        return cmd & OP_MASK;
+    }
+
+    /**
+     * Get the argument of a packed command.
+     *
+     * @param cmd A command packed by command().
+     * @return The argument.
+     */
+    static int arg(int cmd)
+    {
+        return cmd >>> OP_BITS;
+    }
+
+    // ******************************************************************** //
+    // Producer.
+    // ******************************************************************** //
+
+    /**
+     * Add a command to the queue. Only the producer thread may call this.
+     *
+     * @param cmd The command, packed by command().
+     * @return true if it was queued; false if the queue was full.
+     */
+    boolean offer(int cmd)
+    {
+        long t = tail.get();
+        if (t - headCache > mask)
+        {
+            headCache = head.get();
+            if (t - headCache > mask)
+                return false;
+        }
+        ring[(int) t & mask] = cmd;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // ******************************************************************** //
+    // Consumer.
+    // ******************************************************************** //
+
+    /**
+     * Take the next command from the queue. Only the consumer thread may call this.
+     *
+     * @return The command; or EMPTY if there are none.
+     */
+    int poll()
+    {
+        long h = head.get();
+        if (h == tailCache)
+        {
+            tailCache = tail.get();
+            if (h == tailCache)
+                return EMPTY;
+        }
+        int cmd = ring[(int) h & mask];
+        head.lazySet(h + 1);
+        return cmd;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Returned by poll() when there are no commands
+    static final int EMPTY = -1;
+
+    // Operations: rotate the focused cell, toggle the focused cell's lock, focus on a tile, start
+    // or stop the autosolver, show the server as solved, turn the blips off or on (arg 0 or 1),
+    // undo or redo a move, show a hint, and start the game which the UI thread has set up
+    static final int OP_ROTATE = 0;
+    static final int OP_LOCK = 1;
+    static final int OP_FOCUS = 2;
+    static final int OP_AUTOSOLVE = 3;
+    static final int OP_SOLVED = 4;
+    static final int OP_BLIPS = 5;
+    static final int OP_UNDO = 6;
+    static final int OP_REDO = 7;
+    static final int OP_HINT = 8;
+    static final int OP_START = 9;
+
+    // Bits of a packed command which hold the operation
+    private static final int OP_BITS = 4;
+    private static final int OP_MASK = (1 << OP_BITS) - 1;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final int[] ring;       // The commands; slot i holds command number i & mask
+    private final int mask;         // Ring size - 1
+
+    // Number of commands ever taken, and ever added. Each is written only by its own side
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Each side's last look at the other side's count, so it only reads that when it has to
+    private long headCache = 0;     // Producer only
+    private long tailCache = 0;     // Consumer only
+}
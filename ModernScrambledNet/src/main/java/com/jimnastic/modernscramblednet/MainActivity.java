@@ -33,12 +33,14 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Base64;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.ViewAnimator;
 
 import androidx.appcompat.app.AlertDialog;
@@ -71,6 +73,9 @@ public class MainActivity extends AppCompatActivity
         /* **** Custom board size Setup *****/
         SettingsActivity.SoundString    = newPrefs.getString("SoundPreference", "FULL");
         SettingsActivity.LongPressDelay = Integer.parseInt(newPrefs.getString("LongPressPreference", "1000"));
+        SettingsActivity.FrameRate      = Integer.parseInt(newPrefs.getString("FrameRatePreference", "60"));
+        SettingsActivity.RendererString = newPrefs.getString("RendererPreference", "SOFTWARE");
+        SettingsActivity.StatsOverlay   = newPrefs.getBoolean("StatsPreference", false);
         SettingsActivity.EasyHeight     = Integer.parseInt(newPrefs.getString("EasyHeightPreference","5"));
         SettingsActivity.EasyWidth      = Integer.parseInt(newPrefs.getString("EasyWidthPreference","5"));
         /* **** End custom board size Setup *****/
@@ -100,6 +105,9 @@ public class MainActivity extends AppCompatActivity
         SettingsActivity.AnimationState = newPrefs.getBoolean("AnimationPreference",true);
         Log.i(TAG, "MainActivity.onCreate() runs BoardView.setAnimEnable()");
         boardView.setAnimEnable(SettingsActivity.AnimationState);
+        boardView.setTargetFps(SettingsActivity.FrameRate);
+        boardView.setRenderer(SettingsActivity.RendererState());
+        boardView.setStatsOverlay(SettingsActivity.StatsOverlay);
         /* **** End Animation Setup *****/
 
         // If we have a previous state to restore, try to do so
@@ -215,6 +223,9 @@ public class MainActivity extends AppCompatActivity
         Log.i(TAG, "onRestart()");
         Log.i("AnimationTest","onRestart() called, setting animation to: " + SettingsActivity.AnimationState);
         boardView.setAnimEnable(SettingsActivity.AnimationState);
+        boardView.setTargetFps(SettingsActivity.FrameRate);
+        boardView.setRenderer(SettingsActivity.RendererState());
+        boardView.setStatsOverlay(SettingsActivity.StatsOverlay);
         soundMode = SettingsActivity.SoundState();
         //setSoundMode(SettingsActivity.SoundState());
         super.onRestart();
@@ -285,6 +296,9 @@ public class MainActivity extends AppCompatActivity
         statusMode.setText(gameSkill.label);
         Log.i("AnimationTest", "onResume() should now set the animation state to " + SettingsActivity.AnimationState);
         boardView.setAnimEnable(SettingsActivity.AnimationState);
+        boardView.setTargetFps(SettingsActivity.FrameRate);
+        boardView.setRenderer(SettingsActivity.RendererState());
+        boardView.setStatsOverlay(SettingsActivity.StatsOverlay);
         soundMode = SettingsActivity.SoundState();
 
         // If we restored a state, go to that state. Otherwise start at the welcome screen
@@ -396,6 +410,14 @@ public class MainActivity extends AppCompatActivity
 
         boardView.onPause();
 
+        // Log the frame statistics, so a field report has numbers to go with it
+        boardView.dumpStats();
+
+        // Log the game's record too, so that the game can be replayed
+        byte[] record = boardView.saveRecord();
+        if (record != null)
+            Log.i(TAG, "Game record: " + Base64.encodeToString(record, Base64.NO_WRAP));
+
         // Pause the game. Don't show a splash screen because the game is going away
         if (gameState == GameState.RUNNING)
             setState(GameState.PAUSED, false);
@@ -543,6 +565,27 @@ public class MainActivity extends AppCompatActivity
             startGame(null);
         else if (menuID == R.id.menu_pause)
             setState(GameState.PAUSED, true);
+        else if (menuID == R.id.menu_undo)
+        {
+            if (gameState == GameState.RUNNING)
+                boardView.undo();
+        }
+        else if (menuID == R.id.menu_redo)
+        {
+            if (gameState == GameState.RUNNING)
+                boardView.redo();
+        }
+        else if (menuID == R.id.menu_hint)
+        {
+            if (gameState == GameState.RUNNING)
+                boardView.showHint();
+        }
+        else if (menuID == R.id.menu_replay)
+        {
+            // A replay plays the game for the user, like the solver
+            if (gameState == GameState.RUNNING && boardView.replay(REPLAY_SPEED))
+                solverUsed = true;
+        }
         else if (menuID == R.id.menu_scores)
         {
             setState(GameState.PAUSED, false);
@@ -587,6 +630,21 @@ public class MainActivity extends AppCompatActivity
     // Game progress
     // ******************************************************************** //
 
+    //Tell the UI thread the user clicked a cell. This may be called from any thread
+    void postClick(Cell cell)
+    {
+        clickHandler.obtainMessage(0, cell).sendToTarget();
+    }
+
+    private Handler clickHandler = new Handler(Looper.getMainLooper())
+    {
+        @Override
+        public void handleMessage(Message m)
+        {
+            cellClicked((Cell) m.obj);
+        }
+    };
+
     //This method is called each time the user clicks a cell
     void cellClicked(Cell cell)
     {
@@ -601,6 +659,23 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    //Tell the UI thread to show the user how far to turn the cell a hint picked. This may be called from any thread
+    void postHint(int taps)
+    {
+        hintHandler.obtainMessage(0, taps, 0).sendToTarget();
+    }
+
+    private Handler hintHandler = new Handler(Looper.getMainLooper())
+    {
+        @Override
+        public void handleMessage(Message m)
+        {
+            String msg = m.arg1 == 1 ? appResources.getString(R.string.hint_once)
+                    : String.format(appResources.getString(R.string.hint_times), m.arg1);
+            Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
+        }
+    };
+
     // ******************************************************************** //
     // Game Control Functions
     // ******************************************************************** //
@@ -1072,6 +1147,7 @@ public class MainActivity extends AppCompatActivity
     // ******************************************************************** //
 
     public static final String TAG = "\t\tScrambleLog"; // Debugging tag
+    private static final float REPLAY_SPEED = 4f;    // Speed of a replay from the menu, relative to the game
     private Resources appResources;                  // The app's resources
     private BoardView.Skill gameSkill;               // The currently selected skill level
     private GameState gameState;                         // The state of the current game
@@ -14,6 +14,8 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceManager;
 
+import org.hermit.android.core.SurfaceRunner;
+
 public class SettingsActivity extends AppCompatActivity
 {
     public static Integer EasyHeight;
@@ -21,6 +23,9 @@ public class SettingsActivity extends AppCompatActivity
     public static boolean AnimationState;
     public static String SoundString;
     public static Integer LongPressDelay;
+    public static Integer FrameRate;
+    public static String RendererString;
+    public static boolean StatsOverlay;
     public static MainActivity.SoundMode SoundState()
     {
         if (SoundString == null)
@@ -43,6 +48,23 @@ public class SettingsActivity extends AppCompatActivity
         }
     }
 
+    public static SurfaceRunner.Renderer RendererState()
+    {
+        if (RendererString == null)
+        {
+            return SurfaceRunner.Renderer.SOFTWARE;
+        }
+
+        try
+        {
+            return SurfaceRunner.Renderer.valueOf(RendererString);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return SurfaceRunner.Renderer.SOFTWARE;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -72,6 +94,9 @@ public class SettingsActivity extends AppCompatActivity
             setPreferencesFromResource(R.xml.root_preferences, rootKey);
 
             Preference animation = findPreference("AnimationPreference");
+            Preference frameRate = findPreference("FrameRatePreference");
+            Preference renderer = findPreference("RendererPreference");
+            Preference stats = findPreference("StatsPreference");
             Preference sound = findPreference("SoundPreference");
             Preference longPressDelay = findPreference("LongPressPreference");
             Preference easyHeight = findPreference("EasyHeightPreference");
@@ -86,6 +111,33 @@ public class SettingsActivity extends AppCompatActivity
                 }
             });
 
+            assert frameRate != null;
+            frameRate.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    FrameRate = Integer.parseInt(newValue.toString());
+                    return true;
+                }
+            });
+
+            assert renderer != null;
+            renderer.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    RendererString = newValue.toString();
+                    return true;
+                }
+            });
+
+            assert stats != null;
+            stats.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    StatsOverlay = (boolean) newValue;
+                    return true;
+                }
+            });
+
             assert sound != null;
             sound.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
                 @Override
@@ -0,0 +1,300 @@
+package com.jimnastic.modernscramblednet;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed-timestep simulation clock, which runs the game logic on its own thread.
+ * <p>
+ * The logic is stepped at fixed intervals of simulation time, which runs with the monotonic
+ * System.nanoTime() clock; so animations run at the same speed however long the frames take to
+ * draw. If the thread falls behind, it runs the missed steps back to back, up to a limit. The
+ * renderer draws at whatever rate it can, interpolating the animations to renderTime(), which
+ * is at most one step ahead of the logic.
+ * <p>
+ * The logic says when it next needs a step, so the thread sleeps through the steps in which
+ * nothing would happen; when the logic is idle, the thread waits until wake() is called. The
+ * simulation time stands still while the logic is idle or the thread is stopped, and while
+ * steps are dropped to catch up; so it never jumps, and never goes backwards.
+ * <p>
+ * Each step runs holding the lock given to the constructor, so that other threads can hold the
+ * same lock to change the state between steps. The logic can also be run headless, without the thread,
+ * by calling advance(), which runs steps as fast as they can be computed; e.g. for tests and
+ * benchmarks.
+ */
+final class Simulation
+{
+    // ******************************************************************** //
+    // Public Types.
+    // ******************************************************************** //
+
+    /**
+     * The game logic which the simulation steps.
+     */
+    interface Logic
+    {
+        /**
+         * Run one step of the logic. This is called holding the simulation's lock.
+         *
+         * @param now Simulation time of the step, in ms.
+         * @return The time in ms until the logic next needs a step; 0 for the next step; or
+         * IDLE if nothing will happen until wake() is called.
+         */
+        long step(long now);
+
+        /**
+         * Called after a step, not holding the lock, to say the logic's state has moved on; e.g.
+         * to ask for a frame to be drawn.
+         */
+        void stepped();
+    }
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a simulation. It doesn't run until start() or advance() is called.
+     *
+     * @param logic  The logic to step.
+     * @param lock   Lock to hold while stepping the logic.
+     * @param stepMs The length of each step, in ms.
+     */
+    Simulation(Logic logic, Object lock, long stepMs)
+    {
+        this.logic = logic;
+        this.lock = lock;
+        stepNanos = stepMs * 1000000L;
+        simNanos = 0;
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Start the simulation thread, if it isn't running.
+     */
+    synchronized void start()
+    {
+        if (thread != null)
+            return;
+        running = true;
+        wake = true;
+        thread = new Thread(this::run, "Simulation");
+        thread.start();
+    }
+
+    /**
+     * Stop the simulation thread, and wait for it to finish. The logic isn't stepped once this
+     * returns, until the simulation is started again.
+     */
+    void stop()
+    {
+        Thread t;
+        synchronized (this)
+        {
+            t = thread;
+            thread = null;
+            running = false;
+        }
+        if (t == null)
+            return;
+
+        LockSupport.unpark(t);
+        boolean interrupted = false;
+        while (t.isAlive())
+        {
+            try
+            {
+                t.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Tell the simulation that something has changed, e.g. on user input, so the logic needs a
+     * step now. This may be called from any thread.
+     */
+    void wake()
+    {
+        wake = true;
+        Thread t = thread;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    /**
+     * Make sure the logic takes in a change soon: wake the thread if it's running, else step the
+     * logic once now, on the calling thread, at the time of the last step. So something sent to
+     * the logic while the simulation is stopped, e.g. a game set up before there's a display,
+     * takes effect straight away; but the logic is still only ever stepped by one thread at a
+     * time. This must be called from the thread which starts and stops the simulation.
+     */
+    void flush()
+    {
+        synchronized (this)
+        {
+            if (thread != null)
+            {
+                wake();
+                return;
+            }
+            synchronized (lock)
+            {
+                logic.step(now());
+            }
+        }
+        logic.stepped();
+    }
+
+    /**
+     * Run the logic headless, stepping it as fast as possible through a stretch of simulation
+     * time. This must not be called while the thread is running.
+     *
+     * @param ms The simulation time to run for, in ms.
+     */
+    void advance(long ms)
+    {
+        if (thread != null)
+            throw new IllegalStateException("Simulation: advance() while running");
+        for (long end = simNanos + ms * 1000000L; simNanos + stepNanos <= end; )
+        {
+            simNanos += stepNanos;
+            synchronized (lock)
+            {
+                logic.step(simNanos / 1000000L);
+            }
+            logic.stepped();
+        }
+    }
+
+    /**
+     * Get the simulation time of the last step.
+     *
+     * @return The time in ms.
+     */
+    long now()
+    {
+        return simNanos / 1000000L;
+    }
+
+    /**
+     * Get the time to draw animations at: the present, but no more than one step ahead of the
+     * logic, so that nothing is drawn in a state the logic hasn't reached. When running headless
+     * this is the time of the last step.
+     *
+     * @return The time in ms.
+     */
+    long renderTime()
+    {
+        long sim = simNanos;
+        if (thread == null)
+            return sim / 1000000L;
+        long ahead = Math.max(0, Math.min(System.nanoTime() + offset - sim, stepNanos));
+        return (sim + ahead) / 1000000L;
+    }
+
+    // ******************************************************************** //
+    // Simulation Thread.
+    // ******************************************************************** //
+
+    /**
+     * The simulation thread: step the logic in time with the clock, and sleep in between.
+     */
+    private void run()
+    {
+        long due = 0;       // Simulation time at which the logic next needs a step, in ns
+        boolean idle = true;
+
+        while (running)
+        {
+            // The present, in simulation time
+            long real = System.nanoTime() + offset;
+
+            // If we've been woken, step now; after an idle spell, carry on the simulation time
+            // from where it stopped
+            if (wake)
+            {
+                wake = false;
+                if (idle)
+                {
+                    offset += simNanos + stepNanos - real;
+                    real = simNanos + stepNanos;
+                }
+                due = simNanos + stepNanos;
+                idle = false;
+            }
+
+            // If we've fallen too far behind, drop the backlog rather than try to catch up
+            long behind = real - simNanos - stepNanos * MAX_CATCHUP;
+            if (behind > 0)
+            {
+                offset -= behind;
+                real -= behind;
+            }
+
+            // Run all the steps which are due
+            boolean stepped = false;
+            while (!idle && simNanos + stepNanos <= real)
+            {
+                simNanos += stepNanos;
+                if (simNanos < due)
+                    continue;
+
+                long delay;
+                synchronized (lock)
+                {
+                    delay = logic.step(simNanos / 1000000L);
+                }
+                stepped = true;
+                if (delay < 0)
+                    idle = true;
+                else
+                    due = simNanos + Math.max(delay * 1000000L, stepNanos);
+            }
+            if (stepped)
+                logic.stepped();
+
+            // Sleep until the next step we need, or until woken
+            if (wake || !running)
+                continue;
+            if (idle)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, Math.max(due, simNanos + stepNanos) - real);
+        }
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Returned by Logic.step() when nothing will happen until wake() is called
+    static final long IDLE = -1;
+
+    // Most steps we run back to back to catch up, before dropping the backlog
+    private static final long MAX_CATCHUP = 10;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final Logic logic;          // The logic we step
+    private final Object lock;          // Lock held while stepping the logic
+    private final long stepNanos;       // Length of a step, in ns
+
+    // Simulation time of the last step, in ns, and the difference between simulation time and
+    // the System.nanoTime() clock while the thread is running
+    private volatile long simNanos;
+    private volatile long offset = 0;
+
+    private volatile Thread thread = null;      // The simulation thread; null if not running
+    private volatile boolean running = false;   // Cleared to stop the thread
+    private volatile boolean wake = false;      // Set by wake() to ask for a step now
+}
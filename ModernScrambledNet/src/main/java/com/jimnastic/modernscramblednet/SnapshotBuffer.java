@@ -0,0 +1,92 @@
+package com.jimnastic.modernscramblednet;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of board snapshots, which hands the game state from the simulation
+ * thread to the renderer.
+ * <p>
+ * The writer fills in its back snapshot, and swaps it with the middle one; the reader swaps its
+ * front snapshot with the middle one when there's a newer one there. The swaps are one atomic
+ * operation each, so neither thread ever waits for the other; the writer never touches the
+ * snapshot being drawn, and the reader always gets the latest complete one. If the writer
+ * publishes more than once between frames, the reader just skips to the newest.
+ */
+final class SnapshotBuffer
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a buffer for a board.
+     *
+     * @param cells The board's cell matrix.
+     */
+    SnapshotBuffer(Cell[][] cells)
+    {
+        for (int i = 0; i < snapshots.length; ++i)
+            snapshots[i] = new BoardSnapshot(cells);
+    }
+
+    // ******************************************************************** //
+    // Writer.
+    // ******************************************************************** //
+
+    /**
+     * Get the snapshot for the writer to fill in. Only the writer may call this.
+     *
+     * @return The back snapshot.
+     */
+    BoardSnapshot back()
+    {
+        return snapshots[back];
+    }
+
+    /**
+     * Publish the back snapshot, which the writer has filled in, to the reader; the writer gets
+     * another to fill in next time.
+     */
+    void publish()
+    {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // ******************************************************************** //
+    // Reader.
+    // ******************************************************************** //
+
+    /**
+     * Get the latest snapshot published. Only the reader may call this. The snapshot is the
+     * reader's until its next call.
+     *
+     * @return The latest snapshot; its serial is 0 if nothing has been published yet.
+     */
+    BoardSnapshot acquire()
+    {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & INDEX;
+        return snapshots[front];
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Bits of the middle slot: the snapshot index, and a flag saying it's newer than the front
+    private static final int INDEX = 0x03;
+    private static final int FRESH = 0x04;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final BoardSnapshot[] snapshots = new BoardSnapshot[3];
+
+    // Index of the middle snapshot, plus FRESH if the writer has published it since the reader
+    // last took one
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int back = 0;       // Index of the writer's snapshot; writer only
+    private int front = 2;      // Index of the reader's snapshot; reader only
+}
@@ -0,0 +1,200 @@
+package com.jimnastic.modernscramblednet;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * A set of sprites, all the same size, packed into one bitmap.
+ * <p>
+ * Drawing every sprite from the same bitmap keeps the pixels together in memory, and lets a
+ * hardware canvas batch the draws, as they all use the same texture. Each sprite has a one pixel
+ * transparent gutter around it, so that a rotated or filtered draw doesn't pick up pixels from
+ * its neighbours.
+ * <p>
+ * draw() uses a scratch rectangle, so an atlas must only be drawn from one thread at a time.
+ */
+final class SpriteAtlas
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty atlas.
+     *
+     * @param width  Width of each sprite.
+     * @param height Height of each sprite.
+     * @param count  Number of sprites the atlas must hold.
+     * @param config Pixel format for the atlas.
+     */
+    SpriteAtlas(int width, int height, int count, Bitmap.Config config)
+    {
+        spriteWidth = width;
+        spriteHeight = height;
+        columns = columns(count);
+        bitmap = Bitmap.createBitmap(atlasWidth(width, count), atlasHeight(height, count), config);
+        canvas = new Canvas(bitmap);
+        sources = new Rect[count];
+    }
+
+    /**
+     * Create an atlas from a bitmap holding a full set of sprites, as laid out by a previous
+     * atlas with the same sprite size and count; e.g. one saved to storage. Sprites can't be
+     * added to it.
+     *
+     * @param bitmap The atlas image.
+     * @param width  Width of each sprite.
+     * @param height Height of each sprite.
+     * @param count  Number of sprites in the atlas.
+     */
+    SpriteAtlas(Bitmap bitmap, int width, int height, int count)
+    {
+        if (bitmap.getWidth() != atlasWidth(width, count)
+                || bitmap.getHeight() != atlasHeight(height, count))
+            throw new IllegalArgumentException("SpriteAtlas: bitmap is the wrong size");
+
+        spriteWidth = width;
+        spriteHeight = height;
+        columns = columns(count);
+        this.bitmap = bitmap;
+        canvas = null;
+        sources = new Rect[count];
+        while (used < count)
+            allocate();
+    }
+
+    // ******************************************************************** //
+    // Building.
+    // ******************************************************************** //
+
+    /**
+     * Add a sprite to the atlas.
+     *
+     * @param sprite The sprite image. It should be the atlas's sprite size; it is drawn at its
+     *               top left, and cropped to fit.
+     * @return The index of the new sprite.
+     */
+    int add(Bitmap sprite)
+    {
+        int index = allocate();
+        Rect r = sources[index];
+        canvas.save();
+        canvas.clipRect(r);
+        canvas.drawBitmap(sprite, r.left, r.top, null);
+        canvas.restore();
+        return index;
+    }
+
+    /**
+     * Find the next free slot, and set up its source rectangle.
+     *
+     * @return The index of the slot.
+     */
+    private int allocate()
+    {
+        if (used == sources.length)
+            throw new IllegalStateException("SpriteAtlas: atlas is full");
+        int index = used++;
+        int x = (index % columns) * (spriteWidth + 2) + 1;
+        int y = (index / columns) * (spriteHeight + 2) + 1;
+        sources[index] = new Rect(x, y, x + spriteWidth, y + spriteHeight);
+        return index;
+    }
+
+    /**
+     * Work out the number of sprites across an atlas. We make it roughly square.
+     *
+     * @param count Number of sprites in the atlas.
+     * @return The number of columns of sprites.
+     */
+    private static int columns(int count)
+    {
+        return (int) Math.ceil(Math.sqrt(count));
+    }
+
+    /**
+     * Work out the width of an atlas.
+     *
+     * @param width Width of each sprite.
+     * @param count Number of sprites in the atlas.
+     * @return The width of the atlas bitmap.
+     */
+    private static int atlasWidth(int width, int count)
+    {
+        return columns(count) * (width + 2);
+    }
+
+    /**
+     * Work out the height of an atlas.
+     *
+     * @param height Height of each sprite.
+     * @param count  Number of sprites in the atlas.
+     * @return The height of the atlas bitmap.
+     */
+    private static int atlasHeight(int height, int count)
+    {
+        int columns = columns(count);
+        return (count + columns - 1) / columns * (height + 2);
+    }
+
+    // ******************************************************************** //
+    // Drawing.
+    // ******************************************************************** //
+
+    /**
+     * Draw a sprite at its natural size.
+     *
+     * @param c     Canvas to draw into.
+     * @param index The sprite's index.
+     * @param x     X position of the sprite's top left.
+     * @param y     Y position of the sprite's top left.
+     * @param paint Paint to draw with; may be null.
+     */
+    void draw(Canvas c, int index, float x, float y, Paint paint)
+    {
+        dest.set(x, y, x + spriteWidth, y + spriteHeight);
+        c.drawBitmap(bitmap, sources[index], dest, paint);
+    }
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the atlas image.
+     *
+     * @return The bitmap holding all the sprites.
+     */
+    Bitmap getBitmap()
+    {
+        return bitmap;
+    }
+
+    /**
+     * Get the size of the atlas's pixel data.
+     *
+     * @return The size in bytes.
+     */
+    int getByteCount()
+    {
+        return bitmap.getAllocationByteCount();
+    }
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final int spriteWidth;      // Width of each sprite
+    private final int spriteHeight;     // Height of each sprite
+    private final int columns;          // Number of sprites across the atlas
+
+    private final Bitmap bitmap;        // The packed sprites
+    private final Canvas canvas;        // Canvas for drawing sprites into the atlas; null if loaded
+    private final Rect[] sources;       // Each sprite's area in the atlas
+    private int used = 0;               // Number of sprites added
+
+    private final RectF dest = new RectF();     // Scratch rectangle for draw()
+}
@@ -0,0 +1,258 @@
+package com.jimnastic.modernscramblednet;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A cache of sprite atlases, keyed by sprite size and pixel format.
+ * <p>
+ * Building an atlas means decoding, scaling and processing every image, so we keep the atlases
+ * we've built in memory, up to a byte budget, dropping the least recently used when it's
+ * exceeded. Optionally, atlases are also saved to a directory, such as the app's cache
+ * directory, so that a new process can load an atlas as one image rather than build it again.
+ * Saved atlases are tagged with a version, and those from other versions are deleted.
+ * <p>
+ * Evicted atlases aren't recycled, as they may still be in use; the garbage collector frees them
+ * once they're not.
+ */
+final class SpriteCache
+{
+    // ******************************************************************** //
+    // Public Types.
+    // ******************************************************************** //
+
+    /**
+     * Something which builds atlases for the cache.
+     */
+    interface Builder
+    {
+        /**
+         * Build an atlas.
+         *
+         * @param width  Width of each sprite.
+         * @param height Height of each sprite.
+         * @param config Pixel format for the atlas.
+         * @return The new atlas, holding the cache's count of sprites.
+         */
+        SpriteAtlas build(int width, int height, Bitmap.Config config);
+    }
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a sprite cache.
+     *
+     * @param budget  Maximum total size in bytes of the atlases held in memory.
+     * @param dir     Directory to save atlases in; null to not save them.
+     * @param version Tag for the saved atlases; this should change whenever the images do.
+     * @param count   Number of sprites in each atlas.
+     * @param builder Builder to create atlases which we don't have.
+     */
+    SpriteCache(int budget, File dir, String version, int count, Builder builder)
+    {
+        this.dir = dir;
+        this.version = version;
+        this.count = count;
+        this.builder = builder;
+        atlases = new LruCache<Key, SpriteAtlas>(budget)
+        {
+            @Override
+            protected int sizeOf(Key key, SpriteAtlas atlas)
+            {
+                return atlas.getByteCount();
+            }
+        };
+
+        if (dir != null)
+            saver.execute(this::deleteStale);
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Get the atlas for a sprite size and format; from memory if we have it, else from storage,
+     * else by building it.
+     *
+     * @param width  Width of each sprite.
+     * @param height Height of each sprite.
+     * @param config Pixel format for the atlas.
+     * @return The atlas.
+     */
+    synchronized SpriteAtlas get(int width, int height, Bitmap.Config config)
+    {
+        Key key = new Key(width, height, config);
+        SpriteAtlas atlas = atlases.get(key);
+        if (atlas != null)
+            return atlas;
+
+        atlas = load(key);
+        if (atlas == null)
+        {
+            atlas = builder.build(width, height, config);
+            save(key, atlas);
+        }
+        atlases.put(key, atlas);
+        return atlas;
+    }
+
+    // ******************************************************************** //
+    // Storage.
+    // ******************************************************************** //
+
+    /**
+     * Load a saved atlas.
+     *
+     * @param key The atlas's size and format.
+     * @return The atlas; null if it isn't saved, or can't be loaded.
+     */
+    private SpriteAtlas load(Key key)
+    {
+        if (dir == null)
+            return null;
+        File file = file(key);
+        if (!file.exists())
+            return null;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inPreferredConfig = key.config;
+        opts.inScaled = false;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), opts);
+        if (bitmap == null || bitmap.getConfig() != key.config)
+            return null;
+
+        try
+        {
+            return new SpriteAtlas(bitmap, key.width, key.height, count);
+        }
+        catch (IllegalArgumentException e)
+        {
+            Log.w(MainActivity.TAG, "Discarding bad sprite atlas " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Save an atlas, in the background.
+     *
+     * @param key   The atlas's size and format.
+     * @param atlas The atlas to save.
+     */
+    private void save(Key key, SpriteAtlas atlas)
+    {
+        if (dir == null)
+            return;
+        final File file = file(key);
+        final Bitmap bitmap = atlas.getBitmap();
+        saver.execute(() -> {
+            File temp = new File(dir, file.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp))
+            {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            catch (IOException e)
+            {
+                Log.w(MainActivity.TAG, "Can't save sprite atlas " + file.getName(), e);
+                temp.delete();
+                return;
+            }
+            if (!temp.renameTo(file))
+                temp.delete();
+        });
+    }
+
+    /**
+     * Delete saved atlases from other versions.
+     */
+    private void deleteStale()
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        String suffix = "-" + version + ".png";
+        for (File f : files)
+            if (f.getName().startsWith(FILE_PREFIX) && !f.getName().endsWith(suffix))
+                f.delete();
+    }
+
+    /**
+     * Get the file an atlas is saved in.
+     *
+     * @param key The atlas's size and format.
+     * @return The file.
+     */
+    private File file(Key key)
+    {
+        return new File(dir, FILE_PREFIX + key.width + "x" + key.height + "-" + key.config
+                + "-" + version + ".png");
+    }
+
+    /**
+     * The identity of an atlas: its sprite size and pixel format.
+     */
+    private static final class Key
+    {
+        Key(int width, int height, Bitmap.Config config)
+        {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return width == k.width && height == k.height && config == k.config;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (width * 31 + height) * 31 + config.hashCode();
+        }
+
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final String FILE_PREFIX = "atlas-";
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final File dir;             // Where atlases are saved; null if not saved
+    private final String version;       // Version tag for saved atlases
+    private final int count;            // Number of sprites in each atlas
+    private final Builder builder;      // Builds the atlases we don't have
+
+    private final LruCache<Key, SpriteAtlas> atlases;   // The atlases in memory
+
+    // Thread to save atlases on, so that saving doesn't hold up the display
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SpriteCache");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+}
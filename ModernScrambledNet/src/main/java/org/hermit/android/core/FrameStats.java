@@ -0,0 +1,301 @@
+package org.hermit.android.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Frame timing statistics for a SurfaceRunner. The runner times each phase of every frame it
+// draws -- the app's update, its off-screen prepare (including any wait for the surface lock),
+// locking the canvas, the app's draw, and posting the canvas -- and keeps a histogram of the
+// whole frame's work time, from which we get percentiles. While animating, it also counts
+// vsyncs missed between frames. The app can add its own per-frame counts of dirty cells and
+// blips drawn
+//
+// Frames are recorded on the ticker thread and may be read from any thread. Recording a frame
+// allocates nothing, so the statistics can be left on in the field
+public final class FrameStats
+{
+    // The parts of a frame we time
+    public enum Phase
+    {
+        UPDATE,
+        PREPARE,
+        LOCK,
+        DRAW,
+        POST
+    }
+
+    // Create an empty set of statistics
+    FrameStats()
+    {
+        reset();
+    }
+
+    // Drop everything recorded so far, e.g. to measure a particular stretch of play
+    public synchronized void reset()
+    {
+        Arrays.fill(histogram, 0);
+        Arrays.fill(phaseTotal, 0);
+        Arrays.fill(phaseMax, 0);
+        Arrays.fill(phaseLast, 0);
+        Arrays.fill(framePhase, 0);
+        frames = 0;
+        idleFrames = 0;
+        slowFrames = 0;
+        droppedFrames = 0;
+        errors = 0;
+        workTotal = 0;
+        workMax = 0;
+        dirtyTotal = 0;
+        blipsTotal = 0;
+        dirtyLast = 0;
+        blipsLast = 0;
+        frameDirty = 0;
+        frameBlips = 0;
+    }
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    // Record the time taken by one phase of the current frame. It's only added to the phase's
+    // figures if the frame is drawn, as they're per drawn frame
+    synchronized void phase(Phase p, long nanos)
+    {
+        framePhase[p.ordinal()] += nanos;
+    }
+
+    // Add to the number of cells the app redrew in the current frame
+    public synchronized void addDirtyCells(int n)
+    {
+        frameDirty += n;
+    }
+
+    // Add to the number of blips the app drew in the current frame
+    public synchronized void addBlips(int n)
+    {
+        frameBlips += n;
+    }
+
+    // Finish recording a frame. workNanos is the total time spent on it; budgetNanos the time
+    // it had, i.e. the frame interval; and gapNanos the vsync time since the previous frame, if
+    // we've been animating continuously, else 0
+    synchronized void endFrame(boolean drawn, long workNanos, long budgetNanos, long gapNanos)
+    {
+        if (!drawn)
+        {
+            ++idleFrames;
+            Arrays.fill(framePhase, 0);
+            frameDirty = 0;
+            frameBlips = 0;
+            return;
+        }
+
+        ++frames;
+        for (int i = 0; i < PHASES.length; ++i)
+        {
+            long nanos = framePhase[i];
+            phaseLast[i] = nanos;
+            phaseTotal[i] += nanos;
+            if (nanos > phaseMax[i])
+                phaseMax[i] = nanos;
+            framePhase[i] = 0;
+        }
+        workTotal += workNanos;
+        if (workNanos > workMax)
+            workMax = workNanos;
+        int bucket = (int) Math.min(workNanos / BUCKET_NANOS, HISTOGRAM_SIZE - 1);
+        ++histogram[bucket];
+        if (workNanos > budgetNanos)
+            ++slowFrames;
+
+        // A gap of more than one and a half intervals means we missed at least one
+        if (gapNanos > budgetNanos + budgetNanos / 2)
+            droppedFrames += (gapNanos + budgetNanos / 2) / budgetNanos - 1;
+
+        dirtyLast = frameDirty;
+        blipsLast = frameBlips;
+        dirtyTotal += frameDirty;
+        blipsTotal += frameBlips;
+        frameDirty = 0;
+        frameBlips = 0;
+    }
+
+    // Note an exception thrown by the app during a frame. Returns true if it's worth logging; we
+    // log the first few, then back off, so a persistent fault doesn't flood the log
+    synchronized boolean error()
+    {
+        ++errors;
+        return (errors & (errors - 1)) == 0;
+    }
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    // Get the number of frames drawn
+    public synchronized long getFrames()
+    {
+        return frames;
+    }
+
+    // Get the number of frames which turned out to have nothing to draw
+    public synchronized long getIdleFrames()
+    {
+        return idleFrames;
+    }
+
+    // Get the number of frames whose work took longer than the frame interval
+    public synchronized long getSlowFrames()
+    {
+        return slowFrames;
+    }
+
+    // Get the number of vsyncs missed while animating
+    public synchronized long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    // Get the number of exceptions thrown by the app
+    public synchronized long getErrors()
+    {
+        return errors;
+    }
+
+    // Get a percentile of the frame work time, in ms; e.g. percentile(0.95). This is the upper
+    // edge of the histogram bucket it falls in, so it's accurate to BUCKET_NANOS. Returns 0 if
+    // no frames have been drawn
+    public synchronized float percentile(double p)
+    {
+        if (frames == 0)
+            return 0f;
+        long rank = (long) Math.ceil(p * frames);
+        long seen = 0;
+        for (int i = 0; i < HISTOGRAM_SIZE; ++i)
+        {
+            seen += histogram[i];
+            if (seen >= rank)
+                return (i + 1) * BUCKET_NANOS / 1e6f;
+        }
+        return HISTOGRAM_SIZE * BUCKET_NANOS / 1e6f;
+    }
+
+    // Get the mean time of a phase per drawn frame, in ms
+    public synchronized float mean(Phase p)
+    {
+        return frames == 0 ? 0f : phaseTotal[p.ordinal()] / (float) frames / 1e6f;
+    }
+
+    // Get the longest time of a phase, in ms
+    public synchronized float max(Phase p)
+    {
+        return phaseMax[p.ordinal()] / 1e6f;
+    }
+
+    // Write a short summary of the statistics into a buffer, one item per line, for the debug
+    // overlay. The buffer is cleared first
+    public synchronized void summary(StringBuilder sb)
+    {
+        sb.setLength(0);
+        sb.append("frames ").append(frames).append(" idle ").append(idleFrames)
+          .append(" slow ").append(slowFrames).append(" dropped ").append(droppedFrames).append('\n');
+        sb.append("work p50 ");
+        appendMs(sb, percentile(0.50));
+        sb.append(" p95 ");
+        appendMs(sb, percentile(0.95));
+        sb.append(" p99 ");
+        appendMs(sb, percentile(0.99));
+        sb.append('\n');
+        for (Phase p : PHASES)
+        {
+            sb.append(PHASE_NAMES[p.ordinal()]).append(' ');
+            appendMs(sb, phaseLast[p.ordinal()] / 1e6f);
+            sb.append(" max ");
+            appendMs(sb, max(p));
+            sb.append('\n');
+        }
+        sb.append("dirty ").append(dirtyLast).append(" blips ").append(blipsLast);
+    }
+
+    // Get the statistics as a JSON object, for dumping to the log or a field report
+    public synchronized String toJson()
+    {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"frames\":").append(frames)
+          .append(",\"idleFrames\":").append(idleFrames)
+          .append(",\"slowFrames\":").append(slowFrames)
+          .append(",\"droppedFrames\":").append(droppedFrames)
+          .append(",\"errors\":").append(errors)
+          .append(",\"workMs\":{\"mean\":").append(frames == 0 ? 0f : workTotal / (float) frames / 1e6f)
+          .append(",\"max\":").append(workMax / 1e6f)
+          .append(",\"p50\":").append(percentile(0.50))
+          .append(",\"p95\":").append(percentile(0.95))
+          .append(",\"p99\":").append(percentile(0.99))
+          .append("},\"phaseMs\":{");
+        for (Phase p : PHASES)
+        {
+            if (p.ordinal() > 0)
+                sb.append(',');
+            sb.append('"').append(PHASE_NAMES[p.ordinal()])
+              .append("\":{\"mean\":").append(mean(p))
+              .append(",\"max\":").append(max(p)).append('}');
+        }
+        sb.append("},\"dirtyCellsPerFrame\":").append(frames == 0 ? 0f : dirtyTotal / (float) frames)
+          .append(",\"blipsPerFrame\":").append(frames == 0 ? 0f : blipsTotal / (float) frames)
+          .append('}');
+        return sb.toString();
+    }
+
+    // Append a time in ms to a buffer, to one decimal place, without allocating
+    private static void appendMs(StringBuilder sb, float ms)
+    {
+        int tenths = Math.round(ms * 10f);
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    // The phases, and their names for the summary and JSON
+    private static final Phase[] PHASES = Phase.values();
+    private static final String[] PHASE_NAMES = new String[PHASES.length];
+
+    static
+    {
+        for (Phase p : PHASES)
+            PHASE_NAMES[p.ordinal()] = p.name().toLowerCase(Locale.ROOT);
+    }
+
+    // Width of each bucket in the frame time histogram, in ns, and the number of buckets; the
+    // last bucket takes everything longer
+    private static final long BUCKET_NANOS = 250000;
+    private static final int HISTOGRAM_SIZE = 256;
+
+    // Frame work time histogram
+    private final long[] histogram = new long[HISTOGRAM_SIZE];
+
+    // Total, longest and latest time of each phase over the drawn frames, and its time so far in
+    // the frame in progress, in ns
+    private final long[] phaseTotal = new long[PHASES.length];
+    private final long[] phaseMax = new long[PHASES.length];
+    private final long[] phaseLast = new long[PHASES.length];
+    private final long[] framePhase = new long[PHASES.length];
+
+    // Frame counts: drawn, with nothing to draw, over budget, and vsyncs missed while animating
+    private long frames;
+    private long idleFrames;
+    private long slowFrames;
+    private long droppedFrames;
+
+    // Number of exceptions thrown by the app
+    private long errors;
+
+    // Total and longest frame work time, in ns
+    private long workTotal;
+    private long workMax;
+
+    // The app's counts: totals, for the last frame drawn, and for the frame in progress
+    private long dirtyTotal;
+    private long blipsTotal;
+    private int dirtyLast;
+    private int blipsLast;
+    private int frameDirty;
+    private int frameBlips;
+}
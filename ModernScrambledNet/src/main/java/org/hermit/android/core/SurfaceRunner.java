@@ -3,17 +3,35 @@ package org.hermit.android.core;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
 import com.jimnastic.modernscramblednet.Timer;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public abstract class SurfaceRunner
         extends SurfaceView
         implements SurfaceHolder.Callback
 {
+    // The ways we can draw to the surface. SOFTWARE locks a CPU-rasterized canvas, and can redraw
+    // just the part of the surface which changed; HARDWARE locks a GPU-accelerated canvas, which
+    // has to be redrawn completely each frame
+    public enum Renderer
+    {
+        SOFTWARE,
+        HARDWARE
+    }
+
     // Create a SurfaceRunner instance
     public SurfaceRunner(Context app)
     {
@@ -31,8 +49,6 @@ public abstract class SurfaceRunner
     //Initialize this SurfaceRunner instance
     private void init()
     {
-        animationDelay = 0;
-
         // Register for events on the surface
         surfaceHolder = getHolder();
         surfaceHolder.addCallback(this);
@@ -210,7 +226,14 @@ public abstract class SurfaceRunner
 
             if (animTicker != null && animTicker.isAlive())
                 animTicker.kill();
-            animTicker = new ThreadTicker();
+
+            // Draw the first frame whether or not anything has changed, and all of it, as the
+            // surface may be new. A surface can't switch renderers once drawn on, so we pick
+            // the renderer here for the surface's lifetime
+            renderRequested.set(true);
+            fullFrame = true;
+            activeRenderer = renderer;
+            animTicker = new FrameTicker();
         }
     }
 
@@ -222,7 +245,7 @@ public abstract class SurfaceRunner
         // Kill the thread if it's running, and wait for it to die. This is important when the
         // surface is destroyed, as we can't touch the surface after we return. But if I am the
         // ticker thread, don't wait for myself to die
-        Timer.Ticker ticker;
+        FrameTicker ticker;
         synchronized (surfaceHolder)
         {
             ticker = animTicker;
@@ -256,6 +279,8 @@ public abstract class SurfaceRunner
         {
             canvasWidth = width;
             canvasHeight = height;
+            fullFrame = true;
+            overlayPaint.setTextSize(Math.max(OVERLAY_MIN_TEXT, width / 40f));
 
             // Create the pixmap for the background image
             if (format == PixelFormat.RGBA_8888)
@@ -274,41 +299,225 @@ public abstract class SurfaceRunner
         }
     }
 
-    private void tick()
+    // Ask for a frame to be drawn, even if the application's state hasn't changed; e.g. because
+    // the user did something. This may be called from any thread. The frame is drawn at the next
+    // vsync, subject to the target frame rate. This doesn't take the surface lock, so the app
+    // can call it while holding locks of its own which it also takes while drawing
+    public void requestRender()
+    {
+        renderRequested.set(true);
+        FrameTicker ticker = animTicker;
+
+        // On the ticker thread, the frame in progress sees the flag when it finishes, and asks
+        // for the next frame straight away
+        if (ticker != null && !onSurfaceThread())
+            ticker.schedule(0);
+    }
+
+    // Set the frame rate to aim for while animating. 0 means draw at every vsync
+    public void setTargetFps(int fps)
+    {
+        frameInterval = fps > 0 ? 1000000000L / fps : 0;
+    }
+
+    // Select the renderer. This may be called at any time; a surface can't change renderers once
+    // it has been drawn on, so if we're running, we hide and show the view to get a new surface.
+    // Must be called on the UI thread
+    public void setRenderer(Renderer r)
+    {
+        boolean restart;
+        synchronized (surfaceHolder)
+        {
+            if (renderer == r)
+                return;
+            renderer = r;
+            restart = animTicker != null && activeRenderer != r;
+        }
+
+        if (restart)
+        {
+            int vis = getVisibility();
+            setVisibility(INVISIBLE);
+            setVisibility(vis);
+        }
+    }
+
+    // Get the renderer in use for the current surface
+    public Renderer getRenderer()
+    {
+        return activeRenderer;
+    }
+
+    // Get the number of frames drawn since the app started
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    // Get the number of frames which woke the ticker but turned out to have nothing to draw.
+    // This should stay at zero; anything else means something is asking for frames it doesn't
+    // need
+    public long getIdleFrameCount()
     {
+        return idleFrameCount;
+    }
+
+    // Get the frame timing statistics. The app may add its own counts to the frame in progress
+    public FrameStats getFrameStats()
+    {
+        return stats;
+    }
+
+    // Show or hide the frame statistics over the top of the app's drawing
+    public void setStatsOverlay(boolean show)
+    {
+        synchronized (surfaceHolder)
+        {
+            if (statsOverlay == show)
+                return;
+            statsOverlay = show;
+
+            // Clear the overlay away, or draw it straight away
+            fullFrame = true;
+        }
+        requestRender();
+    }
+
+    // Write the frame statistics to the log, as JSON, so a field report comes with numbers
+    public void dumpStats()
+    {
+        Log.i(TAG, "Frame stats: " + stats.toJson());
+    }
+
+    // Run one frame: update the application, and draw it if anything changed. Returns the time in
+    // ms until the application wants its next frame, or FRAME_IDLE. gapNanos is the vsync time
+    // since the previous frame, if we've been animating continuously, else 0
+    private long tick(long gapNanos)
+    {
+        long start = System.nanoTime();
+        boolean drawn = false;
         try
         {
             // Do the application's physics
             long now = System.currentTimeMillis();
-            doUpdate(now);
+            boolean changed = doUpdate(now);
+            stats.phase(FrameStats.Phase.UPDATE, System.nanoTime() - start);
+
+            // And update the screen, if there's anything to show
+            boolean requested = renderRequested.getAndSet(false);
+            drawn = (changed || requested) && refreshScreen(now);
+            if (drawn)
+                ++frameCount;
+            else
+                ++idleFrameCount;
 
-            // And update the screen
-            refreshScreen(now);
+            // A frame asked for since we took the flag, e.g. by the drawing itself, is due now
+            long delay = frameDelay(now);
+            return renderRequested.get() ? 0 : delay;
         }
         catch (Exception e)
         {
-            //
+            // Wait to be asked again
+            if (stats.error())
+                Log.e(TAG, "Exception in frame " + frameCount, e);
+            return FRAME_IDLE;
+        }
+        finally
+        {
+            long budget = frameInterval > 0 ? frameInterval : VSYNC_NANOS;
+            stats.endFrame(drawn, System.nanoTime() - start, budget, gapNanos);
         }
     }
 
     // Draw the game board to the screen in its current state, as a one-off. This can be used to
-    // refresh the screen
-    private void refreshScreen(long now)
+    // refresh the screen. In software, we only lock and redraw the part of the surface which the
+    // app says has changed, unless the surface is new; a hardware canvas always covers the whole
+    // surface. Returns false if there was nothing to draw
+    private boolean refreshScreen(long now)
     {
+        // Bring the app's off-screen state up to date, and find out what it changed. The time
+        // includes any wait for the surface lock. The stats overlay changes with every frame
+        // drawn, so if there is one, it's dirty too
+        long start = System.nanoTime();
+        Rect dirty;
+        boolean overlay;
+        synchronized (surfaceHolder)
+        {
+            dirtyRect.setEmpty();
+            doPrepare(now, dirtyRect);
+            overlay = statsOverlay;
+            if (overlay && !dirtyRect.isEmpty())
+                dirtyRect.union(0, 0, canvasWidth, overlayHeight());
+            dirty = fullFrame ? null : dirtyRect;
+        }
+        long t = System.nanoTime();
+        stats.phase(FrameStats.Phase.PREPARE, t - start);
+        if (dirty != null && dirty.isEmpty())
+            return false;
+
+        // Note that the surface may enlarge the dirty area, if its buffer doesn't have the rest;
+        // the canvas is clipped to whatever we have to draw
         Canvas canvas = null;
         try
         {
-            canvas = surfaceHolder.lockCanvas(null);
+            if (activeRenderer == Renderer.HARDWARE)
+                canvas = surfaceHolder.lockHardwareCanvas();
+            else
+                canvas = surfaceHolder.lockCanvas(dirty);
+            start = t;
+            t = System.nanoTime();
+            stats.phase(FrameStats.Phase.LOCK, t - start);
+
             synchronized (surfaceHolder)
             {
                 doDraw(canvas, now);
+                fullFrame = false;
             }
+            if (overlay)
+                drawOverlay(canvas);
+            start = t;
+            t = System.nanoTime();
+            stats.phase(FrameStats.Phase.DRAW, t - start);
         } finally
         {
             // Do this in a finally so that if an exception is thrown during the above, we don't
             // leave the Surface in an inconsistent state
             if (canvas != null)
+            {
                 surfaceHolder.unlockCanvasAndPost(canvas);
+                stats.phase(FrameStats.Phase.POST, System.nanoTime() - t);
+            }
+        }
+        return true;
+    }
+
+    // Get the height of the stats overlay
+    private int overlayHeight()
+    {
+        return (int) Math.ceil(overlayPaint.getFontSpacing() * OVERLAY_LINES + OVERLAY_PAD * 2);
+    }
+
+    // Draw the stats overlay across the top of the screen. The text is built in a reused buffer,
+    // so this doesn't allocate
+    private void drawOverlay(Canvas canvas)
+    {
+        stats.summary(overlayText);
+        overlayPaint.setColor(OVERLAY_BG);
+        canvas.drawRect(0, 0, canvasWidth, overlayHeight(), overlayPaint);
+        overlayPaint.setColor(Color.WHITE);
+
+        float spacing = overlayPaint.getFontSpacing();
+        float y = OVERLAY_PAD - overlayPaint.ascent();
+        int len = overlayText.length();
+        int line = 0;
+        while (line < len)
+        {
+            int end = line;
+            while (end < len && overlayText.charAt(end) != '\n')
+                ++end;
+            canvas.drawText(overlayText, line, end, OVERLAY_PAD, y, overlayPaint);
+            y += spacing;
+            line = end + 1;
         }
     }
 
@@ -338,22 +547,51 @@ public abstract class SurfaceRunner
      * <p>Applications must override this, and can use it to update for example the physics of a
      * game. This may be a no-op in some cases
      *
-     * <p>doDraw() will always be called after this method is called; however, the converse is not
-     * true, as we sometimes need to draw just to update the screen.  Hence this method is useful
-     * for updates which are dependent on time rather than frames
+     * <p>doDraw() will be called after this method if it reports a change, or if a frame was
+     * asked for by requestRender(); we sometimes need to draw just to update the screen.  Hence
+     * this method is useful for updates which are dependent on time rather than frames
      *
      * @param now Current time in ms.
+     * @return true if anything changed which needs to be drawn.
+     */
+    protected abstract boolean doUpdate(long now);
+
+    /**
+     * Say when the application next needs a frame.
+     *
+     * <p>This is called after each frame. While something is animating, return 0 to get the next
+     * frame as soon as the target frame rate allows; if nothing will change until some known
+     * time, return the delay until then; otherwise return FRAME_IDLE, and no more frames will be
+     * run until requestRender() is called
+     *
+     * @param now Current time in ms, as passed to doUpdate().
+     * @return The delay in ms until the next frame is needed, or FRAME_IDLE.
+     */
+    protected abstract long frameDelay(long now);
+
+    /**
+     * Prepare the current frame of the application off-screen, and say which part of the screen
+     * it changes
+     *
+     * <p>This is called before the surface is locked for each frame we draw, so that only the
+     * changed area need be locked and redrawn
+     *
+     * @param now   Current time in ms, as passed to doUpdate().
+     * @param dirty Empty on entry; the app adds the area of the screen which has changed since
+     *              the last frame. If it's left empty, the frame is not drawn.
      */
-    protected abstract void doUpdate(long now);
+    protected abstract void doPrepare(long now, Rect dirty);
 
     /**
      * Draw the current frame of the application
      *
      * <p>Applications must override this, and are expected to draw the entire screen into the
-     * provided canvas
+     * provided canvas; it is clipped to the area which needs redrawing, which is at least the
+     * area given by doPrepare(). With the HARDWARE renderer, the canvas covers the whole surface,
+     * and its previous contents are lost, so everything must be drawn
      *
-     * <p>This method will always be called after a call to doUpdate(), and also when the screen
-     * needs to be re-drawn
+     * <p>This method will always be called after calls to doUpdate() and doPrepare(), unless
+     * nothing changed, and also when the screen needs to be re-drawn
      *
      * @param canvas The Canvas to draw into
      * @param now    Current time in ms.  Will be the same as that passed to doUpdate(), if there
@@ -379,25 +617,85 @@ public abstract class SurfaceRunner
     }
 
 
-    //Thread-based ticker class
-    private class ThreadTicker
-            extends Thread
-            implements Timer.Ticker
+    // Choreographer-based ticker class. This runs a looper thread, and asks the Choreographer for a
+    // frame callback only when the app has something to draw; so frames are paced to the display's
+    // vsync, and when nothing is happening the thread sleeps
+    private class FrameTicker
+            extends HandlerThread
+            implements Timer.Ticker, Choreographer.FrameCallback
     {
 
         // Constructor - start at once
-        private ThreadTicker()
+        private FrameTicker()
         {
             super("Surface Runner");
             enable = true;
             start();
         }
 
+        // Get the Choreographer for our thread, and ask for the first frame
+        @Override
+        protected void onLooperPrepared()
+        {
+            synchronized (this)
+            {
+                choreographer = Choreographer.getInstance();
+            }
+            schedule(0);
+        }
+
+        // Ask for a frame in delay ms, at the first vsync after that. If a frame is already
+        // coming sooner, that will do
+        private void schedule(long delay)
+        {
+            synchronized (this)
+            {
+                if (!enable || choreographer == null)
+                    return;
+
+                long due = SystemClock.uptimeMillis() + delay;
+                if (frameDue <= due)
+                    return;
+                if (frameDue != NO_FRAME)
+                    choreographer.removeFrameCallback(this);
+                frameDue = due;
+                choreographer.postFrameCallbackDelayed(this, delay);
+            }
+        }
+
+        // Called by the Choreographer at vsync: run a frame, unless it's too soon for the target
+        // frame rate, and ask for the next if the app needs one
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            synchronized (this)
+            {
+                frameDue = NO_FRAME;
+            }
+            if (!enable)
+                return;
+
+            long early = lastFrameNanos + frameInterval - FRAME_SLACK - frameTimeNanos;
+            if (early > 0)
+            {
+                schedule(early / 1000000);
+                return;
+            }
+            long gap = continuous ? frameTimeNanos - lastFrameNanos : 0;
+            lastFrameNanos = frameTimeNanos;
+
+            long delay = tick(gap);
+            continuous = delay == 0;
+            if (delay >= 0)
+                schedule(delay);
+        }
+
         // Stop this thread. There will be no new calls to tick() after this
         @Override
         public void kill()
         {
             enable = false;
+            quit();
         }
 
         // Stop this thread and wait for it to die. When we return, it is guaranteed that tick()
@@ -408,45 +706,18 @@ public abstract class SurfaceRunner
         public void killAndWait()
         {
             if (Thread.currentThread() == this)
-                throw new IllegalStateException("ThreadTicker.killAndWait() called from ticker thread");
+                throw new IllegalStateException("FrameTicker.killAndWait() called from ticker thread");
 
-            enable = false;
+            kill();
 
             // Wait for the thread to finish. Ignore interrupts
-            if (isAlive())
-            {
-                boolean retry = true;
-                while (retry)
-                {
-                    try
-                    {
-                        join();
-                        retry = false;
-                    }
-                    catch (InterruptedException e)
-                    {
-                        //
-                    }
-                }
-            }
-            else
-            {
-                //
-            }
-        }
-
-        // Run method for this thread - simply call tick() a lot until enable is false
-        @Override
-        public void run()
-        {
-            while (enable)
+            boolean retry = true;
+            while (retry && isAlive())
             {
-                tick();
-
-                if (animationDelay != 0)
                 try
                 {
-                    sleep(animationDelay);
+                    join();
+                    retry = false;
                 }
                 catch (InterruptedException e)
                 {
@@ -456,7 +727,20 @@ public abstract class SurfaceRunner
         }
 
         // Flag used to terminate this thread - when false, we die
-        private boolean enable;
+        private volatile boolean enable;
+
+        // Our thread's Choreographer; null until the looper is running
+        private Choreographer choreographer = null;
+
+        // Uptime in ms at which the frame we've asked for is due; NO_FRAME if none
+        private long frameDue = NO_FRAME;
+
+        // Vsync time of the last frame we ran, in ns
+        private long lastFrameNanos = 0;
+
+        // True if the last frame asked for the next straight away, so we're animating and
+        // should get a frame at every interval
+        private boolean continuous = false;
     }
 
     // Enable flags. In order to run, we need onSurfaceCreated() and onResume(), which can come in
@@ -470,12 +754,60 @@ public abstract class SurfaceRunner
     //private static final int ENABLE_FOCUSED = 0x10;
     private static final int ENABLE_ALL = 0x01 | 0x02 | 0x04 | 0x08 | 0x10;
 
+    // Returned by frameDelay() when the app needs no more frames until requestRender() is called
+    protected static final long FRAME_IDLE = -1;
+
+    // Value of frameDue when no frame has been asked for
+    private static final long NO_FRAME = Long.MAX_VALUE;
+
+    // How early a vsync may come and still count for the target frame rate, in ns. Vsyncs don't
+    // divide evenly into every rate, so without this we would often skip one more than we should
+    private static final long FRAME_SLACK = 2000000;
+
+    // Debugging tag
+    private static final String TAG = "SurfaceRunner";
+
+    // Nominal vsync interval, in ns, used as the frame budget when there's no target frame rate
+    private static final long VSYNC_NANOS = 16666667;
+
+    // Stats overlay layout: the number of lines, padding and smallest text size in pixels, and
+    // the background colour
+    private static final int OVERLAY_LINES = 8;
+    private static final int OVERLAY_PAD = 6;
+    private static final float OVERLAY_MIN_TEXT = 14f;
+    private static final int OVERLAY_BG = 0xa0000000;
+
     // The surface manager for the view.
     private SurfaceHolder surfaceHolder = null;
 
-    // The time in ms to sleep each time round the main animation loop. If zero, we will not sleep,
-    // but will run continuously
-    public static long animationDelay = 0;
+    // The time in ns between frames at the target frame rate. If zero, we run a frame at every
+    // vsync while the app is animating
+    private volatile long frameInterval = 0;
+
+    // Set when a frame has been asked for by requestRender()
+    private final AtomicBoolean renderRequested = new AtomicBoolean();
+
+    // The renderer selected, and the one in use for the current surface
+    private Renderer renderer = Renderer.SOFTWARE;
+    private volatile Renderer activeRenderer = Renderer.SOFTWARE;
+
+    // Set when the next frame must redraw the whole surface, as it's new or has changed size
+    private boolean fullFrame = false;
+
+    // The area of the surface which the app has changed, for the frame being drawn
+    private final Rect dirtyRect = new Rect();
+
+    // Number of frames drawn, and of frames which turned out to have nothing to draw
+    private volatile long frameCount = 0;
+    private volatile long idleFrameCount = 0;
+
+    // Frame timing statistics
+    private final FrameStats stats = new FrameStats();
+
+    // Whether to draw the stats over the app, and the paint and text buffer to draw them with
+    private boolean statsOverlay = false;
+    private final Paint overlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final StringBuilder overlayText = new StringBuilder(256);
 
     // Enablement flags; see comment above
     private int enableFlags = 0;
@@ -486,5 +818,5 @@ public abstract class SurfaceRunner
     private Bitmap.Config canvasConfig = null;
 
     // The ticker thread which runs the animation.  null if not active
-    private Timer.Ticker animTicker = null;
+    private volatile FrameTicker animTicker = null;
 }
\ No newline at end of file
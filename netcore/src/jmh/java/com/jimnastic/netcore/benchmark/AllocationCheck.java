@@ -0,0 +1,165 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.CellDirection;
+import com.jimnastic.netcore.Skill;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Check that the netcore Board calls the game loop makes on every tap and frame allocate nothing
+ * once the board's work lists have grown to size; garbage made at frame rate means GC pauses,
+ * and dropped frames. This plays taps the way the app does -- a tile starts rotating, turns,
+ * stops, and the connections and solved state are brought up to date -- with a frame's scan of
+ * the tiles after each, and fails if any bytes were allocated.
+ * <p>
+ * This covers the board logic only. The app's own per-step code -- BoardView's logic step and
+ * snapshot publishing, Cell.doUpdate() and capture(), the renderer, the touch handlers, and the
+ * messages posted to MainActivity for sounds and clicks -- needs the Android runtime, so it
+ * isn't run here, and isn't checked.
+ * <p>
+ * Unlike the benchmarks, this isn't run by JMH; it runs with ./gradlew :netcore:check, and exits
+ * non-zero on failure. It needs a JVM which can count the bytes allocated per thread.
+ */
+public final class AllocationCheck
+{
+    public static void main(String[] args)
+    {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+        {
+            System.out.println("AllocationCheck: allocation counting not supported; skipped");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+
+        // What reading the counter costs, so we can take it off
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; ++i)
+        {
+            long a = threads.getThreadAllocatedBytes(id);
+            long b = threads.getThreadAllocatedBytes(id);
+            overhead = Math.min(overhead, b - a);
+        }
+
+        int failures = 0;
+        for (Skill skill : SKILLS)
+        {
+            for (int size : SIZES)
+            {
+                for (Board.Connectivity c : Board.Connectivity.values())
+                {
+                    Random rng = new Random(Boards.SEED);
+                    Board board = Boards.scrambled(Boards.solved(skill, size, rng), rng);
+                    board.setConnectivity(c);
+                    board.updateConnections();
+                    int[] tiles = Boards.shuffledTiles(board, rng);
+
+                    // Warm up, so the work lists grow, and the code is compiled
+                    play(board, tiles, WARMUP_TAPS);
+
+                    long before = threads.getThreadAllocatedBytes(id);
+                    play(board, tiles, MEASURED_TAPS);
+                    long bytes = threads.getThreadAllocatedBytes(id) - before - overhead;
+
+                    String name = skill + " " + size + "x" + size + " " + c;
+                    if (bytes > 0)
+                    {
+                        System.out.println("AllocationCheck: FAIL " + name + ": " + bytes
+                                + " bytes in " + MEASURED_TAPS + " taps");
+                        ++failures;
+                    }
+                    else
+                        System.out.println("AllocationCheck: ok " + name);
+                }
+            }
+        }
+
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Play a run of taps on the board, each followed by a frame.
+     *
+     * @param board The board to play on.
+     * @param tiles The tiles to tap, packed as y * width + x; we cycle through these.
+     * @param taps  The number of taps to play.
+     * @return A value computed from the board's state, so the JIT can't drop the work.
+     */
+    private static int play(Board board, int[] tiles, int taps)
+    {
+        int w = board.getGridWidth();
+        int sink = 0;
+        for (int i = 0; i < taps; ++i)
+        {
+            int t = tiles[i % tiles.length];
+            int x = t % w;
+            int y = t / w;
+
+            // The tile starts rotating, which cuts it off; it turns a quarter, and stops
+            board.setRotating(x, y, true);
+            board.updateConnections();
+            board.rotate(x, y, 90);
+            board.setRotating(x, y, false);
+            if (board.updateConnections())
+                ++sink;
+            if (board.isSolved())
+                ++sink;
+            sink += board.unconnectedCells();
+
+            sink += frame(board);
+        }
+        return sink;
+    }
+
+    /**
+     * Scan the tiles as a frame does: redraw the dirty ones, and follow the connections the way
+     * the data blips do.
+     *
+     * @param board The board.
+     * @return A value computed from the board's state.
+     */
+    private static int frame(Board board)
+    {
+        int sink = 0;
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                if (board.isDirty(x, y))
+                {
+                    if (board.isConnected(x, y))
+                        ++sink;
+                    board.clearDirty(x, y);
+                }
+                if (board.isRotating(x, y))
+                    continue;
+                int links = board.dirs(x, y).ordinal();
+                for (CellDirection d : CellDirection.cardinals)
+                    if ((links & d.ordinal()) != 0 && board.hasConnection(x, y, d))
+                        sink += board.next(x, y, d);
+            }
+        }
+        return sink;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // The boards we check on: NORMAL is bounded, MASTER wraps
+    private static final Skill[] SKILLS = { Skill.NORMAL, Skill.MASTER };
+    private static final int[] SIZES = { 9, 25 };
+
+    // Taps to warm up with, and to measure
+    private static final int WARMUP_TAPS = 20000;
+    private static final int MEASURED_TAPS = 5000;
+
+    private AllocationCheck()
+    {
+    }
+}
@@ -0,0 +1,98 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.Skill;
+
+import java.util.Random;
+
+/**
+ * Helpers for setting up boards in the benchmarks. Everything is seeded, so that each run
+ * measures the same layouts.
+ */
+final class Boards
+{
+    // ******************************************************************** //
+    // Board Setup.
+    // ******************************************************************** //
+
+    /**
+     * Create a square board whose playing area fills the whole grid, ready for createNet().
+     *
+     * @param sk   Skill level for the game.
+     * @param size Width and height of the board, in tiles.
+     * @return The new, empty board.
+     */
+    static Board empty(Skill sk, int size)
+    {
+        Board board = new Board(size, size);
+        board.reset(sk, size, size);
+        return board;
+    }
+
+    /**
+     * Create a square board with a generated network, in its solved state.
+     *
+     * @param sk   Skill level for the game.
+     * @param size Width and height of the board, in tiles.
+     * @param rng  Random number generator to use.
+     * @return The new, solved board.
+     */
+    static Board solved(Skill sk, int size, Random rng)
+    {
+        Board board = empty(sk, size);
+        board.generate(sk, rng);
+        board.updateConnections();
+        return board;
+    }
+
+    /**
+     * Scramble the given board, and bring its connected flags up to date.
+     *
+     * @param board The board to scramble.
+     * @param rng   Random number generator to use.
+     * @return The same board.
+     */
+    static Board scrambled(Board board, Random rng)
+    {
+        board.scramble(board.getSkill(), rng);
+        board.updateConnections();
+        return board;
+    }
+
+    /**
+     * Make a list of tile positions in the playing area, in random order, packed as y * width + x.
+     * The benchmarks cycle through these to pick the tile to operate on.
+     *
+     * @param board The board.
+     * @param rng   Random number generator to use.
+     * @return Shuffled tile positions.
+     */
+    static int[] shuffledTiles(Board board, Random rng)
+    {
+        int w = board.getGridWidth();
+        int[] tiles = new int[board.getBoardWidth() * board.getBoardHeight()];
+        int i = 0;
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+                tiles[i++] = y * w + x;
+
+        for (i = tiles.length - 1; i > 0; --i)
+        {
+            int j = rng.nextInt(i + 1);
+            int t = tiles[i];
+            tiles[i] = tiles[j];
+            tiles[j] = t;
+        }
+        return tiles;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    static final long SEED = 0x5eed_c0ffeeL;    // Seed for all benchmark random numbers
+
+    private Boards()
+    {
+    }
+}
@@ -0,0 +1,89 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.Skill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the per-move cost of keeping the connected state up to date, with each connectivity
+ * mode, and the scans which the game runs over the connected flags. NORMAL is a bounded board;
+ * MASTER wraps. The scans are timed on a solved board too, as a scrambled board usually bails out
+ * of isSolved() early.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectivityBenchmark
+{
+    @Param({"NORMAL", "MASTER"})
+    public Skill skill;
+
+    @Param({"5", "9", "25", "100", "1000"})
+    public int size;
+
+    @Param({"INCREMENTAL", "BITBOARD"})
+    public Board.Connectivity connectivity;
+
+    private Board board;
+    private Board solved;
+    private int[] tiles;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        Random rng = new Random(Boards.SEED);
+        solved = Boards.solved(skill, size, rng);
+        board = Boards.scrambled(new Board(solved), rng);
+        board.setConnectivity(connectivity);
+        board.updateConnections();
+        tiles = Boards.shuffledTiles(board, rng);
+        next = 0;
+    }
+
+    /**
+     * Rotate one tile a quarter turn, as a tap does, and recompute the connections.
+     *
+     * @return Whether any new tiles were connected.
+     */
+    @Benchmark
+    public boolean rotateAndUpdate()
+    {
+        int t = tiles[next];
+        if (++next == tiles.length)
+            next = 0;
+
+        int w = board.getGridWidth();
+        board.rotate(t % w, t / w, 90);
+        return board.updateConnections();
+    }
+
+    @Benchmark
+    public boolean isSolved()
+    {
+        return board.isSolved();
+    }
+
+    @Benchmark
+    public int unconnectedCells()
+    {
+        return board.unconnectedCells();
+    }
+
+    @Benchmark
+    public boolean isSolvedWhenSolved()
+    {
+        return solved.isSolved();
+    }
+}
@@ -0,0 +1,81 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.Generator;
+import com.jimnastic.netcore.Skill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure network generation: how many boards per second createNet() can lay out, for each skill
+ * level and board size; and how long a new game waits for a network which uses enough of the
+ * board, generating on one thread or racing candidates on the ForkJoin pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GenerateBenchmark
+{
+    @Param({"NOVICE", "NORMAL", "EXPERT", "MASTER", "INSANE"})
+    public Skill skill;
+
+    @Param({"5", "9", "25", "100", "1000"})
+    public int size;
+
+    private Board board;
+    private Random rng;
+    private Generator generator;
+
+    @Setup
+    public void setup()
+    {
+        board = Boards.empty(skill, size);
+        rng = new Random(Boards.SEED);
+        generator = new Generator();
+    }
+
+    /**
+     * Lay out one network. createNet() resets the playing area itself, so the same board can be
+     * re-used for every invocation.
+     *
+     * @return The number of tiles used, so the work can't be optimised away.
+     */
+    @Benchmark
+    public int createNet()
+    {
+        return board.createNet(skill, rng);
+    }
+
+    /**
+     * Generate a network for a new game on this thread, trying until one uses enough of the
+     * board.
+     *
+     * @return The number of tiles used.
+     */
+    @Benchmark
+    public int generate()
+    {
+        return board.generate(skill, rng);
+    }
+
+    /**
+     * Generate a network for a new game by racing candidates on the ForkJoin pool.
+     *
+     * @return The new board.
+     */
+    @Benchmark
+    public Board generateParallel()
+    {
+        return generator.generate(board, rng);
+    }
+}
@@ -0,0 +1,99 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.Skill;
+import com.jimnastic.netcore.XoshiroRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare random number generators: the raw cost of the calls the game makes, and what it means
+ * for network generation, which makes several calls per tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RandomBenchmark
+{
+    @Param({"SecureRandom", "Random", "XoshiroRandom"})
+    public String generator;
+
+    @Param({"25", "100"})
+    public int size;
+
+    private Random rng;
+    private Board board;
+
+    @Setup
+    public void setup()
+    {
+        switch (generator)
+        {
+            case "SecureRandom":
+                rng = new SecureRandom();
+                break;
+            case "Random":
+                rng = new Random(Boards.SEED);
+                break;
+            default:
+                rng = new XoshiroRandom(Boards.SEED);
+                break;
+        }
+        board = Boards.empty(Skill.EXPERT, size);
+    }
+
+    /**
+     * Draw a tile index, as createNet() does for the root.
+     *
+     * @return The value drawn.
+     */
+    @Benchmark
+    public int nextInt()
+    {
+        return rng.nextInt(size);
+    }
+
+    /**
+     * Draw a coin flip, as createNet() does for most of its decisions.
+     *
+     * @return The value drawn.
+     */
+    @Benchmark
+    public boolean nextBoolean()
+    {
+        return rng.nextBoolean();
+    }
+
+    /**
+     * Draw a float, as the terminal display does per scanline.
+     *
+     * @return The value drawn.
+     */
+    @Benchmark
+    public float nextFloat()
+    {
+        return rng.nextFloat();
+    }
+
+    /**
+     * Lay out one network.
+     *
+     * @return The number of tiles used.
+     */
+    @Benchmark
+    public int createNet()
+    {
+        return board.createNet(Skill.EXPERT, rng);
+    }
+}
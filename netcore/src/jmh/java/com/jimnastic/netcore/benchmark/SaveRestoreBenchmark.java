@@ -0,0 +1,71 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.Skill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure saving a board's state and restoring it, as happens each time the app is paused and
+ * resumed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveRestoreBenchmark
+{
+    @Param({"NORMAL", "MASTER"})
+    public Skill skill;
+
+    @Param({"5", "9", "25", "100", "1000"})
+    public int size;
+
+    private Board board;
+    private Board restored;
+    private byte[] saved;
+    private byte[] buffer;
+
+    @Setup
+    public void setup()
+    {
+        Random rng = new Random(Boards.SEED);
+        board = Boards.scrambled(Boards.solved(skill, size, rng), rng);
+        restored = Boards.empty(skill, size);
+        saved = board.saveBoard();
+        buffer = new byte[board.savedSize()];
+    }
+
+    @Benchmark
+    public byte[] saveBoard()
+    {
+        return board.saveBoard();
+    }
+
+    @Benchmark
+    public int saveInto()
+    {
+        return board.saveBoard(buffer);
+    }
+
+    @Benchmark
+    public boolean restoreBoard()
+    {
+        return restored.restoreBoard(saved);
+    }
+
+    @Benchmark
+    public boolean roundTrip()
+    {
+        return restored.restoreBoard(board.saveBoard());
+    }
+}
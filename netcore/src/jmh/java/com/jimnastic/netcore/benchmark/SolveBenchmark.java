@@ -0,0 +1,71 @@
+package com.jimnastic.netcore.benchmark;
+
+import com.jimnastic.netcore.Board;
+import com.jimnastic.netcore.IntList;
+import com.jimnastic.netcore.Skill;
+import com.jimnastic.netcore.Solver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure building the autosolve move list for a freshly scrambled board, and solving the board
+ * from scratch by constraint propagation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SolveBenchmark
+{
+    @Param({"NORMAL", "MASTER"})
+    public Skill skill;
+
+    @Param({"5", "9", "25", "100", "1000"})
+    public int size;
+
+    private Board board;
+    private Board solution;
+    private Random rng;
+
+    @Setup
+    public void setup()
+    {
+        rng = new Random(Boards.SEED);
+        solution = Boards.solved(skill, size, rng);
+        board = Boards.scrambled(new Board(solution), rng);
+    }
+
+    /**
+     * Generate the moves which take the scrambled board back to the solution. This doesn't
+     * change either board, so every invocation does the same work.
+     *
+     * @return The move list.
+     */
+    @Benchmark
+    public IntList autosolve()
+    {
+        return board.solve(solution, rng);
+    }
+
+    /**
+     * Solve the scrambled board from its tiles alone, without the stored solution.
+     *
+     * @return The solved board.
+     */
+    @Benchmark
+    public Board constraintSolve()
+    {
+        Solver solver = new Solver(board);
+        solver.solve();
+        return solver.getSolution();
+    }
+}
@@ -0,0 +1,277 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+
+/**
+ * A bitboard view of a board's connections. Each direction has a bitplane over the tile grid,
+ * indexed like the board (y * gridWidth + x), in which a tile's bit is set if it has a connection
+ * in that direction. Whole-board questions can then be answered 64 tiles per operation: the
+ * solved check is an AND and compare per word, and connectivity is a flood fill by shifting and
+ * masking the planes.
+ * <p>
+ * Tiles outside the playing area are FREE or NONE, so they have no bits in any plane and drop out
+ * of every calculation without needing a mask.
+ */
+final class BitPlanes
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a set of planes for a grid.
+     *
+     * @param n Number of tiles in the grid.
+     */
+    BitPlanes(int n)
+    {
+        up = Bits.create(n);
+        right = Bits.create(n);
+        down = Bits.create(n);
+        left = Bits.create(n);
+        innerCols = Bits.create(n);
+        innerRows = Bits.create(n);
+        lastCol = Bits.create(n);
+        lastRow = Bits.create(n);
+        linkR = Bits.create(n);
+        linkD = Bits.create(n);
+        linkRWrap = Bits.create(n);
+        linkDWrap = Bits.create(n);
+        scratch = Bits.create(n);
+    }
+
+    /**
+     * Copy the planes and playing area of another set into this one.
+     *
+     * @param o The planes to copy; must be for the same size grid.
+     */
+    void copyFrom(BitPlanes o)
+    {
+        System.arraycopy(o.up, 0, up, 0, up.length);
+        System.arraycopy(o.right, 0, right, 0, right.length);
+        System.arraycopy(o.down, 0, down, 0, down.length);
+        System.arraycopy(o.left, 0, left, 0, left.length);
+        System.arraycopy(o.innerCols, 0, innerCols, 0, innerCols.length);
+        System.arraycopy(o.innerRows, 0, innerRows, 0, innerRows.length);
+        System.arraycopy(o.lastCol, 0, lastCol, 0, lastCol.length);
+        System.arraycopy(o.lastRow, 0, lastRow, 0, lastRow.length);
+        gridWidth = o.gridWidth;
+        wrapCols = o.wrapCols;
+        wrapRows = o.wrapRows;
+        wrapped = o.wrapped;
+    }
+
+    // ******************************************************************** //
+    // Setup.
+    // ******************************************************************** //
+
+    /**
+     * Clear the planes, and set up for a new playing area.
+     *
+     * @param gw   Width of the grid, in tiles.
+     * @param sx   X position of the first tile in the playing area.
+     * @param sy   Y position of the first tile in the playing area.
+     * @param ex   X position after the last tile in the playing area.
+     * @param ey   Y position after the last tile in the playing area.
+     * @param wrap True if the playing area wraps around the edges.
+     */
+    void reset(int gw, int sx, int sy, int ex, int ey, boolean wrap)
+    {
+        Arrays.fill(up, 0);
+        Arrays.fill(right, 0);
+        Arrays.fill(down, 0);
+        Arrays.fill(left, 0);
+
+        // Work out the masks of tiles which have a neighbour to the right and below within the
+        // playing area, and of the tiles in the last column and row, which wrap.
+        Arrays.fill(innerCols, 0);
+        Arrays.fill(innerRows, 0);
+        Arrays.fill(lastCol, 0);
+        Arrays.fill(lastRow, 0);
+        for (int y = sy; y < ey; ++y)
+        {
+            for (int x = sx; x < ex; ++x)
+            {
+                int tile = y * gw + x;
+                if (x < ex - 1)
+                    Bits.set(innerCols, tile);
+                else
+                    Bits.set(lastCol, tile);
+                if (y < ey - 1)
+                    Bits.set(innerRows, tile);
+                else
+                    Bits.set(lastRow, tile);
+            }
+        }
+
+        gridWidth = gw;
+        wrapCols = ex - sx - 1;
+        wrapRows = (ey - sy - 1) * gw;
+        wrapped = wrap;
+    }
+
+    /**
+     * Record a tile's connection directions.
+     *
+     * @param tile Index of the tile.
+     * @param d    The tile's CellDirection ordinal; NONE has no connections.
+     */
+    void set(int tile, int d)
+    {
+        Bits.put(up, tile, (d & 0x08) != 0 && d != NONE);
+        Bits.put(right, tile, (d & 0x04) != 0 && d != NONE);
+        Bits.put(down, tile, (d & 0x02) != 0 && d != NONE);
+        Bits.put(left, tile, (d & 0x01) != 0 && d != NONE);
+    }
+
+    // ******************************************************************** //
+    // Queries.
+    // ******************************************************************** //
+
+    /**
+     * Determine whether every terminal -- every tile with exactly one connection -- is in the
+     * given connected set.
+     *
+     * @param connected Bitset of connected tiles.
+     * @return true if all the terminals are connected.
+     */
+    boolean allTerminalsConnected(long[] connected)
+    {
+        for (int w = 0; w < up.length; ++w)
+        {
+            long u = up[w], r = right[w], d = down[w], l = left[w];
+
+            // An odd number of connections, but not two or more, is exactly one
+            long odd = u ^ r ^ d ^ l;
+            long many = (u & r) | (d & l) | ((u | r) & (d | l));
+            if ((odd & ~many & ~connected[w]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count the tiles which have connections, but aren't in the given connected set.
+     *
+     * @param connected Bitset of connected tiles.
+     * @return The number of unconnected tiles.
+     */
+    int countUnconnected(long[] connected)
+    {
+        int n = 0;
+        for (int w = 0; w < up.length; ++w)
+            n += Long.bitCount((up[w] | right[w] | down[w] | left[w]) & ~connected[w]);
+        return n;
+    }
+
+    /**
+     * Work out the set of tiles connected to the root by flood fill. Each pass spreads the
+     * connected set across every link in each direction at once; we repeat until it stops
+     * growing. A tile which is rotating has no connections.
+     *
+     * @param root     Index of the root tile.
+     * @param rotating Bitset of rotating tiles.
+     * @param reach    Bitset to receive the connected tiles.
+     */
+    void flood(int root, long[] rotating, long[] reach)
+    {
+        // Work out the links: tiles which connect to their neighbour to the right (or below),
+        // where the neighbour connects back. On a wrapped board the last column (or row) links
+        // back around to the first.
+        for (int w = 0; w < up.length; ++w)
+        {
+            long live = ~rotating[w];
+            linkR[w] = right[w] & live & innerCols[w]
+                    & Bits.shiftedWord(left, w, -1) & ~Bits.shiftedWord(rotating, w, -1);
+            linkD[w] = down[w] & live & innerRows[w]
+                    & Bits.shiftedWord(up, w, -gridWidth) & ~Bits.shiftedWord(rotating, w, -gridWidth);
+            if (wrapped)
+            {
+                linkRWrap[w] = right[w] & live & lastCol[w]
+                        & Bits.shiftedWord(left, w, wrapCols) & ~Bits.shiftedWord(rotating, w, wrapCols);
+                linkDWrap[w] = down[w] & live & lastRow[w]
+                        & Bits.shiftedWord(up, w, wrapRows) & ~Bits.shiftedWord(rotating, w, wrapRows);
+            }
+        }
+
+        Arrays.fill(reach, 0);
+        if (Bits.get(rotating, root))
+            return;
+        Bits.set(reach, root);
+
+        boolean grown = true;
+        while (grown)
+        {
+            grown = spread(reach, linkR, 1);
+            grown |= spread(reach, linkD, gridWidth);
+            if (wrapped)
+            {
+                grown |= spread(reach, linkRWrap, -wrapCols);
+                grown |= spread(reach, linkDWrap, -wrapRows);
+            }
+        }
+    }
+
+    /**
+     * Spread a connected set across one set of links, in both directions. A tile i flagged in the
+     * links is linked to tile i + k.
+     *
+     * @param reach The connected set; updated in place.
+     * @param link  The links.
+     * @param k     Offset from each linked tile to the tile it links to.
+     * @return true if the connected set grew.
+     */
+    private boolean spread(long[] reach, long[] link, int k)
+    {
+        // Take a snapshot of the tiles which can pass the connection on, before we add to reach
+        for (int w = 0; w < reach.length; ++w)
+            scratch[w] = reach[w] & link[w];
+
+        boolean grown = false;
+        for (int w = 0; w < reach.length; ++w)
+        {
+            long add = Bits.shiftedWord(scratch, w, k) | (Bits.shiftedWord(reach, w, -k) & link[w]);
+            if ((add & ~reach[w]) != 0)
+            {
+                reach[w] |= add;
+                grown = true;
+            }
+        }
+        return grown;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final int NONE = 16;     // The CellDirection ordinal of a non-tile
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The bitplanes: the tiles which have a connection in each direction
+    private final long[] up;
+    private final long[] right;
+    private final long[] down;
+    private final long[] left;
+
+    // Masks of the tiles which have a neighbour to the right and below in the playing area, and
+    // of the tiles in its last column and row
+    private final long[] innerCols;
+    private final long[] innerRows;
+    private final long[] lastCol;
+    private final long[] lastRow;
+
+    // Working storage for flood(): the links to the right and below, and across the wrap
+    private final long[] linkR;
+    private final long[] linkD;
+    private final long[] linkRWrap;
+    private final long[] linkDWrap;
+    private final long[] scratch;
+
+    private int gridWidth;      // Width of the grid; the offset from a tile to the one below
+    private int wrapCols;       // Offset from the first to the last tile in a row of the area
+    private int wrapRows;       // Offset from the first to the last tile in a column of the area
+    private boolean wrapped;    // True if the playing area wraps around the edges
+}
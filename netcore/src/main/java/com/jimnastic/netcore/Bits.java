@@ -0,0 +1,100 @@
+package com.jimnastic.netcore;
+
+/**
+ * Helpers for bitsets packed into long arrays, where bit i is bit (i % 64) of word (i / 64). The
+ * board keeps all its per-tile flags like this, indexed by tile.
+ */
+final class Bits
+{
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Create a bitset big enough for the given number of bits.
+     *
+     * @param n Number of bits.
+     * @return The new, clear bitset.
+     */
+    static long[] create(int n)
+    {
+        return new long[(n + 63) >>> 6];
+    }
+
+    static boolean get(long[] bits, int i)
+    {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    static void set(long[] bits, int i)
+    {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    static void clear(long[] bits, int i)
+    {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * Set or clear a bit in a bitset.
+     *
+     * @param bits The bitset.
+     * @param i    Index of the bit.
+     * @param b    New value for the bit.
+     * @return true if the bit changed.
+     */
+    static boolean put(long[] bits, int i, boolean b)
+    {
+        if (get(bits, i) == b)
+            return false;
+        bits[i >>> 6] ^= 1L << i;
+        return true;
+    }
+
+    /**
+     * Get word w of a bitset shifted by k bits, as if the bitset were one long integer with bit 0
+     * at the bottom. Bits shifted in from beyond either end are zero.
+     *
+     * @param bits The bitset.
+     * @param w    Index of the word to get.
+     * @param k    Distance to shift; positive moves bit i to bit i + k, negative to bit i - |k|.
+     * @return Word w of the shifted bitset.
+     */
+    static long shiftedWord(long[] bits, int w, int k)
+    {
+        if (k >= 0)
+        {
+            int q = k >>> 6;
+            int r = k & 63;
+            long lo = word(bits, w - q);
+            if (r == 0)
+                return lo;
+            return (lo << r) | (word(bits, w - q - 1) >>> (64 - r));
+        } else
+        {
+            int q = -k >>> 6;
+            int r = -k & 63;
+            long hi = word(bits, w + q);
+            if (r == 0)
+                return hi;
+            return (hi >>> r) | (word(bits, w + q + 1) << (64 - r));
+        }
+    }
+
+    /**
+     * Get a word of a bitset, or zero if it's off either end.
+     *
+     * @param bits The bitset.
+     * @param w    Index of the word to get.
+     * @return The word.
+     */
+    private static long word(long[] bits, int w)
+    {
+        return w >= 0 && w < bits.length ? bits[w] : 0;
+    }
+
+    private Bits()
+    {
+    }
+}
@@ -0,0 +1,1709 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This implements the game board logic: a grid of tiles, together with network generation,
+ * connectivity, solving and state save/restore.
+ * <p>
+ * The grid is gridWidth by gridHeight tiles, which is large enough to contain the playing area at
+ * any skill level; the playing area for the current game is centred within it. Nothing in here
+ * depends on Android, so the board can be driven headless, e.g. for profiling.
+ * <p>
+ * The board is stored as a structure of arrays, with each tile identified by its index
+ * y * gridWidth + x. Each tile's connections are a byte holding its CellDirection ordinal; since
+ * the ordinal is the direction bitmask, this is the tile's 4-bit direction mask, with NONE as 16.
+ * The per-tile flags are bitsets packed into longs. Neighbours are not stored, but computed from
+ * the playing area and wrap rules as needed. The connections are also kept as bitplanes, one per
+ * direction, so that whole-board scans work 64 tiles at a time.
+ */
+public class Board
+{
+    // ******************************************************************** //
+    // Public Types.
+    // ******************************************************************** //
+
+    /**
+     * The ways in which updateConnections() can work out which tiles are connected.
+     */
+    public enum Connectivity
+    {
+        // Repair a spanning tree of the connected tiles, revisiting only the parts affected by
+        // the tiles which changed. Best for a few changes at a time, as in play.
+        INCREMENTAL,
+
+        // Flood fill the whole board over the connection bitplanes, 64 tiles per operation. Its
+        // cost doesn't depend on how many tiles changed, so it suits bulk changes.
+        BITBOARD
+    }
+
+    // ******************************************************************** //
+    // Constructors.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty board with the given grid size.
+     *
+     * @param width  Width of the grid, in tiles.
+     * @param height Height of the grid, in tiles.
+     */
+    public Board(int width, int height)
+    {
+        gridWidth = width;
+        gridHeight = height;
+        numTiles = gridWidth * gridHeight;
+
+        dirs = new byte[numTiles];
+        links = new byte[numTiles];
+        parentDir = new byte[numTiles];
+        lockedBits = Bits.create(numTiles);
+        blindBits = Bits.create(numTiles);
+        connectedBits = Bits.create(numTiles);
+        solvedBits = Bits.create(numTiles);
+        rotatingBits = Bits.create(numTiles);
+        dirtyBits = Bits.create(numTiles);
+        reachedBits = Bits.create(numTiles);
+        queuedBits = Bits.create(numTiles);
+        floodBits = Bits.create(numTiles);
+        planes = new BitPlanes(numTiles);
+
+        rootIndex = 0;
+    }
+
+    /**
+     * Create a copy of the given board. This is used to record the solved state of a board before
+     * it is scrambled.
+     *
+     * @param other The board to copy.
+     */
+    public Board(Board other)
+    {
+        this(other.gridWidth, other.gridHeight);
+        copyFrom(other);
+    }
+
+    /**
+     * Make this board a copy of the given one. This lets a board built elsewhere, e.g. by a
+     * Generator, be swapped into a board which the display already refers to.
+     *
+     * @param other The board to copy; its grid must be the same size as ours.
+     */
+    public void copyFrom(Board other)
+    {
+        if (other.gridWidth != gridWidth || other.gridHeight != gridHeight)
+            throw new IllegalArgumentException("Board.copyFrom(): grid is " + other.gridWidth + "x"
+                    + other.gridHeight + ", expected " + gridWidth + "x" + gridHeight);
+
+        reset(other.gameSkill, other.boardWidth, other.boardHeight);
+        System.arraycopy(other.dirs, 0, dirs, 0, numTiles);
+        planes.copyFrom(other.planes);
+        System.arraycopy(other.lockedBits, 0, lockedBits, 0, lockedBits.length);
+        System.arraycopy(other.blindBits, 0, blindBits, 0, blindBits.length);
+        System.arraycopy(other.connectedBits, 0, connectedBits, 0, connectedBits.length);
+        System.arraycopy(other.solvedBits, 0, solvedBits, 0, solvedBits.length);
+        rootIndex = other.rootIndex;
+        focusX = other.focusX;
+        focusY = other.focusY;
+        seed = other.seed;
+        seeded = other.seeded;
+    }
+
+    // ******************************************************************** //
+    // Board Setup.
+    // ******************************************************************** //
+
+    /**
+     * Reset the board for a given skill level.
+     *
+     * @param sk Skill level for the game; set the board up accordingly.
+     * @param bw Width of the playing area for this skill level, in tiles.
+     * @param bh Height of the playing area for this skill level, in tiles.
+     */
+    public void reset(Skill sk, int bw, int bh)
+    {
+        // Save the width and height of the playing board for this skill
+        // level, and the board placement within the overall tile grid.
+        gameSkill = sk;
+        wrapped = sk.wrapped;
+        boardWidth = Math.min(bw, gridWidth);
+        boardHeight = Math.min(bh, gridHeight);
+        boardStartX = (gridWidth - boardWidth) / 2;
+        boardEndX = boardStartX + boardWidth;
+        boardStartY = (gridHeight - boardHeight) / 2;
+        boardEndY = boardStartY + boardHeight;
+
+        // Reset the tiles. If we're wrapped, set the surrounding tiles
+        // to None; else Free, to show that there's no wraparound. The
+        // neighbours follow from the new playing area.
+        Arrays.fill(dirs, (byte) (wrapped ? NONE : FREE));
+        planes.reset(gridWidth, boardStartX, boardStartY, boardEndX, boardEndY, wrapped);
+        Arrays.fill(lockedBits, 0);
+        Arrays.fill(blindBits, 0);
+        Arrays.fill(connectedBits, 0);
+        Arrays.fill(solvedBits, 0);
+        Arrays.fill(rotatingBits, 0);
+        Arrays.fill(dirtyBits, -1L);
+        rootIndex = index(boardStartX, boardStartY);
+        seeded = false;
+        connectionsStale = true;
+    }
+
+    /**
+     * Generate a network for a new game. We call createNet() until we get a network which uses
+     * enough of the board, or run out of tries.
+     *
+     * @param sk  Skill level for the game; create the network accordingly.
+     * @param rng Random number generator to use.
+     * @return The number of tiles used in the layout.
+     */
+    public int generate(Skill sk, Random rng)
+    {
+        // Loop doing board setup until we get a valid board
+        int minCells = minActiveCells();
+        int cells = 0;
+        for (int tries = 0; cells < minCells && tries < MAX_TRIES; ++tries)
+            cells = createNet(sk, rng);
+        return cells;
+    }
+
+    /**
+     * Generate a network for a new game from a seed. The network depends only on the seed, the
+     * skill level and the size of the playing area, so it can be generated again exactly from
+     * them; the seed is kept with the board.
+     *
+     * @param sk   Skill level for the game; create the network accordingly.
+     * @param seed Seed for the network.
+     * @return The number of tiles used in the layout.
+     */
+    public int generate(Skill sk, long seed)
+    {
+        int cells = generate(sk, new XoshiroRandom(seed));
+        this.seed = seed;
+        seeded = true;
+        return cells;
+    }
+
+    /**
+     * Get the number of tiles a network must use to be accepted by generate(): at least 85% of
+     * the playing area.
+     *
+     * @return The minimum number of tiles in a network.
+     */
+    int minActiveCells()
+    {
+        return (int) (boardWidth * boardHeight * MIN_ACTIVE);
+    }
+
+    /**
+     * Create a network layout. This function may be called multiple times after reset(), to get a
+     * network with enough tiles.
+     *
+     * @param sk  Skill level for the game; create the network accordingly.
+     * @param rng Random number generator to use.
+     * @return The number of tiles used in the layout.
+     */
+    public int createNet(Skill sk, Random rng)
+    {
+        // Reset the tiles' directions; the network no longer comes from a seed we know
+        seeded = false;
+        for (int y = boardStartY; y < boardEndY; y++)
+            for (int x = boardStartX; x < boardEndX; x++)
+                setDirs(index(x, y), FREE);
+
+        // Set the root tile (the server) to a random tile
+        int rootX = rng.nextInt(boardWidth) + boardStartX;
+        int rootY = rng.nextInt(boardHeight) + boardStartY;
+        setRoot(index(rootX, rootY));
+        Bits.put(connectedBits, rootIndex, true);
+        connectionsStale = true;
+        setFocus(rootX, rootY);
+
+        // Set up the list of tiles awaiting connection. Start by adding the root tile. The list
+        // is used as a queue: we take tiles from the head, and add to the tail
+        IntList list = netQueue;
+        list.clear();
+        list.add(rootIndex);
+        int head = 0;
+        if (rng.nextBoolean())
+            addRandomDir(rootIndex, list, rng);
+
+        // Loop while there are still tiles to be connected, connecting them in random directions
+        while (head < list.size())
+        {
+            int tile = list.get(head);
+
+            // Randomly do the first tile, or defer it and do the next one.
+            // This prevents unduly long, straight branches.
+            if (rng.nextBoolean())
+            {
+                // Add a random direction from this tile
+                addRandomDir(tile, list, rng);
+
+                // 50% of the time, add a second direction, if we can find one
+                if (rng.nextBoolean())
+                    addRandomDir(tile, list, rng);
+
+                // A third pass makes networks more complex, but also introduces 4-way crosses
+                if (sk.branches >= 3 && rng.nextInt(3) == 0)
+                    addRandomDir(tile, list, rng);
+            } else
+                list.add(tile);
+
+            // Pop the first element off the list
+            ++head;
+        }
+        list.clear();
+
+        return activeCells();
+    }
+
+    /**
+     * Create one network layout from a seed: the first try which generate(Skill, long) makes for
+     * the seed. If the network uses enough of the board, generate() would stop there, so the seed
+     * regenerates it exactly and the board keeps it; otherwise the board has no seed.
+     *
+     * @param sk   Skill level for the game; create the network accordingly.
+     * @param seed Seed for the network.
+     * @return The number of tiles used in the layout.
+     */
+    int createNet(Skill sk, long seed)
+    {
+        int cells = createNet(sk, new XoshiroRandom(seed));
+        if (cells >= minActiveCells())
+        {
+            this.seed = seed;
+            seeded = true;
+        }
+        return cells;
+    }
+
+    /**
+     * Count the tiles in the playing area which are part of the network.
+     *
+     * @return The number of tiles used in the layout.
+     */
+    public int activeCells()
+    {
+        int cells = 0;
+        for (int y = boardStartY; y < boardEndY; y++)
+            for (int x = boardStartX; x < boardEndX; x++)
+                if (dirs[index(x, y)] != FREE)
+                    ++cells;
+        return cells;
+    }
+
+    /**
+     * Add a connection in a random direction from the given tile. We enumerate the free adjacent
+     * tiles around the starting tile, then pick one to connect to at random. If there is no free
+     * adjacent tile, we do nothing.
+     * <p>
+     * If we connect to a tile, it is added to the passed-in list.
+     *
+     * @param tile Index of the tile to connect from.
+     * @param list Current list of tiles awaiting connection.
+     * @param rng  Random number generator to use.
+     */
+    private void addRandomDir(int tile, IntList list, Random rng)
+    {
+        // List the adjacent tiles which are free
+        int nfree = 0;
+        for (int c = 0; c < 4; ++c)
+        {
+            int bit = 1 << c;
+            int next = next(tile, bit);
+            if (next >= 0 && dirs[next] == FREE)
+                freeDirs[nfree++] = bit;
+        }
+
+        if (nfree == 0)
+            return;
+
+        // Pick one of the free adjacents at random
+        int bit = freeDirs[rng.nextInt(nfree)];
+        int dest = next(tile, bit);
+
+        // Make a link to that tile, and a corresponding link back
+        setDirs(tile, dirs[tile] | bit);
+        setDirs(dest, dirs[dest] | reverse(bit));
+
+        // Add the new tile to the outstanding list
+        list.add(dest);
+    }
+
+    /**
+     * Jumble the board by rotating every tile in the playing area by a random number of quarter
+     * turns, and blind the appropriate tiles for the skill level. The rotations are applied
+     * immediately; a renderer which wants to animate the jumble can do its own.
+     *
+     * @param sk  Skill level for the game.
+     * @param rng Random number generator to use.
+     */
+    public void scramble(Skill sk, Random rng)
+    {
+        for (int y = boardStartY; y < boardEndY; y++)
+        {
+            for (int x = boardStartX; x < boardEndX; x++)
+            {
+                rotate(x, y, (rng.nextInt(4) - 2) * 90);
+                if (numDirs(x, y) >= sk.blind)
+                    setBlind(x, y, true);
+            }
+        }
+    }
+
+    // ******************************************************************** //
+    // Board Logic.
+    // ******************************************************************** //
+
+    /**
+     * Bring every tile's connected flag up to date with the current board state. This function is
+     * called each time a tile is rotated.
+     * <p>
+     * We keep a spanning tree of the tiles connected to the server, and we note which tiles'
+     * connections change, so normally we only repair the parts of the tree which are affected: a
+     * subtree hanging off a link which has been broken is cut loose and then re-attached where it
+     * can be, and tiles reached over a new link are added. The work is proportional to the size
+     * of those subtrees rather than to the size of the board. After a reset, a new net or a
+     * restore we rebuild the tree from scratch.
+     * <p>
+     * The tiles whose connected state changed are available from getFlippedTiles() afterwards.
+     *
+     * @return true if one or more tiles have been connected that previously weren't
+     */
+    public boolean updateConnections()
+    {
+        flippedTiles.clear();
+        if (connectivity == Connectivity.BITBOARD)
+            return floodConnections();
+        if (connectionsStale)
+            rebuildConnections();
+        else
+            repairConnections();
+
+        // Set every touched tile's connected status according to the tree, and note the tiles
+        // which have flipped. Count tiles that are connected but weren't previously.
+        int newConnections = 0;
+        for (int t = 0; t < touchedTiles.size(); ++t)
+        {
+            int tile = touchedTiles.get(t);
+            boolean reached = Bits.get(reachedBits, tile);
+            if (Bits.put(connectedBits, tile, reached))
+            {
+                if (reached)
+                    ++newConnections;
+                Bits.set(dirtyBits, tile);
+                flippedTiles.add(tile);
+            }
+        }
+        touchedTiles.clear();
+
+        // Tell the caller whether we got a new one.
+        return newConnections != 0;
+    }
+
+    /**
+     * Work out the connected tiles by a flood fill over the bitplanes, then compare with the
+     * previous connected flags word by word to find the tiles which have flipped. The spanning
+     * tree isn't maintained in this mode, so it will be rebuilt if we go back to INCREMENTAL.
+     *
+     * @return true if one or more tiles have been connected that previously weren't
+     */
+    private boolean floodConnections()
+    {
+        for (int p = 0; p < pendingTiles.size(); ++p)
+            Bits.clear(queuedBits, pendingTiles.get(p));
+        pendingTiles.clear();
+        connectionsStale = true;
+
+        planes.flood(rootIndex, rotatingBits, floodBits);
+
+        int newConnections = 0;
+        for (int w = 0; w < floodBits.length; ++w)
+        {
+            long flipped = floodBits[w] ^ connectedBits[w];
+            if (flipped == 0)
+                continue;
+            newConnections += Long.bitCount(flipped & floodBits[w]);
+            connectedBits[w] = floodBits[w];
+            dirtyBits[w] |= flipped;
+            for (long f = flipped; f != 0; f &= f - 1)
+                flippedTiles.add((w << 6) + Long.numberOfTrailingZeros(f));
+        }
+
+        return newConnections != 0;
+    }
+
+    /**
+     * Select how updateConnections() works out which tiles are connected. The result is the same
+     * either way.
+     *
+     * @param c The connectivity mode to use.
+     */
+    public void setConnectivity(Connectivity c)
+    {
+        connectivity = c;
+    }
+
+    /**
+     * Get the tiles whose connected state changed in the last call to updateConnections(), as
+     * tile indices. The list is re-used, so it is only valid until the next call.
+     *
+     * @return The indices of the tiles which were connected or disconnected.
+     */
+    public IntList getFlippedTiles()
+    {
+        return flippedTiles;
+    }
+
+    /**
+     * Note that the given tile's connections may have changed, because it has been rotated or has
+     * started or stopped rotating. The tile is queued for the next updateConnections().
+     *
+     * @param tile Index of the tile which changed.
+     */
+    private void tileChanged(int tile)
+    {
+        if (Bits.put(queuedBits, tile, true))
+            pendingTiles.add(tile);
+    }
+
+    /**
+     * Rebuild the connection tree for the whole board with a breadth-first search from the
+     * server. If the root tile is rotating, then it's not connected to anything -- no-one is
+     * connected.
+     */
+    private void rebuildConnections()
+    {
+        pendingTiles.clear();
+        Arrays.fill(queuedBits, 0);
+        Arrays.fill(reachedBits, 0);
+        Arrays.fill(parentDir, (byte) 0);
+        for (int tile = 0; tile < numTiles; ++tile)
+        {
+            links[tile] = (byte) linksOf(tile);
+            touchedTiles.add(tile);
+        }
+
+        if (!Bits.get(rotatingBits, rootIndex))
+        {
+            Bits.set(reachedBits, rootIndex);
+            searchQueue.add(rootIndex);
+            growConnections();
+        }
+        connectionsStale = false;
+    }
+
+    /**
+     * Repair the connection tree after the tiles in pendingTiles have changed.
+     */
+    private void repairConnections()
+    {
+        // Record each changed tile's new links. Where a link has gone, and it was part of the
+        // tree, the subtree below it needs cutting loose. Where a link is new, the tile is a
+        // place from which the tree may be able to grow.
+        for (int p = 0; p < pendingTiles.size(); ++p)
+        {
+            int tile = pendingTiles.get(p);
+            Bits.clear(queuedBits, tile);
+            int old = links[tile];
+            int now = linksOf(tile);
+            if (now == old)
+                continue;
+            links[tile] = (byte) now;
+
+            for (int c = 0; c < 4; ++c)
+            {
+                int bit = 1 << c;
+                int next = next(tile, bit);
+                if (next < 0)
+                    continue;
+                if ((old & bit) != 0 && (now & bit) == 0)
+                {
+                    if (parentDir[next] == reverse(bit))
+                        cutRoots.add(next);
+                    else if (parentDir[tile] == bit)
+                        cutRoots.add(tile);
+                } else if ((old & bit) == 0 && (now & bit) != 0)
+                    seedTiles.add(tile);
+            }
+        }
+        pendingTiles.clear();
+
+        // The root is connected whenever it isn't rotating.
+        boolean rootLive = !Bits.get(rotatingBits, rootIndex);
+        if (Bits.put(reachedBits, rootIndex, rootLive))
+        {
+            touchedTiles.add(rootIndex);
+            if (rootLive)
+                seedTiles.add(rootIndex);
+        }
+
+        // Cut the broken subtrees loose. Each tile cut is a candidate for re-attachment.
+        for (int c = 0; c < cutRoots.size(); ++c)
+        {
+            int tile = cutRoots.get(c);
+            if (Bits.get(reachedBits, tile))
+                cutSubtree(tile);
+        }
+        cutRoots.clear();
+
+        // Everything still flagged reached is still connected to the server through the tree. Now
+        // grow the tree from the seed tiles. A seed that is connected grows outwards; one that
+        // isn't joins the tree if it links to a tile that is.
+        for (int s = 0; s < seedTiles.size(); ++s)
+        {
+            int tile = seedTiles.get(s);
+            if (!Bits.get(reachedBits, tile))
+            {
+                int bit = connectedNeighbour(tile);
+                if (bit == 0)
+                    continue;
+                Bits.set(reachedBits, tile);
+                parentDir[tile] = (byte) bit;
+                touchedTiles.add(tile);
+            }
+            searchQueue.add(tile);
+        }
+        seedTiles.clear();
+        growConnections();
+    }
+
+    /**
+     * Disconnect the given tile and everything below it in the connection tree. The tiles cut are
+     * added to seedTiles, so they get a chance to re-attach.
+     *
+     * @param top Index of the tile at the top of the subtree to cut.
+     */
+    private void cutSubtree(int top)
+    {
+        Bits.clear(reachedBits, top);
+        parentDir[top] = 0;
+        searchQueue.add(top);
+        for (int h = 0; h < searchQueue.size(); ++h)
+        {
+            int tile = searchQueue.get(h);
+            touchedTiles.add(tile);
+            seedTiles.add(tile);
+
+            for (int c = 0; c < 4; ++c)
+            {
+                int bit = 1 << c;
+                int child = next(tile, bit);
+                if (child >= 0 && parentDir[child] == reverse(bit) && Bits.get(reachedBits, child))
+                {
+                    Bits.clear(reachedBits, child);
+                    parentDir[child] = 0;
+                    searchQueue.add(child);
+                }
+            }
+        }
+        searchQueue.clear();
+    }
+
+    /**
+     * Extend the connection tree breadth-first from the tiles in searchQueue, which must all be
+     * connected, to every tile they link to which isn't yet connected.
+     */
+    private void growConnections()
+    {
+        for (int h = 0; h < searchQueue.size(); ++h)
+        {
+            int tile = searchQueue.get(h);
+
+            for (int c = 0; c < 4; ++c)
+            {
+                int bit = 1 << c;
+                if ((links[tile] & bit) == 0)
+                    continue;
+                int next = next(tile, bit);
+                if (next >= 0 && !Bits.get(reachedBits, next) && (links[next] & reverse(bit)) != 0)
+                {
+                    Bits.set(reachedBits, next);
+                    parentDir[next] = (byte) reverse(bit);
+                    touchedTiles.add(next);
+                    searchQueue.add(next);
+                }
+            }
+        }
+        searchQueue.clear();
+    }
+
+    /**
+     * Find a connected tile which the given tile links to.
+     *
+     * @param tile Index of the tile to look around.
+     * @return The direction bit of a connected neighbour which has a link with the tile, or 0 if
+     * there is none.
+     */
+    private int connectedNeighbour(int tile)
+    {
+        for (int c = 0; c < 4; ++c)
+        {
+            int bit = 1 << c;
+            if ((links[tile] & bit) == 0)
+                continue;
+            int next = next(tile, bit);
+            if (next >= 0 && Bits.get(reachedBits, next) && (links[next] & reverse(bit)) != 0)
+                return bit;
+        }
+        return 0;
+    }
+
+    /**
+     * Get the bitmask of directions in which the given tile currently has connections. A tile
+     * which is rotating has none.
+     *
+     * @param tile Index of the tile.
+     * @return Connection bits, as in CellDirection.ordinal().
+     */
+    private int linksOf(int tile)
+    {
+        int d = dirs[tile];
+        if (d == NONE || Bits.get(rotatingBits, tile))
+            return 0;
+        return d;
+    }
+
+    /**
+     * Determine whether the board is currently in a solved state/all terminals are connected to
+     * the server
+     * <p>
+     * Note that in some layouts, it is possible to connect all the terminals without using all the
+     * cable sections. Since the game intro asks the user to connect all the terminals, which makes
+     * sense, we look for unconnected terminals specifically.
+     * <p>
+     * NOTE: We assume that updateConnections() has been called to set the connected states of all
+     * tiles correctly for the current board state.
+     *
+     * @return true if the board is currently in a solved state -- ie. every terminal tile is
+     * connected to the server.
+     */
+    public boolean isSolved()
+    {
+        // Check every terminal against the connected flags, a word of tiles at a time
+        return planes.allTerminalsConnected(connectedBits);
+    }
+
+    /**
+     * Count the number of unconnected tiles in the board.
+     * <p>
+     * Note that in some layouts (particularly in Expert mode), it is possible to connect all the
+     * terminals without using all the cable sections, so the answer may be non-0 on a solved
+     * board.
+     * <p>
+     * NOTE: We assume that updateConnections() has been called to set the connected states of all
+     * tiles correctly for the current board state.
+     *
+     * @return The number of unconnected tiles in the board.
+     */
+    public int unconnectedCells()
+    {
+        return planes.countUnconnected(connectedBits);
+    }
+
+    /**
+     * Make every tile in the playing area visible; this is done when the board is solved.
+     */
+    public void clearBlind()
+    {
+        for (int y = boardStartY; y < boardEndY; y++)
+            for (int x = boardStartX; x < boardEndX; x++)
+                setBlind(x, y, false);
+    }
+
+    // ******************************************************************** //
+    // Solver.
+    // ******************************************************************** //
+
+    /**
+     * Generate a list of moves which will set each tile to the position it has in the given
+     * solved board.
+     * <p>
+     * We generate the moves list in breadth-first order from the server. This is harder to do,
+     * but looks nicer.
+     *
+     * @param solution The solved version of this board.
+     * @param rng      Random number generator used to pick the direction of half turns.
+     * @return The list of moves, each packed into an int by move(); the tile, and the number of
+     * degrees to rotate it, either -90 or 90. null if the solution doesn't match this board.
+     */
+    public IntList solve(Board solution, Random rng)
+    {
+        if (solution.gridWidth != gridWidth || solution.gridHeight != gridHeight)
+            return null;
+
+        IntList moves = new IntList(numTiles);
+        long[] seen = Bits.create(numTiles);
+        IntList pending = new IntList(numTiles);
+
+        // Set the root tile up to be solved first.
+        pending.add(solution.rootIndex);
+        Bits.set(seen, solution.rootIndex);
+
+        // While there are still tiles to investigate, solve them, check
+        // them for connections that we haven't flagged yet, and add those
+        // tiles to the list.
+        for (int h = 0; h < pending.size(); ++h)
+        {
+            int tile = pending.get(h);
+            solveTile(solution, tile, moves, rng);
+
+            int sd = solution.linksOf(tile);
+            for (int c = 0; c < 4; ++c)
+            {
+                int bit = 1 << c;
+                if ((sd & bit) == 0)
+                    continue;
+                int next = solution.next(tile, bit);
+                if (next >= 0 && !Bits.get(seen, next))
+                {
+                    pending.add(next);
+                    Bits.set(seen, next);
+                }
+            }
+        }
+
+        return moves;
+    }
+
+    /**
+     * Solve the given tile. This doesn't actually do anything, except add moves to the given
+     * moves list to put the tile into the solved state.
+     *
+     * @param solution The solved version of this board.
+     * @param tile     Index of the tile to solve.
+     * @param moves    List of packed moves that we're building.
+     * @param rng      Random number generator used to pick the direction of half turns.
+     */
+    private void solveTile(Board solution, int tile, IntList moves, Random rng)
+    {
+        CellDirection sd = CellDirection.dirs[solution.dirs[tile]];
+        CellDirection md = CellDirection.dirs[dirs[tile]];
+        if (sd == md)
+            return;
+
+        if (md.rotated(90) == sd)
+            moves.add(move(tile, 90));
+        else if (md.rotated(-90) == sd)
+            moves.add(move(tile, -90));
+        else if (md.rotated(180) == sd)
+        {
+            int m = move(tile, rng.nextBoolean() ? 90 : -90);
+            moves.add(m);
+            moves.add(m);
+        }
+    }
+
+    /**
+     * Pack a move into an int, so that lists of moves can be kept without allocating an object
+     * per move.
+     *
+     * @param tile  Index of the tile to rotate.
+     * @param angle Angle to rotate it by, in degrees; either -90 or 90.
+     * @return The packed move.
+     */
+    public static int move(int tile, int angle)
+    {
+        return tile << 1 | (angle < 0 ? 1 : 0);
+    }
+
+    /**
+     * Get the tile which a packed move rotates.
+     *
+     * @param move A move packed by move().
+     * @return Index of the tile.
+     */
+    public static int moveTile(int move)
+    {
+        return move >>> 1;
+    }
+
+    /**
+     * Get the angle by which a packed move rotates its tile.
+     *
+     * @param move A move packed by move().
+     * @return The angle in degrees; either -90 or 90.
+     */
+    public static int moveAngle(int move)
+    {
+        return (move & 1) != 0 ? -90 : 90;
+    }
+
+    // ******************************************************************** //
+    // State Save/Restore.
+    // ******************************************************************** //
+
+    /**
+     * Get the size of the saved state of the board, as written by saveBoard(byte[]).
+     *
+     * @return The size in bytes.
+     */
+    public int savedSize()
+    {
+        return SAVE_HEADER + boardWidth * boardHeight;
+    }
+
+    /**
+     * Save the state of the board to a byte array.
+     *
+     * @return The saved state.
+     */
+    public byte[] saveBoard()
+    {
+        byte[] data = new byte[savedSize()];
+        saveBoard(data);
+        return data;
+    }
+
+    /**
+     * Save the state of the board into a buffer. This allocates nothing, so a caller which saves
+     * often can keep one buffer and reuse it.
+     * <p>
+     * The format is a small header -- format version, skill level, grid size, playing area, root,
+     * focus and seed -- followed by one byte for each tile in the playing area, in column order,
+     * holding its direction bits and flags. The tiles outside the playing area are always the
+     * same for a given layout, so they aren't saved.
+     *
+     * @param buf Buffer to save into; it must hold at least savedSize() bytes.
+     * @return The number of bytes written.
+     */
+    public int saveBoard(byte[] buf)
+    {
+        int size = savedSize();
+        if (buf.length < size)
+            throw new IllegalArgumentException("Board.saveBoard(): buffer too small");
+
+        buf[0] = SAVE_MAGIC;
+        buf[1] = SAVE_VERSION;
+        buf[2] = (byte) gameSkill.ordinal();
+        buf[3] = (byte) (seeded ? SAVE_SEEDED : 0);
+        putShort(buf, 4, gridWidth);
+        putShort(buf, 6, gridHeight);
+        putShort(buf, 8, boardWidth);
+        putShort(buf, 10, boardHeight);
+        putShort(buf, 12, getRootX());
+        putShort(buf, 14, getRootY());
+        putShort(buf, 16, focusX);
+        putShort(buf, 18, focusY);
+        for (int i = 0; i < 8; ++i)
+            buf[20 + i] = (byte) (seed >>> (56 - i * 8));
+
+        // Save the states of the tiles in the playing area.
+        int p = SAVE_HEADER;
+        for (int x = boardStartX; x < boardEndX; ++x)
+        {
+            for (int y = boardStartY; y < boardEndY; ++y)
+            {
+                int tile = index(x, y);
+                int b = dirs[tile] & SAVE_DIRS;
+                if (Bits.get(blindBits, tile))
+                    b |= SAVE_BLIND;
+                if (Bits.get(lockedBits, tile))
+                    b |= SAVE_LOCKED;
+                if (Bits.get(connectedBits, tile))
+                    b |= SAVE_CONNECTED;
+                if (Bits.get(solvedBits, tile))
+                    b |= SAVE_SOLVED;
+                buf[p++] = (byte) b;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Restore the board state from the given byte array. reset() must have been called first for
+     * the saved game's skill level.
+     * <p>
+     * If the saved board size is identical to ours, then do a straight restore; if it's rotated
+     * (because the device was rotated), then restore and rotate. This allocates nothing.
+     *
+     * @param data The saved state, as written by saveBoard(); may be null.
+     * @return true if the state was restored OK; false if the saved state was incompatible with
+     * the current configuration.
+     */
+    public boolean restoreBoard(byte[] data)
+    {
+        if (!validSave(data) || data[2] != gameSkill.ordinal())
+            return false;
+
+        int sgw = getShort(data, 4);
+        int sgh = getShort(data, 6);
+        int sbw = getShort(data, 8);
+        int sbh = getShort(data, 10);
+        int rot = savedRotation(sgw, sgh, sbw, sbh);
+        if (rot == SAVE_NO_FIT)
+            return false;
+        if (data.length < SAVE_HEADER + sbw * sbh)
+            return false;
+
+        // Positions in the saved grid are relative to the saved playing area, so that the area
+        // maps onto ours even if its margins are uneven.
+        int ssx = (sgw - sbw) / 2;
+        int ssy = (sgh - sbh) / 2;
+        int rx = getShort(data, 12) - ssx;
+        int ry = getShort(data, 14) - ssy;
+        if (rx < 0 || rx >= sbw || ry < 0 || ry >= sbh)
+            return false;
+
+        // The focus may be anywhere in the saved grid, margins included.
+        int fx = getShort(data, 16);
+        int fy = getShort(data, 18);
+        if (fx < 0 || fx >= sgw || fy < 0 || fy >= sgh)
+            return false;
+
+        int p = SAVE_HEADER;
+        for (int ax = 0; ax < sbw; ++ax)
+        {
+            for (int ay = 0; ay < sbh; ++ay)
+            {
+                int tile = mapArea(ax, ay, sbw, sbh, rot);
+                int b = data[p++];
+                setDirs(tile, CellDirection.dirs[b & SAVE_DIRS].rotated(rot).ordinal());
+                Bits.put(blindBits, tile, (b & SAVE_BLIND) != 0);
+                Bits.put(lockedBits, tile, (b & SAVE_LOCKED) != 0);
+                Bits.put(connectedBits, tile, (b & SAVE_CONNECTED) != 0);
+                Bits.put(solvedBits, tile, (b & SAVE_SOLVED) != 0);
+                Bits.set(dirtyBits, tile);
+            }
+        }
+
+        setRoot(mapArea(rx, ry, sbw, sbh, rot));
+
+        int focus = mapTile(fx, fy, rot);
+        setFocus(focus % gridWidth, focus / gridWidth);
+
+        seeded = (data[3] & SAVE_SEEDED) != 0;
+        seed = savedSeed(data);
+        connectionsStale = true;
+
+        return true;
+    }
+
+    /**
+     * Restore the solved state of a saved game, by generating its network again from the seed
+     * in the saved state. reset() must have been called first for the saved game's skill level.
+     * This means the solution needn't be saved alongside the game.
+     *
+     * @param data The saved state of the game, as written by saveBoard(); may be null.
+     * @return true if the solution was restored OK; false if the saved state was incompatible
+     * with the current configuration, or the saved game wasn't generated from a seed.
+     */
+    public boolean restoreSolution(byte[] data)
+    {
+        if (!validSave(data) || data[2] != gameSkill.ordinal() || (data[3] & SAVE_SEEDED) == 0)
+            return false;
+
+        // Generate in the saved layout, then restore that, which rotates it to fit if need be.
+        Board net = new Board(getShort(data, 4), getShort(data, 6));
+        net.reset(gameSkill, getShort(data, 8), getShort(data, 10));
+        net.generate(gameSkill, savedSeed(data));
+        return restoreBoard(net.saveBoard());
+    }
+
+    /**
+     * Check that a saved state has a header we understand.
+     *
+     * @param data The saved state; may be null.
+     * @return true if the header is present, and the format and skill level are known.
+     */
+    private static boolean validSave(byte[] data)
+    {
+        return data != null && data.length >= SAVE_HEADER && data[0] == SAVE_MAGIC
+                && data[1] == SAVE_VERSION && data[2] >= 0 && data[2] < Skill.values().length;
+    }
+
+    /**
+     * Get the seed from a saved state.
+     *
+     * @param data The saved state.
+     * @return The seed; meaningless if the saved game had no seed.
+     */
+    private static long savedSeed(byte[] data)
+    {
+        long s = 0;
+        for (int i = 0; i < 8; ++i)
+            s = s << 8 | data[20 + i] & 0xff;
+        return s;
+    }
+
+    /**
+     * Write a 16-bit value into a buffer, high byte first.
+     *
+     * @param buf Buffer to write to.
+     * @param off Offset to write at.
+     * @param v   The value.
+     */
+    private static void putShort(byte[] buf, int off, int v)
+    {
+        buf[off] = (byte) (v >>> 8);
+        buf[off + 1] = (byte) v;
+    }
+
+    /**
+     * Read a 16-bit unsigned value from a buffer, high byte first.
+     *
+     * @param buf Buffer to read from.
+     * @param off Offset to read at.
+     * @return The value.
+     */
+    private static int getShort(byte[] buf, int off)
+    {
+        return (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+    }
+
+    /**
+     * Get the position of a tile in the playing area, numbered in column order as in the saved
+     * state; e.g. so that a move log can be saved in a form which survives rotation of the board.
+     *
+     * @param tile The index of a tile in the playing area.
+     * @return The tile's position in the playing area.
+     */
+    int areaPosition(int tile)
+    {
+        int ax = tile % gridWidth - boardStartX;
+        int ay = tile / gridWidth - boardStartY;
+        return ax * boardHeight + ay;
+    }
+
+    /**
+     * Find the tile which a position in a saved playing area maps to, allowing for rotation of the
+     * board in the same way as restoreBoard().
+     *
+     * @param pos The position in the saved playing area, as given by areaPosition().
+     * @param sgw Width of the saved grid.
+     * @param sgh Height of the saved grid.
+     * @param sbw Width of the saved playing area.
+     * @param sbh Height of the saved playing area.
+     * @return The index of the tile in this board; -1 if the saved board doesn't fit ours, or
+     * the position is outside it.
+     */
+    int savedAreaTile(int pos, int sgw, int sgh, int sbw, int sbh)
+    {
+        int rot = savedRotation(sgw, sgh, sbw, sbh);
+        if (rot == SAVE_NO_FIT || pos < 0 || pos >= sbw * sbh)
+            return -1;
+        return mapArea(pos / sbh, pos % sbh, sbw, sbh, rot);
+    }
+
+    /**
+     * Work out how a saved board fits ours: as it is, or rotated because the device was rotated.
+     *
+     * @param sgw Width of the saved grid.
+     * @param sgh Height of the saved grid.
+     * @param sbw Width of the saved playing area.
+     * @param sbh Height of the saved playing area.
+     * @return The rotation to apply to the saved board: 0, -90 or 90; SAVE_NO_FIT if it doesn't
+     * fit.
+     */
+    private int savedRotation(int sgw, int sgh, int sbw, int sbh)
+    {
+        if (sgw == gridWidth && sgh == gridHeight && sbw == boardWidth && sbh == boardHeight)
+            return 0;
+        else if (sgw == gridHeight && sgh == gridWidth && sbw == boardHeight && sbh == boardWidth)
+            return gridWidth > gridHeight ? -90 : 90;
+        else
+            return SAVE_NO_FIT;
+    }
+
+    /**
+     * Find the tile which a saved tile position maps to, allowing for rotation of the board.
+     *
+     * @param sx  Saved X position.
+     * @param sy  Saved Y position.
+     * @param rot The rotation applied to the saved board: 0, -90 or 90.
+     * @return The index of the tile in this board.
+     */
+    private int mapTile(int sx, int sy, int rot)
+    {
+        if (rot < 0)
+            return index(sy, gridHeight - sx - 1);
+        else if (rot > 0)
+            return index(gridWidth - sy - 1, sx);
+        else
+            return index(sx, sy);
+    }
+
+    /**
+     * Find the tile which a saved position in the playing area maps to, allowing for rotation of
+     * the board.
+     *
+     * @param ax  Saved X position, relative to the saved playing area.
+     * @param ay  Saved Y position, relative to the saved playing area.
+     * @param sbw Width of the saved playing area.
+     * @param sbh Height of the saved playing area.
+     * @param rot The rotation applied to the saved board: 0, -90 or 90.
+     * @return The index of the tile in this board.
+     */
+    private int mapArea(int ax, int ay, int sbw, int sbh, int rot)
+    {
+        if (rot < 0)
+            return index(boardStartX + ay, boardStartY + sbw - ax - 1);
+        else if (rot > 0)
+            return index(boardStartX + sbh - ay - 1, boardStartY + ax);
+        else
+            return index(boardStartX + ax, boardStartY + ay);
+    }
+    // ******************************************************************** //
+    // Tile State.
+    // ******************************************************************** //
+
+    /**
+     * Get the index of the tile at the given grid position.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The tile index, y * gridWidth + x.
+     */
+    public int index(int x, int y)
+    {
+        return y * gridWidth + x;
+    }
+
+    /**
+     * Get the neighbouring tile in the given direction from a tile. If wrapping is enabled, the
+     * neighbour may be at the other edge of the playing area.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param d The direction to look in; must be a single cardinal direction.
+     * @return The index of the next tile in the given direction; -1 if there is none.
+     */
+    public int next(int x, int y, CellDirection d)
+    {
+        return next(index(x, y), d.ordinal());
+    }
+
+    /**
+     * Return the directions that a tile is connected to, outwards (ie. ignoring whether there is
+     * a matching inward connection in the next tile).
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The directions that the tile is connected to, outwards.
+     */
+    public CellDirection dirs(int x, int y)
+    {
+        return CellDirection.dirs[dirs[index(x, y)]];
+    }
+
+    /**
+     * Determine how many connections a tile has outwards (ie. ignoring whether there is a
+     * matching inward connection in the next tile)
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The number of outward connections from the tile
+     */
+    public int numDirs(int x, int y)
+    {
+        return Integer.bitCount(dirs[index(x, y)] & 0x0f);
+    }
+
+    /**
+     * Query whether a tile has a connection in the given direction(s). A tile which is part way
+     * through a rotation has no connections.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param d Direction(s) to check
+     * @return True if the tile is connected in all the given directions; else false
+     */
+    public boolean hasConnection(int x, int y, CellDirection d)
+    {
+        int bits = d.ordinal();
+        return (linksOf(index(x, y)) & bits) == bits;
+    }
+
+    /**
+     * Rotate a tile's connections right now. This is used by the renderer each time a rotation
+     * animation passes a quarter turn, and when driving the board headless.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param a The angle in degrees to rotate by; clockwise positive.
+     */
+    public void rotate(int x, int y, int a)
+    {
+        int tile = index(x, y);
+        setDirs(tile, CellDirection.dirs[dirs[tile]].rotated(a).ordinal());
+    }
+
+    /**
+     * Query whether a tile is currently part way through a rotation.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return True if the tile is not at its base angle
+     */
+    public boolean isRotating(int x, int y)
+    {
+        return Bits.get(rotatingBits, index(x, y));
+    }
+
+    /**
+     * Flag whether a tile is part way through a rotation. While this is set the tile has no
+     * connections; the renderer sets it for the duration of its rotation animation.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param b True if the tile is rotating.
+     */
+    public void setRotating(int x, int y, boolean b)
+    {
+        int tile = index(x, y);
+        if (Bits.put(rotatingBits, tile, b))
+            tileChanged(tile);
+    }
+
+    /**
+     * Determine whether a tile is the root tile of the network; ie. the server.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return True if this is the root.
+     */
+    public boolean isRoot(int x, int y)
+    {
+        return index(x, y) == rootIndex;
+    }
+
+    /**
+     * Determine whether a tile's "blind" flag is set.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The tile's "blind" flag.
+     */
+    public boolean isBlind(int x, int y)
+    {
+        return Bits.get(blindBits, index(x, y));
+    }
+
+    /**
+     * Set a tile's "blind" flag. A blind tile doesn't display its connections; it does display
+     * the server or terminal if appropriate. This is used to make the game harder.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param b The new "blind" flag (true = blind).
+     */
+    public void setBlind(int x, int y, boolean b)
+    {
+        int tile = index(x, y);
+        if (Bits.put(blindBits, tile, b))
+            Bits.set(dirtyBits, tile);
+    }
+
+    /**
+     * Determine whether a tile's "locked" flag is set.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The tile's "locked" flag.
+     */
+    public boolean isLocked(int x, int y)
+    {
+        return Bits.get(lockedBits, index(x, y));
+    }
+
+    /**
+     * Set the "locked" flag on a tile.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param b New "locked" flag for the tile.
+     */
+    public void setLocked(int x, int y, boolean b)
+    {
+        int tile = index(x, y);
+        if (Bits.put(lockedBits, tile, b))
+            Bits.set(dirtyBits, tile);
+    }
+
+    /**
+     * Determine whether a tile is currently connected (directly or not) to the server.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The tile's "connected" flag.
+     */
+    public boolean isConnected(int x, int y)
+    {
+        return Bits.get(connectedBits, index(x, y));
+    }
+
+    /**
+     * Determine whether a tile's "fully connected" flag is set.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return The tile's "fully connected" flag.
+     */
+    public boolean isSolved(int x, int y)
+    {
+        return Bits.get(solvedBits, index(x, y));
+    }
+
+    /**
+     * Set a tile's "fully connected" flag. For the server, this is used to indicate victory.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @param b New "fully connected" flag for the tile.
+     */
+    public void setSolved(int x, int y, boolean b)
+    {
+        int tile = index(x, y);
+        if (Bits.put(solvedBits, tile, b))
+            Bits.set(dirtyBits, tile);
+    }
+
+    /**
+     * Determine whether any of a tile's displayed state has changed since the renderer last
+     * called clearDirty().
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return True if the tile needs to be redrawn.
+     */
+    public boolean isDirty(int x, int y)
+    {
+        return Bits.get(dirtyBits, index(x, y));
+    }
+
+    /**
+     * Clear a tile's dirty flag; called by the renderer once it has drawn the tile.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     */
+    public void clearDirty(int x, int y)
+    {
+        Bits.clear(dirtyBits, index(x, y));
+    }
+
+    /**
+     * Set the connected directions of a tile, marking it for redraw and for the next connection
+     * update.
+     *
+     * @param tile Index of the tile.
+     * @param d    New CellDirection ordinal for the tile.
+     */
+    private void setDirs(int tile, int d)
+    {
+        if (dirs[tile] == d)
+            return;
+        dirs[tile] = (byte) d;
+        planes.set(tile, d);
+        Bits.set(dirtyBits, tile);
+        tileChanged(tile);
+    }
+
+    /**
+     * Move the root to the given tile.
+     *
+     * @param tile Index of the new root tile.
+     */
+    private void setRoot(int tile)
+    {
+        Bits.set(dirtyBits, rootIndex);
+        rootIndex = tile;
+        Bits.set(dirtyBits, rootIndex);
+    }
+
+    /**
+     * Get the neighbouring tile in the given direction from a tile. Within the playing area, a
+     * bounded board has no neighbours off the edges, and a wrapped board wraps around.
+     *
+     * @param tile Index of the tile.
+     * @param bit  The direction to look in; a single direction bit.
+     * @return The index of the next tile in the given direction; -1 if there is none.
+     */
+    private int next(int tile, int bit)
+    {
+        int x = tile % gridWidth;
+        int y = tile / gridWidth;
+        switch (bit)
+        {
+            case U:
+                if (wrapped || y > boardStartY)
+                    return index(x, decr(y, boardStartY, boardEndY));
+                return -1;
+            case R:
+                if (wrapped || x < boardEndX - 1)
+                    return index(incr(x, boardStartX, boardEndX), y);
+                return -1;
+            case D:
+                if (wrapped || y < boardEndY - 1)
+                    return index(x, incr(y, boardStartY, boardEndY));
+                return -1;
+            case L:
+                if (wrapped || x > boardStartX)
+                    return index(decr(x, boardStartX, boardEndX), y);
+                return -1;
+            default:
+                throw new IllegalArgumentException("Board.next() called with bad dir " + bit);
+        }
+    }
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    public int getGridWidth()
+    {
+        return gridWidth;
+    }
+
+    public int getGridHeight()
+    {
+        return gridHeight;
+    }
+
+    /**
+     * Get the current playing area width. This varies with the skill level.
+     *
+     * @return Playing area width in tiles.
+     */
+    public int getBoardWidth()
+    {
+        return boardWidth;
+    }
+
+    /**
+     * Get the current playing area height. This varies with the skill level.
+     *
+     * @return Playing area height in tiles.
+     */
+    public int getBoardHeight()
+    {
+        return boardHeight;
+    }
+
+    public int getBoardStartX()
+    {
+        return boardStartX;
+    }
+
+    public int getBoardStartY()
+    {
+        return boardStartY;
+    }
+
+    public int getBoardEndX()
+    {
+        return boardEndX;
+    }
+
+    public int getBoardEndY()
+    {
+        return boardEndY;
+    }
+
+    public Skill getSkill()
+    {
+        return gameSkill;
+    }
+
+    /**
+     * Determine whether the board's network was generated from a seed.
+     *
+     * @return true if the network came from generate(Skill, long).
+     */
+    public boolean hasSeed()
+    {
+        return seeded;
+    }
+
+    /**
+     * Get the seed the board's network was generated from.
+     *
+     * @return The seed; only meaningful if hasSeed().
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Get the X position of the root tile of the layout; where the server is.
+     *
+     * @return The root tile's X position.
+     */
+    public int getRootX()
+    {
+        return rootIndex % gridWidth;
+    }
+
+    /**
+     * Get the Y position of the root tile of the layout; where the server is.
+     *
+     * @return The root tile's Y position.
+     */
+    public int getRootY()
+    {
+        return rootIndex / gridWidth;
+    }
+
+    public int getFocusX()
+    {
+        return focusX;
+    }
+
+    public int getFocusY()
+    {
+        return focusY;
+    }
+
+    /**
+     * Record the position of the focused tile, so that it is saved with the board.
+     *
+     * @param x Focused tile X position.
+     * @param y Focused tile Y position.
+     */
+    public void setFocus(int x, int y)
+    {
+        focusX = x;
+        focusY = y;
+    }
+
+    // ******************************************************************** //
+    // Utilities.
+    // ******************************************************************** //
+
+    /**
+     * Get the direction bit which is the reverse of the given one.
+     *
+     * @param bit A single direction bit.
+     * @return The reverse direction bit.
+     */
+    private static int reverse(int bit)
+    {
+        return bit < R ? bit << 2 : bit >> 2;
+    }
+
+    /**
+     * Return the given value plus one, but wrapped within the given range.
+     *
+     * @param v   Value to increment.
+     * @param min Minimum allowed value, inclusive.
+     * @param max Maximum allowed value, not inclusive.
+     * @return The incremented value, wrapped around to stay in range.
+     */
+    private static int incr(int v, int min, int max)
+    {
+        return v < max - 1 ? ++v : min;
+    }
+
+    /**
+     * Return the given value minus one, but wrapped within the given range.
+     *
+     * @param v   Value to decrement.
+     * @param min Minimum allowed value, inclusive.
+     * @param max Maximum allowed value, not inclusive.
+     * @return The decremented value, wrapped around to stay in range.
+     */
+    private static int decr(int v, int min, int max)
+    {
+        return v > min ? --v : max - 1;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final double MIN_ACTIVE = 0.85;  // Fraction of the board a network must use
+    static final int MAX_TRIES = 10;                // Attempts at createNet() before we settle
+
+    // The direction bits, as in CellDirection.ordinal(); and the ordinals of the empty tile and
+    // the non-tile
+    private static final int L = 0x01;
+    private static final int D = 0x02;
+    private static final int R = 0x04;
+    private static final int U = 0x08;
+    private static final int FREE = 0;
+    private static final int NONE = 16;
+
+    // The saved state format: a header, then a byte per tile of the direction bits and flags
+    private static final byte SAVE_MAGIC = 'N';
+    private static final byte SAVE_VERSION = 2;
+    private static final int SAVE_HEADER = 28;
+    private static final int SAVE_SEEDED = 0x01;    // Header flag: the game has a seed
+    private static final int SAVE_DIRS = 0x0f;
+    private static final int SAVE_BLIND = 0x10;
+    private static final int SAVE_LOCKED = 0x20;
+    private static final int SAVE_CONNECTED = 0x40;
+    private static final int SAVE_SOLVED = 0x80;
+    private static final int SAVE_NO_FIT = Integer.MIN_VALUE;  // savedRotation(): the saved board doesn't fit
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // Width and height of the grid, in tiles, and the number of tiles
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int numTiles;
+
+    // Per-tile state, indexed by y * gridWidth + x. dirs holds each tile's CellDirection
+    // ordinal; the flags are bitsets
+    private final byte[] dirs;
+    private final long[] lockedBits;        // Tiles locked by the user
+    private final long[] blindBits;         // Blind tiles; a difficulty factor
+    private final long[] connectedBits;     // Tiles connected (directly or not) to the server
+    private final long[] solvedBits;        // Tiles flagged fully connected; used for the server
+    private final long[] rotatingBits;      // Tiles part way through a rotation
+    private final long[] dirtyBits;         // Tiles whose displayed state changed since drawn
+
+    private Skill gameSkill = Skill.NOVICE; // The skill level of the current game
+    private boolean wrapped = false;        // True if the playing area wraps around the edges
+
+    private int rootIndex;      // Index of the root tile of the layout; where the server is
+
+    private long seed = 0;          // Seed the network was generated from, if seeded
+    private boolean seeded = false; // True if the network was generated from a seed
+
+    // Position of the tile which currently has the focus
+    private int focusX = 0;
+    private int focusY = 0;
+
+    // Size of the game board, and offset of the first and last active tiles.
+    // These are set up to define the actual board area in use for a given
+    // game. These change depending on the skill level.
+    private int boardWidth;
+    private int boardHeight;
+    private int boardStartX;
+    private int boardStartY;
+    private int boardEndX;
+    private int boardEndY;
+
+    // Connectivity tracking, used in updateConnections(). We keep a spanning tree of the
+    // connected tiles: links is each tile's connection bits as of the last update; parentDir is
+    // the direction bit from each connected tile towards its parent in the tree, 0 for none;
+    // reachedBits flags the tiles in the tree. connectionsStale is set when the whole tree needs
+    // rebuilding; pendingTiles are tiles whose links may have changed since the last update,
+    // flagged in queuedBits; the rest are working lists, kept to save re-allocating them
+    private final byte[] links;
+    private final byte[] parentDir;
+    private final long[] reachedBits;
+    private final long[] queuedBits;
+    private Connectivity connectivity = Connectivity.INCREMENTAL;
+    private boolean connectionsStale = true;
+    private final IntList pendingTiles = new IntList(64);
+    private final IntList cutRoots = new IntList(64);
+    private final IntList seedTiles = new IntList(64);
+    private final IntList touchedTiles = new IntList(64);
+    private final IntList flippedTiles = new IntList(64);
+    private final IntList searchQueue = new IntList(64);
+
+    // The connections as bitplanes, kept in step with dirs, and working storage for the flood
+    // fill in BITBOARD mode
+    private final BitPlanes planes;
+    private final long[] floodBits;
+
+    // Working storage for createNet()
+    private final IntList netQueue = new IntList(64);
+    private final int[] freeDirs = new int[4];
+}
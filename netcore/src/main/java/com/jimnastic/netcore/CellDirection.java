@@ -0,0 +1,130 @@
+package com.jimnastic.netcore;
+
+/**
+ * Define the connected direction combinations. The enum is carefully organised so that the
+ * ordinal() of each value is a bitmask representing the connected directions. This allows us to
+ * manipulate directions more easily.
+ * <p>
+ * The bits are, from most significant: up, right, down, left.
+ */
+public enum CellDirection
+{
+    FREE, // Unconnected cell.
+    ___L,
+    __D_,
+    __DL,
+    _R__,
+    _R_L,
+    _RD_,
+    _RDL,
+    U___,
+    U__L,
+    U_D_,
+    U_DL,
+    UR__,
+    UR_L,
+    URD_,
+    URDL,
+    NONE; // Not a cell.
+
+    /**
+     * Get the direction combination represented by the given bitmask.
+     *
+     * @param bits Direction bits, 0 to 15.
+     * @return The corresponding direction combination.
+     */
+    public static CellDirection getDir(int bits)
+    {
+        return dirs[bits];
+    }
+
+    /**
+     * Get the direction which is the reverse of this one. Only defined for the four cardinal
+     * directions.
+     *
+     * @return The reverse direction, or null if this isn't a cardinal direction.
+     */
+    public CellDirection reverse()
+    {
+        switch (this)
+        {
+            case U___:
+                return __D_;
+            case _R__:
+                return ___L;
+            case __D_:
+                return U___;
+            case ___L:
+                return _R__;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return the directions that this combination would be connected to if it was rotated by the
+     * given angle.
+     *
+     * @param a The angle in degrees to rotate by; clockwise positive. Must be a multiple of 90.
+     * @return The rotated directions. FREE and NONE are unchanged by rotation.
+     */
+    public CellDirection rotated(int a)
+    {
+        if (this == NONE)
+            return NONE;
+
+        int bits = ordinal();
+        int quarters = ((a / 90) % 4 + 4) % 4;
+        for (int i = 0; i < quarters; ++i)
+            bits = ((bits & 0x01) << 3) | ((bits & 0x0e) >> 1);
+
+        return dirs[bits];
+    }
+
+    /**
+     * Query whether this combination includes all of the given direction(s).
+     *
+     * @param d Direction(s) to check.
+     * @return True if this is connected in all the given directions; else false.
+     */
+    public boolean has(CellDirection d)
+    {
+        return this != NONE && (ordinal() & d.ordinal()) == d.ordinal();
+    }
+
+    /**
+     * Determine how many connections this combination has.
+     *
+     * @return The number of connected directions; 0 for FREE and NONE.
+     */
+    public int numDirs()
+    {
+        if (this == NONE)
+            return 0;
+
+        int bits = ordinal();
+        int n = 0;
+        for (int i = 0; i < 4; ++i)
+        {
+            n += bits & 0x01;
+            bits >>= 1;
+        }
+        return n;
+    }
+
+    public static final CellDirection[] dirs = values();
+
+    public static final CellDirection[] cardinals = {
+            ___L,
+            __D_,
+            _R__,
+            U___
+    };
+
+    public static final int[][] cardinalOffs = {
+            {-1, 0}, // ___L
+            {0, 1}, // __D_
+            {1, 0}, // _R__
+            {0, -1}, // U___
+    };
+}
@@ -0,0 +1,423 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+
+/**
+ * A record of a game: what's needed to build the puzzle again -- the seed, skill level and board
+ * size -- and every move made on it, with the time it was made. A game can be replayed exactly
+ * from its record; e.g. to reproduce a bug reported from the field, to check that a change to the
+ * connection logic leaves real games as they were, or to benchmark with real players' input.
+ * <p>
+ * Each move is packed as by MoveLog.entry(), with the tile index in the recorded grid. Times are
+ * in ms from the start of the game, and never go backwards. The moves are kept in growable
+ * arrays, so recording one doesn't normally allocate.
+ */
+public final class GameRecord
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty record of a game.
+     *
+     * @param board The board the game is played on; its network must have been generated from
+     *              a seed. It isn't modified.
+     */
+    public GameRecord(Board board)
+    {
+        if (!board.hasSeed())
+            throw new IllegalArgumentException("GameRecord: board has no seed");
+        skill = board.getSkill();
+        gridWidth = board.getGridWidth();
+        gridHeight = board.getGridHeight();
+        boardWidth = board.getBoardWidth();
+        boardHeight = board.getBoardHeight();
+        seed = board.getSeed();
+        moves = new int[INITIAL_CAPACITY];
+        times = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create an empty record of a game read back from its saved form.
+     *
+     * @param skill    The game's skill level.
+     * @param gw       Grid width.
+     * @param gh       Grid height.
+     * @param bw       Playing area width.
+     * @param bh       Playing area height.
+     * @param seed     The seed of the game's network.
+     * @param capacity Initial capacity, in moves.
+     */
+    private GameRecord(Skill skill, int gw, int gh, int bw, int bh, long seed, int capacity)
+    {
+        this.skill = skill;
+        gridWidth = gw;
+        gridHeight = gh;
+        boardWidth = bw;
+        boardHeight = bh;
+        this.seed = seed;
+        moves = new int[Math.max(capacity, INITIAL_CAPACITY)];
+        times = new long[moves.length];
+    }
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    /**
+     * Add a move to the record.
+     *
+     * @param time The time it was made, in ms from the start of the game. If this is before
+     *             the last move's, it's taken as the same time.
+     * @param move The move, packed by MoveLog.entry().
+     */
+    public void add(long time, int move)
+    {
+        if (count == moves.length)
+        {
+            moves = Arrays.copyOf(moves, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+        }
+        times[count] = count > 0 ? Math.max(time, times[count - 1]) : Math.max(time, 0);
+        moves[count++] = move;
+    }
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of moves recorded.
+     *
+     * @return The number of moves.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Get a recorded move.
+     *
+     * @param i Index of the move.
+     * @return The move, packed by MoveLog.entry().
+     */
+    public int move(int i)
+    {
+        if (i >= count)
+            throw new IndexOutOfBoundsException("GameRecord.move(" + i + ") with size " + count);
+        return moves[i];
+    }
+
+    /**
+     * Get the time of a recorded move.
+     *
+     * @param i Index of the move.
+     * @return The time it was made, in ms from the start of the game.
+     */
+    public long time(int i)
+    {
+        if (i >= count)
+            throw new IndexOutOfBoundsException("GameRecord.time(" + i + ") with size " + count);
+        return times[i];
+    }
+
+    /**
+     * Get the time of the last move.
+     *
+     * @return The time of the last move, in ms from the start of the game; 0 if there are none.
+     */
+    public long duration()
+    {
+        return count > 0 ? times[count - 1] : 0;
+    }
+
+    /**
+     * Get the game's skill level.
+     *
+     * @return The skill level.
+     */
+    public Skill getSkill()
+    {
+        return skill;
+    }
+
+    /**
+     * Get the width of the recorded grid.
+     *
+     * @return The grid width.
+     */
+    public int getGridWidth()
+    {
+        return gridWidth;
+    }
+
+    /**
+     * Get the height of the recorded grid.
+     *
+     * @return The grid height.
+     */
+    public int getGridHeight()
+    {
+        return gridHeight;
+    }
+
+    /**
+     * Get the width of the recorded playing area.
+     *
+     * @return The playing area width.
+     */
+    public int getBoardWidth()
+    {
+        return boardWidth;
+    }
+
+    /**
+     * Get the height of the recorded playing area.
+     *
+     * @return The playing area height.
+     */
+    public int getBoardHeight()
+    {
+        return boardHeight;
+    }
+
+    /**
+     * Get the seed of the game's network.
+     *
+     * @return The seed.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    // ******************************************************************** //
+    // Replay.
+    // ******************************************************************** //
+
+    /**
+     * Build the game's puzzle again: the network, and its starting scramble.
+     *
+     * @return The puzzle.
+     */
+    public PuzzleQueue.Puzzle puzzle()
+    {
+        Board net = new Board(gridWidth, gridHeight);
+        net.reset(skill, boardWidth, boardHeight);
+        net.generate(skill, seed);
+        return new PuzzleQueue.Puzzle(net);
+    }
+
+    /**
+     * Replay the game headless, straight onto a board: each move turns its tile at once, and
+     * the connections are brought up to date after it, as the game does. There's no animation
+     * or timing, so this runs as fast as the board logic can go.
+     *
+     * @return The board as it was at the end of the game.
+     */
+    public Board play()
+    {
+        Board board = new Board(puzzle().scrambled);
+        board.updateConnections();
+        for (int i = 0; i < count; ++i)
+            apply(board, moves[i]);
+        return board;
+    }
+
+    /**
+     * Make a recorded move on a board, and bring its connections up to date.
+     *
+     * @param board The board; it must have the recorded grid size.
+     * @param move  The move, packed by MoveLog.entry().
+     */
+    public static void apply(Board board, int move)
+    {
+        int tile = MoveLog.tile(move);
+        int x = tile % board.getGridWidth();
+        int y = tile / board.getGridWidth();
+        if (MoveLog.isLock(move))
+            board.setLocked(x, y, !board.isLocked(x, y));
+        if (MoveLog.quarters(move) != 0)
+        {
+            board.rotate(x, y, MoveLog.angle(MoveLog.quarters(move)));
+            board.updateConnections();
+        }
+    }
+
+    // ******************************************************************** //
+    // State Save/Restore.
+    // ******************************************************************** //
+
+    /**
+     * Save the record in a compact form: a small header -- format version, skill level, grid
+     * size, playing area and seed -- followed by each move as two variable-length numbers, the
+     * time since the previous move and the packed move.
+     *
+     * @return The saved record.
+     */
+    public byte[] save()
+    {
+        byte[] buf = new byte[SAVE_HEADER + count * 2 * MAX_VARINT];
+        buf[0] = SAVE_MAGIC;
+        buf[1] = SAVE_VERSION;
+        buf[2] = (byte) skill.ordinal();
+        putShort(buf, 4, gridWidth);
+        putShort(buf, 6, gridHeight);
+        putShort(buf, 8, boardWidth);
+        putShort(buf, 10, boardHeight);
+        for (int i = 0; i < 8; ++i)
+            buf[12 + i] = (byte) (seed >>> (56 - i * 8));
+
+        int p = SAVE_HEADER;
+        long last = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            p = putVarint(buf, p, times[i] - last);
+            p = putVarint(buf, p, moves[i] & 0xffffffffL);
+            last = times[i];
+        }
+        return Arrays.copyOf(buf, p);
+    }
+
+    /**
+     * Read back a saved record.
+     *
+     * @param data The saved record, as written by save(); may be null.
+     * @return The record; null if the data isn't a valid record.
+     */
+    public static GameRecord restore(byte[] data)
+    {
+        if (data == null || data.length < SAVE_HEADER || data[0] != SAVE_MAGIC
+                || data[1] != SAVE_VERSION || data[2] < 0 || data[2] >= Skill.values().length)
+            return null;
+        int gw = getShort(data, 4);
+        int gh = getShort(data, 6);
+        int bw = getShort(data, 8);
+        int bh = getShort(data, 10);
+        if (bw > gw || bh > gh)
+            return null;
+        long seed = 0;
+        for (int i = 0; i < 8; ++i)
+            seed = seed << 8 | data[12 + i] & 0xff;
+
+        GameRecord rec = new GameRecord(Skill.values()[data[2]], gw, gh, bw, bh, seed,
+                (data.length - SAVE_HEADER) / 2);
+        int[] pos = { SAVE_HEADER };
+        long time = 0;
+        while (pos[0] < data.length)
+        {
+            long dt = getVarint(data, pos);
+            long move = getVarint(data, pos);
+            if (dt < 0 || move < 0 || move > 0xffffffffL
+                    || MoveLog.tile((int) move) >= gw * gh)
+                return null;
+            time += dt;
+            rec.add(time, (int) move);
+        }
+        return rec;
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Write a 16-bit number, high byte first.
+     *
+     * @param buf The buffer.
+     * @param off Offset to write at.
+     * @param v   The number.
+     */
+    private static void putShort(byte[] buf, int off, int v)
+    {
+        buf[off] = (byte) (v >> 8);
+        buf[off + 1] = (byte) v;
+    }
+
+    /**
+     * Read a 16-bit number written by putShort().
+     *
+     * @param buf The buffer.
+     * @param off Offset to read at.
+     * @return The number.
+     */
+    private static int getShort(byte[] buf, int off)
+    {
+        return (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+    }
+
+    /**
+     * Write a non-negative number in 7-bit groups, low first, with the top bit of each byte set
+     * if more follow.
+     *
+     * @param buf The buffer.
+     * @param off Offset to write at.
+     * @param v   The number; must not be negative.
+     * @return The offset after the number.
+     */
+    private static int putVarint(byte[] buf, int off, long v)
+    {
+        while (v >= 0x80)
+        {
+            buf[off++] = (byte) (v | 0x80);
+            v >>>= 7;
+        }
+        buf[off++] = (byte) v;
+        return off;
+    }
+
+    /**
+     * Read a number written by putVarint().
+     *
+     * @param buf The buffer.
+     * @param pos The offset to read at, in pos[0]; moved on past the number.
+     * @return The number; -1 if it's truncated or too long.
+     */
+    private static long getVarint(byte[] buf, int[] pos)
+    {
+        long v = 0;
+        for (int shift = 0; shift < MAX_VARINT * 7; shift += 7)
+        {
+            if (pos[0] >= buf.length)
+                return -1;
+            int b = buf[pos[0]++];
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        return -1;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Saved record format: marker, version, and header size
+    private static final byte SAVE_MAGIC = 'R';
+    private static final byte SAVE_VERSION = 1;
+    private static final int SAVE_HEADER = 20;
+
+    // Most bytes a saved number can take
+    private static final int MAX_VARINT = 9;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The game: skill level, grid size, playing area, and the seed of its network
+    private final Skill skill;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int boardWidth;
+    private final int boardHeight;
+    private final long seed;
+
+    // The moves, packed as by MoveLog.entry(), and their times in ms; the first count are in use
+    private int[] moves;
+    private long[] times;
+    private int count = 0;
+}
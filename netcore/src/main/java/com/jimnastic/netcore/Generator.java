@@ -0,0 +1,273 @@
+package com.jimnastic.netcore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A service which generates networks on a ForkJoinPool.
+ * <p>
+ * Board.generate() calls createNet() up to MAX_TRIES times, one after the other, until a network
+ * uses enough of the board. Here each candidate is a single createNet(), and we keep one running
+ * per worker, starting another as each falls short, until one is good enough; so the wait is
+ * usually about one createNet() rather than several, and once a candidate wins, no more than one
+ * per worker is left to finish. There is also a batch call, which builds many boards at once for
+ * precomputing puzzles.
+ * <p>
+ * Each candidate gets its own Board and its own seed, drawn up front from the caller's Random, so
+ * nothing is shared between the workers. Which candidate wins a race depends on timing, so
+ * generate() isn't repeatable for a given Random; but every board carries the seed it was
+ * generated from, so it can be generated again from that. generateBatch() is repeatable for a
+ * given seed.
+ */
+public final class Generator
+{
+    // ******************************************************************** //
+    // Constructors.
+    // ******************************************************************** //
+
+    /**
+     * Create a generator which runs on the common ForkJoinPool.
+     */
+    public Generator()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a generator which runs on the given pool.
+     *
+     * @param pool The pool to run the generation tasks on.
+     */
+    public Generator(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Generate a network for a new game.
+     *
+     * @param template A board which has been reset() for the game; this gives the grid size,
+     *                 the playing area and the skill level. It isn't modified.
+     * @param rng      Random number generator used to seed the candidates.
+     * @return A new board holding the network, in its solved state. If no candidate used enough
+     * of the board, this is the network generate() builds from the seed of the one which used the
+     * most. null if we were interrupted first.
+     */
+    public Board generate(Board template, Random rng)
+    {
+        final int tries = Board.MAX_TRIES;
+        final int width = Math.max(1, Math.min(tries, pool.getParallelism()));
+        final AtomicBoolean done = new AtomicBoolean(false);
+        long[] seeds = new long[tries];
+        for (int i = 0; i < tries; ++i)
+            seeds[i] = rng.nextLong();
+
+        // Start one candidate per worker; each one which falls short makes way for the next.
+        ExecutorCompletionService<Board> racers = new ExecutorCompletionService<>(pool);
+        List<Future<Board>> futures = new ArrayList<>(tries);
+        for (int i = 0; i < width; ++i)
+            futures.add(race(racers, template, seeds[i], done));
+
+        int minCells = template.minActiveCells();
+        long bestSeed = 0;
+        int bestCells = -1;
+        try
+        {
+            for (int i = 0; i < tries; ++i)
+            {
+                Future<Board> f = racers.take();
+                Board board = f.get();
+                int cells = board == null ? -1 : board.activeCells();
+                if (cells >= minCells)
+                    return board;
+                if (cells > bestCells)
+                {
+                    bestSeed = seeds[futures.indexOf(f)];
+                    bestCells = cells;
+                }
+                if (futures.size() < tries)
+                    futures.add(race(racers, template, seeds[futures.size()], done));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("Generator: candidate failed", e.getCause());
+        }
+        finally
+        {
+            // Stop the candidates which haven't started. Those which have can't be stopped part
+            // way, but each is only one createNet(), and there are no more than the pool has
+            // workers.
+            done.set(true);
+            for (Future<Board> f : futures)
+                f.cancel(false);
+        }
+
+        // Nothing was good enough. A candidate which falls short has no seed, so build the best
+        // one again as generate() does, carrying on from it until it finds one which will do.
+        if (bestCells < 0)
+            return null;
+        Board board = blank(template);
+        board.generate(template.getSkill(), bestSeed);
+        return board;
+    }
+
+    /**
+     * Generate a batch of networks, e.g. to build a pack of puzzles ahead of time. Each is made
+     * as by Board.generate(), from its own seed; so a batch is repeatable for a given seed, and
+     * the boards don't depend on how the work was split up.
+     *
+     * @param template A board which has been reset() for the game; this gives the grid size,
+     *                 the playing area and the skill level. It isn't modified.
+     * @param count    Number of boards to generate.
+     * @param seed     Seed for the batch.
+     * @return The new boards, in their solved states. Each uses enough of the board, unless the
+     * playing area is such that generate() can't manage it.
+     */
+    public List<Board> generateBatch(Board template, int count, long seed)
+    {
+        Board[] boards = new Board[count];
+        if (count > 0)
+            pool.invoke(new BatchTask(template, seed, boards, 0, count));
+        return Arrays.asList(boards);
+    }
+
+    // ******************************************************************** //
+    // Generation.
+    // ******************************************************************** //
+
+    /**
+     * Submit a candidate to the race. It builds nothing if the race is over, or its worker has
+     * been interrupted, by the time it starts.
+     *
+     * @param racers   Where to submit it.
+     * @param template The board giving the layout and skill.
+     * @param seed     Seed for the candidate.
+     * @param done     Set when the race is over.
+     * @return The candidate's future; its result is null if it built nothing.
+     */
+    private static Future<Board> race(ExecutorCompletionService<Board> racers, Board template,
+                                      long seed, AtomicBoolean done)
+    {
+        return racers.submit(() -> done.get() || Thread.currentThread().isInterrupted()
+                ? null : candidate(template, seed));
+    }
+
+    /**
+     * Build one candidate network: a single createNet(), as the first try which generate()
+     * makes for the candidate's seed. If it uses enough of the board, generate() would stop
+     * there, so the board keeps the seed, which regenerates it exactly.
+     *
+     * @param template The board giving the layout and skill.
+     * @param seed     Seed for the candidate.
+     * @return A new board holding the network.
+     */
+    private static Board candidate(Board template, long seed)
+    {
+        Board board = blank(template);
+        board.createNet(template.getSkill(), seed);
+        return board;
+    }
+
+    /**
+     * Create a fresh board with the same grid, playing area and skill as a template.
+     *
+     * @param template The board giving the layout and skill.
+     * @return A new, empty board.
+     */
+    private static Board blank(Board template)
+    {
+        Board board = new Board(template.getGridWidth(), template.getGridHeight());
+        board.reset(template.getSkill(), template.getBoardWidth(), template.getBoardHeight());
+        return board;
+    }
+
+    /**
+     * Work out the seed for one board in a batch, so that neighbouring indices get unrelated
+     * seeds.
+     *
+     * @param seed  Seed for the batch.
+     * @param index Index of the board in the batch.
+     * @return The seed for the board.
+     */
+    private static long boardSeed(long seed, int index)
+    {
+        return XoshiroRandom.mix(seed + (index + 1) * GOLDEN);
+    }
+
+    /**
+     * A task which fills a range of a batch, splitting it in half until there is one board to
+     * build.
+     */
+    private static final class BatchTask extends RecursiveAction
+    {
+        BatchTask(Board template, long seed, Board[] out, int lo, int hi)
+        {
+            this.template = template;
+            this.seed = seed;
+            this.out = out;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new BatchTask(template, seed, out, lo, mid),
+                          new BatchTask(template, seed, out, mid, hi));
+                return;
+            }
+
+            // generate() gives up after MAX_TRIES attempts; keep going a while longer, with
+            // new seeds, to make sure every board in the pack is up to standard.
+            long s = boardSeed(seed, lo);
+            Board board = blank(template);
+            int minCells = board.minActiveCells();
+            for (int round = 0; round < Board.MAX_TRIES; ++round, s = XoshiroRandom.mix(s))
+                if (board.generate(template.getSkill(), s) >= minCells)
+                    break;
+            out[lo] = board;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board template;   // The board giving the layout and skill
+        private final long seed;        // Seed for the batch
+        private final Board[] out;      // Where to put the boards
+        private final int lo;           // First index in our range
+        private final int hi;           // Index after the last in our range
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Spacing of the batch seeds: 2^64 divided by the golden ratio
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final ForkJoinPool pool;    // The pool we run on
+}
@@ -0,0 +1,212 @@
+package com.jimnastic.netcore;
+
+/**
+ * Works out hints for a player who is stuck: the tile most worth turning next, and which way it
+ * should face.
+ * <p>
+ * The solver's constraints depend only on the tiles' shapes, not on which way they face; so
+ * turning tiles never changes what propagation tells us, nor the solution. We therefore run the
+ * solver once per game, when the engine is created -- settling the constraints, then searching
+ * for a solution -- and keep what it found for each tile. After that a hint is one scan of the
+ * board, comparing each tile with what we know about it; as the player turns tiles, the scan
+ * simply sees the board as it now is. A hint allocates nothing.
+ * <p>
+ * The hint is the most constrained tile which is out of place. A tile facing a way the
+ * constraints rule out is certainly wrong, and comes first; a tile which differs from the
+ * solution we found, but might be right in another, comes after. Among those, the tile with the
+ * fewest options left is the one the player can be surest of.
+ */
+public final class HintEngine
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a hint engine for a game. The board's tiles may face any way; only their shapes
+     * matter.
+     *
+     * @param board The board the game is played on. It isn't modified.
+     */
+    public HintEngine(Board board)
+    {
+        int tiles = board.getGridWidth() * board.getGridHeight();
+        options = new char[tiles];
+        target = new byte[tiles];
+
+        // Settle the constraints, and note what they leave each tile.
+        Solver solver = new Solver(board);
+        solvable = solver.settle();
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+                options[board.index(x, y)] = (char) solver.getOptions(x, y);
+
+        // Then find a solution, for the tiles the constraints alone don't settle.
+        solved = solvable && solver.solve();
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                int tile = board.index(x, y);
+                int opts = solved ? solver.getOptions(x, y) : options[tile];
+                target[tile] = (byte) (Integer.bitCount(opts) == 1
+                        ? Integer.numberOfTrailingZeros(opts) : -1);
+            }
+        }
+    }
+
+    // ******************************************************************** //
+    // Hints.
+    // ******************************************************************** //
+
+    /**
+     * Work out a hint for the board as it is now.
+     *
+     * @param board The board; the one this engine was created for, with its tiles turned any
+     *              way. Tiles which are part way through a turn are left alone.
+     * @return The hint, packed with the tile's index and the CellDirection ordinal it should
+     * have; read it with tile() and dirs(). NONE if there's nothing to suggest: every tile is
+     * where we'd put it, or we couldn't work out where that is.
+     */
+    public int hint(Board board)
+    {
+        if (!solvable)
+            return NONE;
+
+        int best = NONE;
+        int bestRank = Integer.MAX_VALUE;
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                int tile = board.index(x, y);
+                int want = target[tile];
+                int opts = options[tile];
+                if (want < 0 || board.isRotating(x, y))
+                    continue;
+                int dirs = board.dirs(x, y).ordinal();
+                if (dirs == want)
+                    continue;
+
+                // Certainly wrong before possibly wrong; then the fewest options.
+                int rank = Integer.bitCount(opts) + ((opts & 1 << dirs) != 0 ? 16 : 0);
+                if (rank < bestRank)
+                {
+                    best = tile << 4 | want;
+                    bestRank = rank;
+                    if (rank == 1)
+                        return best;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Determine whether the solver found a solution, so that every tile can be hinted; if not,
+     * hints only come from tiles which the constraints alone settle.
+     *
+     * @return true if a solution was found.
+     */
+    public boolean isSolved()
+    {
+        return solved;
+    }
+
+    /**
+     * Get the solution the solver found, laid out on a copy of the board; e.g. for the
+     * autosolver, so that it needn't solve the network again.
+     *
+     * @param board The board; the one this engine was created for, with its tiles turned any
+     *              way. It isn't modified.
+     * @return A new board, with every tile turned to the way it faces in the solution, and none
+     * part way through a turn. null if the solver didn't find a solution.
+     */
+    public Board getSolution(Board board)
+    {
+        if (!solved)
+            return null;
+
+        Board solution = new Board(board);
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                solution.setRotating(x, y, false);
+                CellDirection d = solution.dirs(x, y);
+                int want = target[board.index(x, y)];
+                for (int r = 90; r < 360 && d.ordinal() != want; r += 90)
+                {
+                    if (d.rotated(r).ordinal() == want)
+                    {
+                        solution.rotate(x, y, r);
+                        break;
+                    }
+                }
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * Get the tile of a hint.
+     *
+     * @param hint A hint from hint().
+     * @return The index of the tile to turn.
+     */
+    public static int tile(int hint)
+    {
+        return hint >>> 4;
+    }
+
+    /**
+     * Get the connections a hinted tile should have.
+     *
+     * @param hint A hint from hint().
+     * @return The connections the tile should have when turned.
+     */
+    public static CellDirection dirs(int hint)
+    {
+        return CellDirection.dirs[hint & 0x0f];
+    }
+
+    /**
+     * Get how far a hinted tile should be turned: the fewest quarter turns clockwise which take
+     * it from the way it faces now to the way it should.
+     *
+     * @param board The board the hint was worked out for.
+     * @param hint  A hint from hint().
+     * @return The quarter turns, 1 to 3; 0 if the tile already faces the way it should, or
+     * can't be turned to.
+     */
+    public static int quarters(Board board, int hint)
+    {
+        int tile = tile(hint);
+        CellDirection d = board.dirs(tile % board.getGridWidth(), tile / board.getGridWidth());
+        CellDirection want = dirs(hint);
+        for (int q = 0; q < 4; ++q)
+            if (d.rotated(q * 90) == want)
+                return q;
+        return 0;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Returned by hint() when there's nothing to suggest
+    public static final int NONE = -1;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // Whether the constraints can be met, and whether the solver found a solution
+    private final boolean solvable;
+    private final boolean solved;
+
+    // Per tile: the options the constraints leave it, as a mask of CellDirection ordinals; and
+    // the ordinal it has in the solution, or -1 if unknown
+    private final char[] options;
+    private final byte[] target;
+}
@@ -0,0 +1,90 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints. The board uses these for its work lists, which hold tile indices; they
+ * are cleared and re-used rather than re-allocated, so once they have grown to size the board's
+ * hot paths don't allocate.
+ */
+public final class IntList
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty list.
+     *
+     * @param capacity Initial capacity.
+     */
+    public IntList(int capacity)
+    {
+        data = new int[Math.max(capacity, 4)];
+        count = 0;
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of values in the list.
+     *
+     * @return The list size.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Determine whether the list is empty.
+     *
+     * @return true if there are no values in the list.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    /**
+     * Get a value from the list.
+     *
+     * @param i Index of the value to get.
+     * @return The value at index i.
+     */
+    public int get(int i)
+    {
+        if (i >= count)
+            throw new IndexOutOfBoundsException("IntList.get(" + i + ") with size " + count);
+        return data[i];
+    }
+
+    /**
+     * Add a value to the end of the list.
+     *
+     * @param v The value to add.
+     */
+    public void add(int v)
+    {
+        if (count == data.length)
+            data = Arrays.copyOf(data, count * 2);
+        data[count++] = v;
+    }
+
+    /**
+     * Remove all the values from the list. The storage is kept for re-use.
+     */
+    public void clear()
+    {
+        count = 0;
+    }
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private int[] data;     // The values; only the first count are in use
+    private int count;      // Number of values in the list
+}
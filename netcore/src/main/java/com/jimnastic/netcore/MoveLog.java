@@ -0,0 +1,275 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+
+/**
+ * The history of the player's moves in a game, for undo and redo.
+ * <p>
+ * Each move is one int, packed by entry(): the tile, the quarter turns it was rotated by, and
+ * whether its lock was toggled. The log is a growable array with a cursor; the moves before the
+ * cursor have been made, and the ones after it have been undone and can be redone. So undo and
+ * redo just move the cursor, and hand back the move to apply; making a new move drops the ones
+ * which were undone. The log is append-only: a move, once logged, is never changed or merged
+ * with another, so what's undone is always what was logged. A caller which wants a burst of taps
+ * undone in one go adds them up before logging them.
+ * <p>
+ * The log doesn't touch the board; the caller applies the moves, so that they animate like any
+ * other, and the board's connections are repaired incrementally around the one tile.
+ */
+public final class MoveLog
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty log.
+     *
+     * @param capacity Initial capacity, in moves.
+     */
+    public MoveLog(int capacity)
+    {
+        moves = new int[Math.max(capacity, 4)];
+    }
+
+    // ******************************************************************** //
+    // Move Packing.
+    // ******************************************************************** //
+
+    /**
+     * Pack a move into an int.
+     *
+     * @param tile     The index of the tile moved.
+     * @param quarters The quarter turns it was rotated by, clockwise: 0 to 3.
+     * @param lock     true if its lock was toggled.
+     * @return The packed move.
+     */
+    public static int entry(int tile, int quarters, boolean lock)
+    {
+        return tile << 3 | (quarters & 3) << 1 | (lock ? 1 : 0);
+    }
+
+    /**
+     * Get the tile of a packed move.
+     *
+     * @param move A move packed by entry().
+     * @return The index of the tile moved.
+     */
+    public static int tile(int move)
+    {
+        return move >>> 3;
+    }
+
+    /**
+     * Get the rotation of a packed move.
+     *
+     * @param move A move packed by entry().
+     * @return The quarter turns the tile was rotated by, clockwise: 0 to 3.
+     */
+    public static int quarters(int move)
+    {
+        return move >>> 1 & 3;
+    }
+
+    /**
+     * Determine whether a packed move toggled the tile's lock.
+     *
+     * @param move A move packed by entry().
+     * @return true if the lock was toggled.
+     */
+    public static boolean isLock(int move)
+    {
+        return (move & 1) != 0;
+    }
+
+    /**
+     * Get the angle to rotate a tile by to turn it a number of quarter turns clockwise, taking
+     * the short way round; so three quarters clockwise is one anti-clockwise.
+     *
+     * @param quarters The quarter turns, clockwise: 0 to 3.
+     * @return The angle in degrees; clockwise positive.
+     */
+    public static int angle(int quarters)
+    {
+        return quarters == 3 ? -90 : quarters * 90;
+    }
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    /**
+     * Record a rotation. A whole number of turns isn't a move, so it isn't recorded.
+     *
+     * @param tile     The index of the tile rotated.
+     * @param quarters The quarter turns it was rotated by, clockwise.
+     */
+    public void rotate(int tile, int quarters)
+    {
+        if ((quarters & 3) != 0)
+            append(entry(tile, quarters, false));
+    }
+
+    /**
+     * Record a lock toggle.
+     *
+     * @param tile The index of the tile whose lock was toggled.
+     */
+    public void toggleLock(int tile)
+    {
+        append(entry(tile, 0, true));
+    }
+
+    /**
+     * Forget all the moves. The storage is kept for re-use.
+     */
+    public void clear()
+    {
+        cursor = count = 0;
+    }
+
+    // ******************************************************************** //
+    // Undo and Redo.
+    // ******************************************************************** //
+
+    /**
+     * Determine whether there's a move to undo.
+     *
+     * @return true if undo() can be called.
+     */
+    public boolean canUndo()
+    {
+        return cursor > 0;
+    }
+
+    /**
+     * Determine whether there's an undone move to redo.
+     *
+     * @return true if redo() can be called.
+     */
+    public boolean canRedo()
+    {
+        return cursor < count;
+    }
+
+    /**
+     * Step back over the last move made. The caller must reverse it: rotate the tile back by
+     * angle((4 - quarters(move)) & 3), and toggle its lock back if isLock(move).
+     *
+     * @return The move to reverse.
+     */
+    public int undo()
+    {
+        if (cursor == 0)
+            throw new IllegalStateException("MoveLog.undo() with nothing to undo");
+        return moves[--cursor];
+    }
+
+    /**
+     * Step forward over the last move undone. The caller must make it again.
+     *
+     * @return The move to make.
+     */
+    public int redo()
+    {
+        if (cursor == count)
+            throw new IllegalStateException("MoveLog.redo() with nothing to redo");
+        return moves[cursor++];
+    }
+
+    // ******************************************************************** //
+    // State Save/Restore.
+    // ******************************************************************** //
+
+    /**
+     * Save the log. Tiles are saved as positions in the playing area, so that the log can be
+     * restored onto the board after the device has been rotated, as the board itself can.
+     * <p>
+     * The format is a header -- format version, grid size, playing area and cursor -- followed
+     * by one int for each move.
+     *
+     * @param board The board the moves were made on.
+     * @return The saved state.
+     */
+    public int[] save(Board board)
+    {
+        int[] data = new int[SAVE_HEADER + count];
+        data[0] = SAVE_VERSION;
+        data[1] = board.getGridWidth();
+        data[2] = board.getGridHeight();
+        data[3] = board.getBoardWidth();
+        data[4] = board.getBoardHeight();
+        data[5] = cursor;
+        for (int i = 0; i < count; ++i)
+        {
+            int m = moves[i];
+            data[SAVE_HEADER + i] = entry(board.areaPosition(tile(m)), quarters(m), isLock(m));
+        }
+        return data;
+    }
+
+    /**
+     * Restore the log, onto a board which has been restored from the same game. If the saved log
+     * doesn't fit the board, the log is left empty.
+     *
+     * @param data  The saved state, as written by save(); may be null.
+     * @param board The restored board.
+     * @return true if the log was restored OK; false if it was missing or incompatible.
+     */
+    public boolean restore(int[] data, Board board)
+    {
+        clear();
+        if (data == null || data.length < SAVE_HEADER || data[0] != SAVE_VERSION)
+            return false;
+        int n = data.length - SAVE_HEADER;
+        if (data[5] < 0 || data[5] > n)
+            return false;
+        if (moves.length < n)
+            moves = Arrays.copyOf(moves, n);
+        for (int i = 0; i < n; ++i)
+        {
+            int m = data[SAVE_HEADER + i];
+            int tile = board.savedAreaTile(tile(m), data[1], data[2], data[3], data[4]);
+            if (tile < 0)
+                return false;
+            moves[i] = entry(tile, quarters(m), isLock(m));
+        }
+        count = n;
+        cursor = data[5];
+        return true;
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Add a move at the cursor, dropping the moves which were undone.
+     *
+     * @param move The packed move.
+     */
+    private void append(int move)
+    {
+        count = cursor;
+        if (count == moves.length)
+            moves = Arrays.copyOf(moves, count * 2);
+        moves[count++] = move;
+        cursor = count;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // Saved state format version, and the size of its header
+    private static final int SAVE_VERSION = 1;
+    private static final int SAVE_HEADER = 6;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private int[] moves;        // The moves; only the first count are in use
+    private int count = 0;      // Number of moves in the log, made or undone
+    private int cursor = 0;     // Number of moves made; the rest have been undone
+}
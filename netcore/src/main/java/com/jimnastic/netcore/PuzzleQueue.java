@@ -0,0 +1,312 @@
+package com.jimnastic.netcore;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A queue of puzzles generated ahead of time on a background thread, so that starting a new game
+ * doesn't have to wait for one to be built.
+ * <p>
+ * Puzzles are kept per layout -- skill level, grid size and playing area -- with up to depth
+ * ready for each. take() hands over a ready puzzle if there is one, and prefetch() tops the queue
+ * for a layout back up. The layouts are part of the key, so a puzzle is never handed out for the
+ * wrong board size; but when the board size settings change, invalidate() should be called to
+ * drop the puzzles which can no longer be used.
+ * <p>
+ * The worker thread exits when it has been idle for a while, so a queue which is no longer used
+ * needs no shutting down.
+ */
+public final class PuzzleQueue
+{
+    // ******************************************************************** //
+    // Public Types.
+    // ******************************************************************** //
+
+    /**
+     * A puzzle: a network in its solved state, and the same network scrambled; and the hint
+     * engine for it, as that solves the network, which takes a few ms we'd rather spend here
+     * than when the player asks for a hint.
+     */
+    public static final class Puzzle
+    {
+        /**
+         * Create a puzzle from a network generated from a seed. The scramble is drawn from the
+         * seed too, so the whole puzzle can be built again from the seed, skill level and board
+         * size.
+         *
+         * @param solution The network, in its solved state; it must have a seed. This becomes
+         *                 part of the puzzle.
+         */
+        public Puzzle(Board solution)
+        {
+            this(solution, scrambler(solution));
+        }
+
+        /**
+         * Create a puzzle from a network, by scrambling a copy of it.
+         *
+         * @param solution The network, in its solved state. This becomes part of the puzzle.
+         * @param rng      Random number generator to scramble with.
+         */
+        public Puzzle(Board solution, Random rng)
+        {
+            this.solution = solution;
+            scrambled = new Board(solution);
+            scrambled.scramble(solution.getSkill(), rng);
+            scrambled.updateConnections();
+            hints = new HintEngine(scrambled);
+        }
+
+        /**
+         * Get the turn which takes a tile from its solved state to its scrambled state; e.g. for
+         * a renderer which animates the scramble.
+         *
+         * @param x Tile X position.
+         * @param y Tile Y position.
+         * @return The angle in degrees to turn by: -180, -90, 0 or 90, as used by scramble().
+         */
+        public int turn(int x, int y)
+        {
+            CellDirection from = solution.dirs(x, y);
+            CellDirection to = scrambled.dirs(x, y);
+            for (int a = 0; a > -270; a -= 90)
+                if (from.rotated(a) == to)
+                    return a;
+            return 90;
+        }
+
+        /**
+         * Get the random number generator which scrambles a seeded network.
+         *
+         * @param solution The network, in its solved state.
+         * @return A generator seeded from the network's seed.
+         */
+        private static Random scrambler(Board solution)
+        {
+            if (!solution.hasSeed())
+                throw new IllegalArgumentException("PuzzleQueue.Puzzle: network has no seed");
+            return new XoshiroRandom(XoshiroRandom.mix(solution.getSeed()));
+        }
+
+        public final Board solution;    // The network, solved
+        public final Board scrambled;   // The network, scrambled and blinded for its skill
+        public final HintEngine hints;  // Works out hints for the puzzle
+    }
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a puzzle queue.
+     *
+     * @param depth Number of puzzles to keep ready for each layout.
+     * @param rng   Random number generator for the puzzles' seeds. It is only used on the
+     *              worker thread.
+     */
+    public PuzzleQueue(int depth, Random rng)
+    {
+        this.depth = depth;
+        this.rng = rng;
+        worker = new ThreadPoolExecutor(0, 1, IDLE_SECS, TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "PuzzleQueue");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Take a ready puzzle for a layout, if there is one, and start building its replacement.
+     *
+     * @param template A board which has been reset() for the game; this gives the layout.
+     * @return A puzzle for the layout, which now belongs to the caller; null if there is none
+     * ready.
+     */
+    public Puzzle take(Board template)
+    {
+        Key key = new Key(template);
+        Puzzle puzzle;
+        synchronized (this)
+        {
+            ArrayDeque<Puzzle> q = ready.get(key);
+            puzzle = q == null ? null : q.poll();
+        }
+        prefetch(key);
+        return puzzle;
+    }
+
+    /**
+     * Make sure that puzzles are ready, or being built, for a layout.
+     *
+     * @param template A board which has been reset() for the game; this gives the layout.
+     */
+    public void prefetch(Board template)
+    {
+        prefetch(new Key(template));
+    }
+
+    /**
+     * Get the number of puzzles ready for a layout.
+     *
+     * @param template A board which has been reset() for the game; this gives the layout.
+     * @return The number of puzzles ready.
+     */
+    public synchronized int available(Board template)
+    {
+        ArrayDeque<Puzzle> q = ready.get(new Key(template));
+        return q == null ? 0 : q.size();
+    }
+
+    /**
+     * Drop all the ready puzzles, and any being built. This should be called when the board size
+     * settings change.
+     */
+    public synchronized void invalidate()
+    {
+        ++generation;
+        ready.clear();
+        pending.clear();
+    }
+
+    // ******************************************************************** //
+    // Building.
+    // ******************************************************************** //
+
+    /**
+     * Queue enough builds to bring a layout up to depth puzzles.
+     *
+     * @param key The layout.
+     */
+    private synchronized void prefetch(Key key)
+    {
+        ArrayDeque<Puzzle> q = ready.get(key);
+        Integer p = pending.get(key);
+        int have = (q == null ? 0 : q.size()) + (p == null ? 0 : p);
+        if (have >= depth)
+            return;
+        pending.put(key, (p == null ? 0 : p) + depth - have);
+
+        final int gen = generation;
+        for (int i = have; i < depth; ++i)
+            worker.execute(() -> build(key, gen));
+    }
+
+    /**
+     * Build a puzzle, on the worker thread, and add it to the ready queue for its layout.
+     * <p>
+     * However the build ends -- done, dropped, or failed -- it no longer counts as pending, so
+     * that a later prefetch() queues a replacement; otherwise one failure would stop prefetching
+     * for the layout for good. A build from before an invalidate() isn't counted any more, as
+     * the counts were cleared then.
+     *
+     * @param key The layout.
+     * @param gen The generation the build was queued in; if the queue has been invalidated since,
+     *            we don't bother.
+     */
+    private void build(Key key, int gen)
+    {
+        Puzzle puzzle = null;
+        try
+        {
+            synchronized (this)
+            {
+                if (gen != generation)
+                    return;
+            }
+
+            Board net = new Board(key.gridWidth, key.gridHeight);
+            net.reset(key.skill, key.boardWidth, key.boardHeight);
+            net.generate(key.skill, rng.nextLong());
+            puzzle = new Puzzle(net);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (gen == generation)
+                {
+                    pending.put(key, pending.get(key) - 1);
+                    if (puzzle != null)
+                    {
+                        ArrayDeque<Puzzle> q = ready.get(key);
+                        if (q == null)
+                            ready.put(key, q = new ArrayDeque<>(depth));
+                        q.add(puzzle);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The layout of a board: everything which has to match for a puzzle to be used.
+     */
+    private static final class Key
+    {
+        Key(Board b)
+        {
+            skill = b.getSkill();
+            gridWidth = b.getGridWidth();
+            gridHeight = b.getGridHeight();
+            boardWidth = b.getBoardWidth();
+            boardHeight = b.getBoardHeight();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return skill == k.skill && gridWidth == k.gridWidth && gridHeight == k.gridHeight
+                    && boardWidth == k.boardWidth && boardHeight == k.boardHeight;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int h = skill.hashCode();
+            h = h * 31 + gridWidth;
+            h = h * 31 + gridHeight;
+            h = h * 31 + boardWidth;
+            return h * 31 + boardHeight;
+        }
+
+        final Skill skill;
+        final int gridWidth;
+        final int gridHeight;
+        final int boardWidth;
+        final int boardHeight;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final long IDLE_SECS = 10;   // How long the worker waits for work before exiting
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final int depth;                    // Number of puzzles to keep ready per layout
+    private final Random rng;                   // Source of puzzle seeds, for the worker
+    private final ThreadPoolExecutor worker;    // The thread we build puzzles on
+
+    // Ready puzzles, and the number being built, for each layout
+    private final Map<Key, ArrayDeque<Puzzle>> ready = new HashMap<>();
+    private final Map<Key, Integer> pending = new HashMap<>();
+
+    private int generation = 0;     // Incremented by invalidate(), to drop builds in flight
+}
@@ -0,0 +1,26 @@
+package com.jimnastic.netcore;
+
+/**
+ * Enumeration defining the rules for each game skill level. We also introduce blind tiles, to make
+ * an insane level
+ */
+public enum Skill
+{
+    // brch, does board wrap?, cells with over this many connections are blind
+    NOVICE(2, false, 9),
+    NORMAL(2, false, 9),
+    EXPERT(2, false, 9),
+    MASTER(3, true, 9),
+    INSANE(3, true, 3);
+
+    Skill(int branches, boolean isBoardWrapped, int bd)
+    {
+        this.branches = branches;
+        wrapped = isBoardWrapped;
+        blind = bd;
+    }
+
+    public final int branches;      // Max branches off each square; at least 2
+    public final boolean wrapped;   // If true, network wraps around the edges
+    public final int blind;         // Squares with this many or more connections are blind
+}
@@ -0,0 +1,713 @@
+package com.jimnastic.netcore;
+
+import java.util.Arrays;
+
+/**
+ * A solver which works out a solution from the tiles on a board as they stand, rather than from a
+ * stored copy of the generated layout. This means it can solve a board whose solution was lost,
+ * and it finds a solution even where the layout has several.
+ * <p>
+ * Each tile has a domain: the set of direction masks it can still take, which starts as its
+ * rotations. We narrow the domains by constraint propagation:
+ * <ul>
+ * <li>Edge consistency: a tile connects in a direction exactly when its neighbour connects back,
+ * and there are no connections off the edges of a bounded board. A wrapped board has neighbours
+ * all the way round, as the board's next() rules say.</li>
+ * <li>Forced orientations: once a tile is certain to connect (or not) in a direction, its
+ * neighbour's domain is cut down to match; a domain of one mask is a solved tile.</li>
+ * <li>Loops: the certain connections are kept in a union-find; a connection which would join two
+ * tiles already joined would close a loop, so it is ruled out.</li>
+ * </ul>
+ * When propagation stalls, we pick the tile with the fewest options left and try each in turn,
+ * backtracking on a trail of domain changes. A branch is pruned as soon as it closes a loop, or
+ * isolates some tiles -- leaves them with no possible path to the server.
+ * <p>
+ * A Solver is for one solve of one board; it takes a snapshot of the board's tiles when created.
+ */
+public final class Solver
+{
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a solver for the current state of a board.
+     *
+     * @param board The board to solve. It isn't modified.
+     */
+    public Solver(Board board)
+    {
+        this.board = board;
+        int gw = board.getGridWidth();
+        numTiles = gw * board.getGridHeight();
+
+        int sx = board.getBoardStartX(), ex = board.getBoardEndX();
+        int sy = board.getBoardStartY(), ey = board.getBoardEndY();
+        area = new int[(ex - sx) * (ey - sy)];
+        neighbours = new int[numTiles * 4];
+        domains = new char[numTiles];
+        Arrays.fill(neighbours, -1);
+
+        // Set up the tiles' domains: each tile can take any rotation of its current connections.
+        int a = 0;
+        for (int y = sy; y < ey; ++y)
+        {
+            for (int x = sx; x < ex; ++x)
+            {
+                int tile = board.index(x, y);
+                area[a++] = tile;
+                for (int c = 0; c < 4; ++c)
+                    neighbours[tile * 4 + c] = board.next(x, y, CellDirection.cardinals[c]);
+
+                CellDirection d = board.dirs(x, y);
+                int dom = 0;
+                for (int r = 0; r < 360; r += 90)
+                    dom |= 1 << d.rotated(r).ordinal();
+                domains[tile] = (char) dom;
+                if (d != CellDirection.FREE)
+                    ++netTiles;
+            }
+        }
+        root = board.index(board.getRootX(), board.getRootY());
+
+        edges = new byte[numTiles];
+        parent = new int[numTiles];
+        rank = new byte[numTiles];
+        for (int i = 0; i < numTiles; ++i)
+            parent[i] = i;
+
+        queue = new int[numTiles];
+        queued = Bits.create(numTiles);
+        seen = Bits.create(numTiles);
+        visit = new int[numTiles];
+        trailTile = new int[numTiles];
+        trailOld = new int[numTiles];
+        choiceTile = new int[area.length];
+        choiceLeft = new int[area.length];
+        choiceMark = new int[area.length];
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Limit the number of search nodes the solver will explore before giving up.
+     *
+     * @param limit Maximum number of nodes; the default is DEFAULT_NODE_LIMIT.
+     */
+    public void setNodeLimit(long limit)
+    {
+        nodeLimit = limit;
+    }
+
+    /**
+     * Solve the board.
+     *
+     * @return true if a solution was found; false if there is none, or the search hit its node
+     * limit.
+     */
+    public boolean solve()
+    {
+        long start = System.nanoTime();
+        solved = search();
+        solveTime = System.nanoTime() - start;
+        return solved;
+    }
+
+    /**
+     * Apply the constraints to every tile, without searching. This settles the tiles whose
+     * orientation is forced, and narrows down the others' options; getOptions() then says what
+     * each tile can still take. solve() can be called afterwards, and carries on from here.
+     *
+     * @return true if the board may have a solution; false if it certainly has none.
+     */
+    public boolean settle()
+    {
+        for (int tile : area)
+            enqueue(tile);
+        return propagate();
+    }
+
+    /**
+     * Get the orientations a tile can still take: after settle(), those which the constraints
+     * haven't ruled out; after a successful solve(), the one it has in the solution.
+     *
+     * @param x Tile X position.
+     * @param y Tile Y position.
+     * @return A mask with bit d set if the tile can have the connections whose CellDirection
+     * ordinal is d.
+     */
+    public int getOptions(int x, int y)
+    {
+        return domains[board.index(x, y)];
+    }
+
+    /**
+     * Get the solution found by solve().
+     *
+     * @return A copy of the board with every tile rotated into its solved position; null if the
+     * board hasn't been solved.
+     */
+    public Board getSolution()
+    {
+        if (!solved)
+            return null;
+
+        Board solution = new Board(board);
+        for (int tile : area)
+        {
+            int x = tile % board.getGridWidth();
+            int y = tile / board.getGridWidth();
+            solution.setRotating(x, y, false);
+            CellDirection d = solution.dirs(x, y);
+            int target = Integer.numberOfTrailingZeros(domains[tile]);
+            for (int r = 90; r < 360 && d.ordinal() != target; r += 90)
+            {
+                if (d.rotated(r).ordinal() == target)
+                {
+                    solution.rotate(x, y, r);
+                    break;
+                }
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * Get the number of search nodes explored by solve(): each is a trial orientation for a tile
+     * which propagation alone couldn't settle.
+     *
+     * @return The number of nodes explored.
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Get the time taken by solve().
+     *
+     * @return The time taken to solve, in nanoseconds.
+     */
+    public long getSolveTime()
+    {
+        return solveTime;
+    }
+
+    // ******************************************************************** //
+    // Search.
+    // ******************************************************************** //
+
+    /**
+     * Search for a solution. This is a depth-first search with propagation at every node; the
+     * choice stack and the trail of changes are kept in arrays, so deep searches don't recurse.
+     * <p>
+     * Checking the whole board for isolated tiles at every node would make the search quadratic
+     * in the board size, so at each node we only check around the tiles it changed, and do the
+     * full check once everything is settled.
+     *
+     * @return true if a solution was found; the domains then hold it.
+     */
+    private boolean search()
+    {
+        // Apply the initial constraints to every tile.
+        for (int tile : area)
+            enqueue(tile);
+        if (!propagate() || !allReachable())
+            return false;
+
+        int depth = 0;
+        while (true)
+        {
+            int tile = pickTile(depth > 0 ? choiceMark[depth - 1] : trailSize);
+            if (tile >= 0)
+            {
+                choiceTile[depth] = tile;
+                choiceLeft[depth] = domains[tile];
+                choiceMark[depth] = trailSize;
+                ++depth;
+            }
+            else if (allReachable())
+                return true;
+
+            // Try the options at the top of the stack, backing up when they run out.
+            while (true)
+            {
+                if (depth == 0)
+                    return false;
+                int d = depth - 1;
+                undo(choiceMark[d]);
+                int left = choiceLeft[d];
+                if (left == 0)
+                {
+                    --depth;
+                    continue;
+                }
+                int option = left & -left;
+                choiceLeft[d] = left & ~option;
+                if (++nodes > nodeLimit)
+                    return false;
+                if (restrict(choiceTile[d], option) && propagate() && noneIsolated(choiceMark[d]))
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Pick the tile to branch on: an unsettled tile with the fewest options left. We look first
+     * among the tiles changed since the given trail mark, and their neighbours, so that the
+     * search finishes one area of the board before moving on; a bad choice is then found out
+     * before other choices are stacked on top of it. Failing that, we scan the board on from
+     * the last pick, taking the first tile with only two options.
+     *
+     * @param mark Trail size before the last choice; the trail size if there was none.
+     * @return The tile to branch on; -1 if every tile is settled.
+     */
+    private int pickTile(int mark)
+    {
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = mark; i < trailSize && bestCount > 2; ++i)
+        {
+            if ((trailTile[i] & ~TILE_MASK) != DOMAIN)
+                continue;
+            int tile = trailTile[i];
+            for (int c = -1; c < 4; ++c)
+            {
+                int t = c < 0 ? tile : neighbours[tile * 4 + c];
+                int count = t < 0 ? 0 : Integer.bitCount(domains[t]);
+                if (count > 1 && count < bestCount)
+                {
+                    best = t;
+                    bestCount = count;
+                }
+            }
+        }
+        if (best >= 0)
+            return best;
+
+        for (int i = 0; i < area.length; ++i)
+        {
+            int pos = (pickFrom + i) % area.length;
+            int count = Integer.bitCount(domains[area[pos]]);
+            if (count > 1 && count < bestCount)
+            {
+                best = pos;
+                bestCount = count;
+                if (count == 2)
+                    break;
+            }
+        }
+        if (best < 0)
+            return -1;
+        pickFrom = best;
+        return area[best];
+    }
+
+    /**
+     * Check for tiles isolated by the changes since the given trail mark. From each tile whose
+     * domain changed, we flood out over the possible connections; if the flood runs out before
+     * covering the whole network, the tiles it covered are cut off from the rest. Isolated groups
+     * are small, so we give up on a flood -- and assume all is well -- once it passes
+     * LOCAL_LIMIT tiles; allReachable() catches anything missed.
+     *
+     * @param mark Trail size before the changes.
+     * @return false if some tiles are certainly isolated.
+     */
+    private boolean noneIsolated(int mark)
+    {
+        // Skip tiles covered by a flood in this call; they're in a region we've checked.
+        int first = stamp + 1;
+        for (int i = mark; i < trailSize; ++i)
+        {
+            if ((trailTile[i] & ~TILE_MASK) != DOMAIN)
+                continue;
+            int start = trailTile[i];
+            if (visit[start] >= first)
+                continue;
+
+            ++stamp;
+            int count = 0;
+            queue[count++] = start;
+            visit[start] = stamp;
+            for (int h = 0; h < count && count <= LOCAL_LIMIT; ++h)
+            {
+                int tile = queue[h];
+                int may = MAY[domains[tile]];
+                for (int c = 0; c < 4; ++c)
+                {
+                    if ((may & (1 << c)) == 0)
+                        continue;
+                    int n = neighbours[tile * 4 + c];
+                    if (n >= 0 && visit[n] != stamp)
+                    {
+                        visit[n] = stamp;
+                        queue[count++] = n;
+                    }
+                }
+            }
+            if (count <= LOCAL_LIMIT && count < netTiles)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check that no tiles are isolated: that every tile in the network can still be reached from
+     * the server over connections which are possible in the current domains.
+     *
+     * @return true if every tile can still be reached.
+     */
+    private boolean allReachable()
+    {
+        Arrays.fill(seen, 0);
+        int count = 0;
+        queue[count++] = root;
+        Bits.set(seen, root);
+        for (int h = 0; h < count; ++h)
+        {
+            int tile = queue[h];
+            int may = MAY[domains[tile]];
+            for (int c = 0; c < 4; ++c)
+            {
+                if ((may & (1 << c)) == 0)
+                    continue;
+                int n = neighbours[tile * 4 + c];
+                if (n >= 0 && !Bits.get(seen, n))
+                {
+                    Bits.set(seen, n);
+                    queue[count++] = n;
+                }
+            }
+        }
+        return count == netTiles;
+    }
+
+    // ******************************************************************** //
+    // Propagation.
+    // ******************************************************************** //
+
+    /**
+     * Propagate constraints from the queued tiles until nothing more changes.
+     *
+     * @return true if all is consistent; false if some tile has no options left, or a loop was
+     * closed.
+     */
+    private boolean propagate()
+    {
+        while (queueSize > 0)
+        {
+            int tile = queue[--queueSize];
+            Bits.clear(queued, tile);
+            if (!revise(tile))
+            {
+                while (queueSize > 0)
+                    Bits.clear(queued, queue[--queueSize]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the constraints between a tile and each of its neighbours.
+     *
+     * @param tile Index of the tile to revise.
+     * @return true if all is consistent.
+     */
+    private boolean revise(int tile)
+    {
+        for (int c = 0; c < 4; ++c)
+        {
+            int bit = 1 << c;
+            int rc = (c + 2) & 3;
+            int rbit = 1 << rc;
+            int n = neighbours[tile * 4 + c];
+            int dom = domains[tile];
+
+            // There's nothing to connect to off the edge of a bounded board.
+            if (n < 0)
+            {
+                if ((MAY[dom] & bit) != 0 && !restrict(tile, dom & WITHOUT[c]))
+                    return false;
+                continue;
+            }
+
+            // Make the neighbour agree with whatever we know about this side.
+            if ((MUST[dom] & bit) != 0)
+            {
+                if (!restrict(n, domains[n] & WITH[rc]))
+                    return false;
+            }
+            else if ((MAY[dom] & bit) == 0)
+            {
+                if (!restrict(n, domains[n] & WITHOUT[rc]))
+                    return false;
+            }
+
+            dom = domains[tile];
+            int ndom = domains[n];
+            if ((MUST[dom] & bit) != 0 && (MUST[ndom] & rbit) != 0)
+            {
+                // A certain connection; if it joins tiles which are already joined, it's a loop.
+                if ((edges[tile] & bit) == 0)
+                {
+                    setEdge(tile, bit);
+                    setEdge(n, rbit);
+                    if (!union(tile, n))
+                        return false;
+                }
+            }
+            else if ((MAY[dom] & bit) != 0 && (MAY[ndom] & rbit) != 0 && find(tile) == find(n))
+            {
+                // A possible connection which would close a loop; rule it out.
+                if (!restrict(tile, dom & WITHOUT[c]) || !restrict(n, domains[n] & WITHOUT[rc]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cut a tile's domain down to the given set, recording the change on the trail and queueing
+     * the tile to be revised.
+     *
+     * @param tile Index of the tile.
+     * @param dom  The new domain; must be a subset of the tile's current domain.
+     * @return true if the tile still has at least one option.
+     */
+    private boolean restrict(int tile, int dom)
+    {
+        int old = domains[tile];
+        if (dom == old)
+            return true;
+        if (dom == 0)
+            return false;
+        push(tile, old);
+        domains[tile] = (char) dom;
+        enqueue(tile);
+        return true;
+    }
+
+    /**
+     * Queue a tile to be revised, if it isn't already queued.
+     *
+     * @param tile Index of the tile.
+     */
+    private void enqueue(int tile)
+    {
+        if (!Bits.get(queued, tile))
+        {
+            Bits.set(queued, tile);
+            queue[queueSize++] = tile;
+        }
+    }
+
+    /**
+     * Record a certain connection from a tile.
+     *
+     * @param tile Index of the tile.
+     * @param bit  The direction of the connection.
+     */
+    private void setEdge(int tile, int bit)
+    {
+        push(EDGE | tile, edges[tile]);
+        edges[tile] |= bit;
+    }
+
+    // ******************************************************************** //
+    // Union-Find.
+    // ******************************************************************** //
+
+    /**
+     * Find the representative of the set of tiles joined to a tile by certain connections. We
+     * don't compress paths, so that unions can be undone; union by rank keeps the paths short.
+     *
+     * @param tile Index of the tile.
+     * @return The representative tile.
+     */
+    private int find(int tile)
+    {
+        while (parent[tile] != tile)
+            tile = parent[tile];
+        return tile;
+    }
+
+    /**
+     * Join the sets containing two tiles.
+     *
+     * @param a Index of one tile.
+     * @param b Index of the other tile.
+     * @return true if they were joined; false if they were already in the same set.
+     */
+    private boolean union(int a, int b)
+    {
+        a = find(a);
+        b = find(b);
+        if (a == b)
+            return false;
+        if (rank[a] < rank[b])
+        {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[b] = a;
+        if (rank[a] == rank[b])
+        {
+            ++rank[a];
+            push(UNION | b, a);
+        }
+        else
+            push(UNION | b, -1);
+        return true;
+    }
+
+    // ******************************************************************** //
+    // Trail.
+    // ******************************************************************** //
+
+    /**
+     * Record a change on the trail, so that it can be undone.
+     *
+     * @param what The tile changed, tagged with the kind of change.
+     * @param old  The value to restore.
+     */
+    private void push(int what, int old)
+    {
+        if (trailSize == trailTile.length)
+        {
+            trailTile = Arrays.copyOf(trailTile, trailSize * 2);
+            trailOld = Arrays.copyOf(trailOld, trailSize * 2);
+        }
+        trailTile[trailSize] = what;
+        trailOld[trailSize] = old;
+        ++trailSize;
+    }
+
+    /**
+     * Undo the changes on the trail back to the given mark.
+     *
+     * @param mark Trail size to go back to.
+     */
+    private void undo(int mark)
+    {
+        while (trailSize > mark)
+        {
+            --trailSize;
+            int what = trailTile[trailSize];
+            int old = trailOld[trailSize];
+            int tile = what & TILE_MASK;
+            switch (what & ~TILE_MASK)
+            {
+                case DOMAIN:
+                    domains[tile] = (char) old;
+                    break;
+                case EDGE:
+                    edges[tile] = (byte) old;
+                    break;
+                case UNION:
+                    parent[tile] = tile;
+                    if (old >= 0)
+                        --rank[old];
+                    break;
+            }
+        }
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    /**
+     * The default limit on search nodes. Generated boards need a tiny fraction of this; it only
+     * stops a pathological board from hanging the caller.
+     */
+    public static final long DEFAULT_NODE_LIMIT = 1000000;
+
+    // Number of tiles a local isolation check will cover before giving up
+    private static final int LOCAL_LIMIT = 1024;
+
+    // Kinds of change on the trail, tagged onto the tile index
+    private static final int TILE_MASK = 0x3fffffff;
+    private static final int DOMAIN = 0;
+    private static final int EDGE = 0x40000000;
+    private static final int UNION = 0x80000000;
+
+    // For each domain, the directions which some (MAY) or every (MUST) mask in it has
+    private static final byte[] MAY = new byte[1 << 16];
+    private static final byte[] MUST = new byte[1 << 16];
+
+    // For each cardinal direction, the domain of masks which have (WITH) or lack (WITHOUT) it
+    private static final int[] WITH = new int[4];
+    private static final int[] WITHOUT = new int[4];
+
+    static
+    {
+        for (int dom = 1; dom < 1 << 16; ++dom)
+        {
+            int may = 0, must = 0x0f;
+            for (int m = 0; m < 16; ++m)
+            {
+                if ((dom & (1 << m)) != 0)
+                {
+                    may |= m;
+                    must &= m;
+                }
+            }
+            MAY[dom] = (byte) may;
+            MUST[dom] = (byte) must;
+        }
+        for (int c = 0; c < 4; ++c)
+        {
+            for (int m = 0; m < 16; ++m)
+                if ((m & (1 << c)) != 0)
+                    WITH[c] |= 1 << m;
+            WITHOUT[c] = 0xffff & ~WITH[c];
+        }
+    }
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    private final Board board;          // The board we're solving
+    private final int numTiles;         // Number of tiles in the grid
+    private final int[] area;           // Indices of the tiles in the playing area
+    private final int[] neighbours;     // Each tile's neighbours, 4 per tile; -1 for none
+    private final char[] domains;      // Each tile's set of possible direction masks
+    private final int root;             // Index of the server tile
+    private int netTiles = 0;           // Number of tiles which are part of the network
+
+    // Certain connections, and the union-find over them
+    private final byte[] edges;
+    private final int[] parent;
+    private final byte[] rank;
+
+    // Propagation queue, and the flags of queued tiles; also used for the reachability search
+    private final int[] queue;
+    private final long[] queued;
+    private final long[] seen;
+    private int queueSize = 0;
+
+    // Visit stamps for the local isolation checks
+    private final int[] visit;
+    private int stamp = 0;
+
+    // The trail of changes, for backtracking
+    private int[] trailTile;
+    private int[] trailOld;
+    private int trailSize = 0;
+
+    // The choice stack: the tile branched on, its untried options, and the trail mark
+    private final int[] choiceTile;
+    private final int[] choiceLeft;
+    private final int[] choiceMark;
+
+    private int pickFrom = 0;           // Position in area to start looking for a tile to branch on
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    private long nodes = 0;             // Search nodes explored
+    private long solveTime = 0;         // Time taken to solve, in ns
+    private boolean solved = false;     // True if a solution was found
+}
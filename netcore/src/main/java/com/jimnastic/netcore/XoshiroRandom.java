@@ -0,0 +1,194 @@
+package com.jimnastic.netcore;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable random number generator: xoshiro256** by Blackman and Vigna, with its state
+ * filled from the seed by SplitMix64.
+ * <p>
+ * This extends Random, so it can be passed to anything which takes one; but it overrides all the
+ * generation methods with unsynchronized versions working straight from the 64-bit output, so
+ * there are no atomic updates and no lock contention. In exchange, an instance must only be used
+ * from one thread at a time.
+ * <p>
+ * The sequence for a given seed is fixed, so a board generated from a seed can be generated again
+ * exactly from the same seed, skill level and board size.
+ */
+public final class XoshiroRandom extends Random
+{
+    // ******************************************************************** //
+    // Constructors.
+    // ******************************************************************** //
+
+    /**
+     * Create a generator with a seed which is different every time.
+     */
+    public XoshiroRandom()
+    {
+        this(mix(System.nanoTime() ^ seedUniquifier()));
+    }
+
+    /**
+     * Create a generator with the given seed.
+     *
+     * @param seed The seed.
+     */
+    public XoshiroRandom(long seed)
+    {
+        // Random's constructor calls setSeed(), which sets up our state
+        super(seed);
+    }
+
+    // ******************************************************************** //
+    // Public Methods.
+    // ******************************************************************** //
+
+    /**
+     * Reset the generator to the start of the sequence for the given seed.
+     *
+     * @param seed The seed.
+     */
+    @Override
+    public void setSeed(long seed)
+    {
+        long z = seed;
+        s0 = mix(z += GOLDEN);
+        s1 = mix(z += GOLDEN);
+        s2 = mix(z += GOLDEN);
+        s3 = mix(z + GOLDEN);
+    }
+
+    @Override
+    public long nextLong()
+    {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    @Override
+    public int nextInt()
+    {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Return a uniformly distributed int in the range 0 (inclusive) to bound (exclusive). This
+     * uses Lemire's multiply and shift method, which needs no division in the common case.
+     *
+     * @param bound The upper bound; must be positive.
+     * @return The next value.
+     */
+    @Override
+    public int nextInt(int bound)
+    {
+        if (bound <= 0)
+            throw new IllegalArgumentException("XoshiroRandom.nextInt(): bound must be positive");
+
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xffffffffL;
+        if (low < bound)
+        {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold)
+            {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xffffffffL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    @Override
+    public boolean nextBoolean()
+    {
+        return nextLong() < 0;
+    }
+
+    @Override
+    public float nextFloat()
+    {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The SplitMix64 mixing function: scramble a 64-bit value so that nearby inputs give unrelated
+     * outputs. This is handy for deriving seeds from other seeds.
+     *
+     * @param z The value to mix.
+     * @return The mixed value.
+     */
+    public static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // ******************************************************************** //
+    // Protected Methods.
+    // ******************************************************************** //
+
+    /**
+     * Generate the next random number, with the given number of random bits. Random's other
+     * methods are built on this.
+     *
+     * @param bits Number of random bits; 1 to 32.
+     * @return The next value, in the low bits.
+     */
+    @Override
+    protected int next(int bits)
+    {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Get a different value each time we are called, so that generators created at the same time
+     * get different seeds.
+     *
+     * @return The next uniquifier.
+     */
+    private static synchronized long seedUniquifier()
+    {
+        uniquifier += GOLDEN;
+        return uniquifier;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    private static final long serialVersionUID = 1L;
+
+    // The SplitMix64 increment: 2^64 divided by the golden ratio
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private static long uniquifier = 0x5deece66dL;
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The generator state. These have no initializers, as they are set by setSeed() during
+    // Random's constructor, and an initializer would run afterwards and wipe them.
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+}
@@ -0,0 +1,205 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a board saved in the binary format comes back as it was: straight, rotated to fit
+ * a rotated screen and back, and into a reused buffer; that saved states which don't fit, or
+ * are damaged, are refused; and that a seeded game's solution can be generated again from its
+ * saved state.
+ */
+public class BoardSaveTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void roundTrip()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = played(sk, 15, 11, 11, 8, 1);
+            byte[] data = board.saveBoard();
+            assertEquals(board.savedSize(), data.length);
+
+            Board restored = TestBoards.empty(sk, 15, 11, 11, 8);
+            assertTrue(sk + " restore", restored.restoreBoard(data));
+            assertArrayEquals(sk + " saved again", data, restored.saveBoard());
+            assertEquals(board.getRootX(), restored.getRootX());
+            assertEquals(board.getRootY(), restored.getRootY());
+            assertEquals(board.getFocusX(), restored.getFocusX());
+            assertEquals(board.getFocusY(), restored.getFocusY());
+            assertTrue(restored.hasSeed());
+            assertEquals(board.getSeed(), restored.getSeed());
+            for (int y = 0; y < board.getGridHeight(); ++y)
+            {
+                for (int x = 0; x < board.getGridWidth(); ++x)
+                {
+                    String at = sk + " tile " + x + "," + y;
+                    assertEquals(at, board.dirs(x, y), restored.dirs(x, y));
+                    assertEquals(at, board.isLocked(x, y), restored.isLocked(x, y));
+                    assertEquals(at, board.isBlind(x, y), restored.isBlind(x, y));
+                }
+            }
+
+            // The connections are worked out again the same
+            restored.updateConnections();
+            for (int y = 0; y < board.getGridHeight(); ++y)
+                for (int x = 0; x < board.getGridWidth(); ++x)
+                    assertEquals(board.isConnected(x, y), restored.isConnected(x, y));
+        }
+    }
+
+    @Test
+    public void saveIntoBuffer()
+    {
+        Board board = played(Skill.EXPERT, 12, 12, 10, 10, 2);
+        byte[] buf = new byte[board.savedSize() + 16];
+        assertEquals(board.savedSize(), board.saveBoard(buf));
+        assertArrayEquals(board.saveBoard(), Arrays.copyOf(buf, board.savedSize()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void saveIntoSmallBuffer()
+    {
+        Board board = played(Skill.EXPERT, 12, 12, 10, 10, 2);
+        board.saveBoard(new byte[board.savedSize() - 1]);
+    }
+
+    @Test
+    public void rotatedRoundTrip()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = played(sk, 15, 11, 11, 8, 3);
+            Board rotated = TestBoards.empty(sk, 11, 15, 8, 11);
+            assertTrue(sk + " rotate", rotated.restoreBoard(board.saveBoard()));
+            rotated.updateConnections();
+            assertEquals(sk + " unconnected", board.unconnectedCells(), rotated.unconnectedCells());
+            assertEquals(sk + " solved", board.isSolved(), rotated.isSolved());
+
+            // Turning the screen back gives the board we started with
+            Board back = TestBoards.empty(sk, 15, 11, 11, 8);
+            assertTrue(sk + " rotate back", back.restoreBoard(rotated.saveBoard()));
+            assertArrayEquals(sk + " rotated back", board.saveBoard(), back.saveBoard());
+        }
+    }
+
+    @Test
+    public void refusesWhatDoesNotFit()
+    {
+        Board board = played(Skill.NORMAL, 15, 11, 11, 8, 4);
+        byte[] data = board.saveBoard();
+
+        assertFalse("null", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(null));
+        assertFalse("skill", TestBoards.empty(Skill.EXPERT, 15, 11, 11, 8).restoreBoard(data));
+        assertFalse("grid", TestBoards.empty(Skill.NORMAL, 13, 11, 11, 8).restoreBoard(data));
+        assertFalse("area", TestBoards.empty(Skill.NORMAL, 15, 11, 9, 8).restoreBoard(data));
+        assertFalse("truncated", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8)
+                .restoreBoard(Arrays.copyOf(data, data.length - 1)));
+
+        byte[] bad = data.clone();
+        bad[0] ^= 1;
+        assertFalse("marker", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(bad));
+        bad = data.clone();
+        bad[1] ^= 1;
+        assertFalse("version", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(bad));
+
+        // A focus off the saved grid, whether or not the board is rotated to fit
+        bad = data.clone();
+        bad[16] = 0;
+        bad[17] = 15;
+        assertFalse("focus x", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(bad));
+        assertFalse("focus x", TestBoards.empty(Skill.NORMAL, 11, 15, 8, 11).restoreBoard(bad));
+        bad = data.clone();
+        bad[18] = (byte) 0xff;
+        bad[19] = (byte) 0xff;
+        assertFalse("focus y", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(bad));
+        assertFalse("focus y", TestBoards.empty(Skill.NORMAL, 11, 15, 8, 11).restoreBoard(bad));
+
+        // The margins are fine
+        bad = data.clone();
+        bad[16] = bad[17] = bad[18] = bad[19] = 0;
+        assertTrue("margin", TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8).restoreBoard(bad));
+    }
+
+    @Test
+    public void solutionFromSeed()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board net = TestBoards.solved(sk, 15, 11, 11, 8, 5);
+            Board board = TestBoards.scrambled(sk, 15, 11, 11, 8, 5);
+
+            // Straight, and onto a rotated screen
+            Board solution = TestBoards.empty(sk, 15, 11, 11, 8);
+            assertTrue(sk + " solution", solution.restoreSolution(board.saveBoard()));
+            for (int y = 0; y < net.getGridHeight(); ++y)
+                for (int x = 0; x < net.getGridWidth(); ++x)
+                    assertEquals(sk + " tile " + x + "," + y, net.dirs(x, y), solution.dirs(x, y));
+
+            Board rotated = TestBoards.empty(sk, 11, 15, 8, 11);
+            assertTrue(sk + " rotated", rotated.restoreSolution(board.saveBoard()));
+            rotated.updateConnections();
+            assertTrue(sk + " rotated solved", rotated.isSolved());
+        }
+
+        // A network which didn't come from a seed can't be generated again
+        Board unseeded = TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8);
+        unseeded.generate(Skill.NORMAL, new Random(6));
+        assertFalse(unseeded.hasSeed());
+        Board solution = TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8);
+        assertFalse(solution.restoreSolution(unseeded.saveBoard()));
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Create a board with a game in progress: a generated network, scrambled, with some tiles
+     * turned, locked and blind, the focus moved, and the connections up to date.
+     *
+     * @param sk   Skill level.
+     * @param gw   Grid width.
+     * @param gh   Grid height.
+     * @param bw   Playing area width.
+     * @param bh   Playing area height.
+     * @param seed Seed for the network and the moves.
+     * @return The board.
+     */
+    private static Board played(Skill sk, int gw, int gh, int bw, int bh, long seed)
+    {
+        Board board = TestBoards.scrambled(sk, gw, gh, bw, bh, seed);
+        Random rng = new XoshiroRandom(seed);
+        for (int i = 0; i < 30; ++i)
+        {
+            int x = board.getBoardStartX() + rng.nextInt(bw);
+            int y = board.getBoardStartY() + rng.nextInt(bh);
+            switch (i % 3)
+            {
+                case 0:
+                    board.rotate(x, y, 90);
+                    break;
+                case 1:
+                    board.setLocked(x, y, true);
+                    break;
+                case 2:
+                    board.setBlind(x, y, !board.isBlind(x, y));
+                    break;
+            }
+            board.setFocus(x, y);
+        }
+        board.updateConnections();
+        return board;
+    }
+}
@@ -0,0 +1,239 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that updateConnections() keeps the connected flags exactly as a full search of the board
+ * from the server would find them, through long runs of random play, in either connectivity mode;
+ * and that it reports the tiles which flipped, and whether any were newly connected, as the game
+ * expects. The solved check and the count of unconnected tiles, which scan the bitplanes, are
+ * checked against the search too.
+ */
+public class ConnectivityTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void solvedBoardIsAllConnected()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = TestBoards.solved(sk, 12, 12, 12, 12, 1);
+            check(board, "solved " + sk);
+            assertTrue(sk + " solved", board.isSolved());
+            assertEquals(sk + " unconnected", 0, board.unconnectedCells());
+        }
+    }
+
+    @Test
+    public void incrementalMatchesFullSearch()
+    {
+        for (Skill sk : Skill.values())
+        {
+            play(TestBoards.scrambled(sk, 12, 12, 12, 12, 2), new Random(20 + sk.ordinal()), 2000);
+            play(TestBoards.scrambled(sk, 15, 11, 11, 8, 3), new Random(40 + sk.ordinal()), 2000);
+        }
+    }
+
+    @Test
+    public void bitboardMatchesFullSearch()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = TestBoards.scrambled(sk, 15, 11, 11, 8, 5);
+            board.setConnectivity(Board.Connectivity.BITBOARD);
+            board.updateConnections();
+            check(board, "bitboard " + sk);
+            play(board, new Random(100 + sk.ordinal()), 2000);
+        }
+    }
+
+    @Test
+    public void switchingModesMatchesFullSearch()
+    {
+        Random rng = new Random(120);
+        for (Skill sk : Skill.values())
+        {
+            Board board = TestBoards.scrambled(sk, 12, 12, 12, 12, 6);
+            for (int i = 0; i < 20; ++i)
+            {
+                board.setConnectivity(i % 2 == 0 ? Board.Connectivity.BITBOARD
+                                                 : Board.Connectivity.INCREMENTAL);
+                play(board, rng, 50);
+            }
+        }
+    }
+
+    @Test
+    public void restoredBoardMatchesFullSearch()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = TestBoards.scrambled(sk, 12, 12, 12, 12, 4);
+            play(board, new Random(60 + sk.ordinal()), 200);
+
+            Board restored = TestBoards.empty(sk, 12, 12, 12, 12);
+            assertTrue(restored.restoreBoard(board.saveBoard()));
+            restored.updateConnections();
+            check(restored, "restored " + sk);
+            play(restored, new Random(80 + sk.ordinal()), 500);
+        }
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Make random moves on a board: turning tiles, a few at a time, and starting and finishing
+     * their rotations, as the game does. After each batch, check the board against a full
+     * search.
+     *
+     * @param board The board.
+     * @param rng   Random number generator for the moves.
+     * @param moves Number of batches of moves to make.
+     */
+    private static void play(Board board, Random rng, int moves)
+    {
+        int w = board.getBoardWidth();
+        int h = board.getBoardHeight();
+        for (int m = 0; m < moves; ++m)
+        {
+            boolean[] before = connected(board);
+            int n = 1 + rng.nextInt(3);
+            for (int i = 0; i < n; ++i)
+            {
+                int x = board.getBoardStartX() + rng.nextInt(w);
+                int y = board.getBoardStartY() + rng.nextInt(h);
+                int op = rng.nextInt(8);
+                if (op == 0)
+                    board.setRotating(x, y, !board.isRotating(x, y));
+                else
+                    board.rotate(x, y, TURNS[op % TURNS.length]);
+            }
+            boolean gained = board.updateConnections();
+            check(board, "move " + m);
+
+            // The flipped tiles are exactly the ones which changed, and we gained if any of
+            // them is now connected
+            boolean[] after = connected(board);
+            IntList flipped = board.getFlippedTiles();
+            boolean[] seen = new boolean[after.length];
+            boolean anyGained = false;
+            for (int i = 0; i < flipped.size(); ++i)
+            {
+                int t = flipped.get(i);
+                assertTrue("flipped " + t + " at move " + m, before[t] != after[t]);
+                assertFalse("flipped twice " + t, seen[t]);
+                seen[t] = true;
+                anyGained |= after[t];
+            }
+            for (int t = 0; t < after.length; ++t)
+                assertEquals("unreported flip " + t + " at move " + m,
+                             before[t] != after[t], seen[t]);
+            assertEquals("gained at move " + m, anyGained, gained);
+        }
+    }
+
+    /**
+     * Check the board's connected flags, solved state and count of unconnected tiles against a
+     * full search from the server.
+     *
+     * @param board The board; its connections must be up to date.
+     * @param what  What's being checked, for the messages.
+     */
+    private static void check(Board board, String what)
+    {
+        boolean[] want = search(board);
+        int gw = board.getGridWidth();
+        boolean solved = true;
+        int unconnected = 0;
+        for (int y = 0; y < board.getGridHeight(); ++y)
+        {
+            for (int x = 0; x < gw; ++x)
+            {
+                assertEquals(what + ": tile " + x + "," + y,
+                             want[y * gw + x], board.isConnected(x, y));
+                int d = board.dirs(x, y).ordinal();
+                if (d == CellDirection.FREE.ordinal() || d == CellDirection.NONE.ordinal())
+                    continue;
+                if (!want[y * gw + x])
+                {
+                    ++unconnected;
+                    if (Integer.bitCount(d) == 1)
+                        solved = false;
+                }
+            }
+        }
+        assertEquals(what + ": solved", solved, board.isSolved());
+        assertEquals(what + ": unconnected", unconnected, board.unconnectedCells());
+    }
+
+    /**
+     * Find the tiles connected to the server the simple way: a breadth-first search of the whole
+     * board, over links which both tiles make. A rotating tile has no connections.
+     *
+     * @param board The board.
+     * @return For each tile index, whether it's connected.
+     */
+    private static boolean[] search(Board board)
+    {
+        int gw = board.getGridWidth();
+        boolean[] reached = new boolean[gw * board.getGridHeight()];
+        int[] queue = new int[reached.length];
+        int head = 0;
+        int tail = 0;
+        int root = board.index(board.getRootX(), board.getRootY());
+        if (!board.isRotating(board.getRootX(), board.getRootY()))
+        {
+            reached[root] = true;
+            queue[tail++] = root;
+        }
+        while (head < tail)
+        {
+            int t = queue[head++];
+            int x = t % gw;
+            int y = t / gw;
+            for (CellDirection d : CellDirection.cardinals)
+            {
+                int n = board.next(x, y, d);
+                if (n < 0 || reached[n] || !board.hasConnection(x, y, d)
+                        || !board.hasConnection(n % gw, n / gw, d.reverse()))
+                    continue;
+                reached[n] = true;
+                queue[tail++] = n;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Get the board's connected flags.
+     *
+     * @param board The board.
+     * @return For each tile index, its connected flag.
+     */
+    private static boolean[] connected(Board board)
+    {
+        int gw = board.getGridWidth();
+        boolean[] c = new boolean[gw * board.getGridHeight()];
+        for (int t = 0; t < c.length; ++t)
+            c[t] = board.isConnected(t % gw, t / gw);
+        return c;
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // The turns a random move makes, in degrees
+    private static final int[] TURNS = { -90, 90, 180 };
+}
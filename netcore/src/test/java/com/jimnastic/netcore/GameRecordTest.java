@@ -0,0 +1,195 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a game record saves and reads back exactly, that damaged saved records are
+ * refused, and that replaying a record builds the same puzzle and ends on the same board as the
+ * game that was recorded.
+ */
+public class GameRecordTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void roundTrip()
+    {
+        for (Skill sk : Skill.values())
+        {
+            GameRecord rec = new GameRecord(TestBoards.scrambled(sk, 15, 11, 11, 8, 1));
+            record(rec, new XoshiroRandom(10 + sk.ordinal()), 500);
+            rec.add(1L << 40, MoveLog.entry(15 * 11 - 1, 3, true));
+
+            GameRecord back = GameRecord.restore(rec.save());
+            assertNotNull(sk + " restore", back);
+            assertEquals(rec.getSkill(), back.getSkill());
+            assertEquals(rec.getGridWidth(), back.getGridWidth());
+            assertEquals(rec.getGridHeight(), back.getGridHeight());
+            assertEquals(rec.getBoardWidth(), back.getBoardWidth());
+            assertEquals(rec.getBoardHeight(), back.getBoardHeight());
+            assertEquals(rec.getSeed(), back.getSeed());
+            assertEquals(rec.size(), back.size());
+            for (int i = 0; i < rec.size(); ++i)
+            {
+                assertEquals(sk + " move " + i, rec.move(i), back.move(i));
+                assertEquals(sk + " time " + i, rec.time(i), back.time(i));
+            }
+            assertEquals(rec.duration(), back.duration());
+            assertArrayEquals(sk + " saved again", rec.save(), back.save());
+        }
+    }
+
+    @Test
+    public void emptyRoundTrip()
+    {
+        GameRecord rec = new GameRecord(TestBoards.scrambled(Skill.NOVICE, 9, 9, 5, 5, 2));
+        GameRecord back = GameRecord.restore(rec.save());
+        assertNotNull(back);
+        assertEquals(0, back.size());
+        assertEquals(rec.getSeed(), back.getSeed());
+    }
+
+    @Test
+    public void timesNeverGoBack()
+    {
+        GameRecord rec = new GameRecord(TestBoards.scrambled(Skill.NORMAL, 9, 9, 9, 9, 3));
+        rec.add(-5, MoveLog.entry(0, 1, false));
+        rec.add(100, MoveLog.entry(1, 1, false));
+        rec.add(50, MoveLog.entry(2, 1, false));
+        rec.add(120, MoveLog.entry(3, 1, false));
+        assertEquals(0, rec.time(0));
+        assertEquals(100, rec.time(1));
+        assertEquals(100, rec.time(2));
+        assertEquals(120, rec.time(3));
+        assertEquals(120, GameRecord.restore(rec.save()).time(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void moveOutOfRange()
+    {
+        new GameRecord(TestBoards.scrambled(Skill.NORMAL, 9, 9, 9, 9, 3)).move(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boardWithoutSeed()
+    {
+        Board board = TestBoards.empty(Skill.NORMAL, 9, 9, 9, 9);
+        board.generate(Skill.NORMAL, new Random(4));
+        new GameRecord(board);
+    }
+
+    @Test
+    public void refusesDamagedRecords()
+    {
+        GameRecord rec = new GameRecord(TestBoards.scrambled(Skill.EXPERT, 15, 11, 11, 8, 5));
+        record(rec, new XoshiroRandom(50), 100);
+        byte[] data = rec.save();
+
+        assertNull("null", GameRecord.restore(null));
+        assertNull("header", GameRecord.restore(Arrays.copyOf(data, 19)));
+        assertNull("truncated", GameRecord.restore(Arrays.copyOf(data, data.length - 1)));
+
+        byte[] bad = data.clone();
+        bad[0] ^= 1;
+        assertNull("magic", GameRecord.restore(bad));
+        bad = data.clone();
+        bad[1] ^= 1;
+        assertNull("version", GameRecord.restore(bad));
+        bad = data.clone();
+        bad[2] = (byte) Skill.values().length;
+        assertNull("skill", GameRecord.restore(bad));
+        bad = data.clone();
+        bad[9] = 16;
+        assertNull("area", GameRecord.restore(bad));
+
+        // A move on a tile outside the grid
+        GameRecord off = new GameRecord(TestBoards.scrambled(Skill.EXPERT, 15, 11, 11, 8, 5));
+        off.add(0, MoveLog.entry(15 * 11, 1, false));
+        assertNull("tile", GameRecord.restore(off.save()));
+    }
+
+    @Test
+    public void puzzleIsBuiltAgain()
+    {
+        for (Skill sk : Skill.values())
+        {
+            PuzzleQueue.Puzzle puzzle = TestBoards.puzzle(sk, 15, 11, 11, 8, 6);
+            PuzzleQueue.Puzzle again = new GameRecord(puzzle.scrambled).puzzle();
+            assertArrayEquals(sk + " solution", puzzle.solution.saveBoard(),
+                              again.solution.saveBoard());
+            assertArrayEquals(sk + " scramble", puzzle.scrambled.saveBoard(),
+                              again.scrambled.saveBoard());
+        }
+    }
+
+    @Test
+    public void replayEndsOnSameBoard()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = new Board(TestBoards.puzzle(sk, 15, 11, 11, 8, 7).scrambled);
+            GameRecord rec = new GameRecord(board);
+            Random rng = new XoshiroRandom(70 + sk.ordinal());
+            for (int i = 0; i < 300; ++i)
+            {
+                int m = move(board, rng);
+                rec.add(i * 10, m);
+                GameRecord.apply(board, m);
+            }
+
+            Board played = rec.play();
+            assertArrayEquals(sk + " replayed", board.saveBoard(), played.saveBoard());
+            assertArrayEquals(sk + " replayed from saved", board.saveBoard(),
+                              GameRecord.restore(rec.save()).play().saveBoard());
+            assertEquals(board.unconnectedCells(), played.unconnectedCells());
+            assertEquals(board.isSolved(), played.isSolved());
+        }
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Record random moves, at random times, some of them far apart.
+     *
+     * @param rec   The record.
+     * @param rng   Random number generator for the moves.
+     * @param moves Number of moves to record.
+     */
+    private static void record(GameRecord rec, Random rng, int moves)
+    {
+        Board board = rec.puzzle().scrambled;
+        long time = 0;
+        for (int i = 0; i < moves; ++i)
+        {
+            time += rng.nextInt(8) == 0 ? rng.nextInt(1000000) : rng.nextInt(300);
+            rec.add(time, move(board, rng));
+        }
+    }
+
+    /**
+     * Make up a random move on a tile in a board's playing area.
+     *
+     * @param board The board.
+     * @param rng   Random number generator for the move.
+     * @return The move, packed by MoveLog.entry().
+     */
+    private static int move(Board board, Random rng)
+    {
+        int x = board.getBoardStartX() + rng.nextInt(board.getBoardWidth());
+        int y = board.getBoardStartY() + rng.nextInt(board.getBoardHeight());
+        boolean lock = rng.nextInt(5) == 0;
+        return MoveLog.entry(board.index(x, y), lock ? 0 : 1 + rng.nextInt(3), lock);
+    }
+}
@@ -0,0 +1,76 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a generated network uses enough of the board and carries a seed which builds it
+ * again exactly, whatever the pool's size; and that a single createNet() from a seed keeps the
+ * seed only when generate() would stop at it.
+ */
+public class GeneratorTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void seedRegeneratesTheNetwork()
+    {
+        for (int workers : new int[] { 1, 3, 16 })
+        {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try
+            {
+                Generator generator = new Generator(pool);
+                XoshiroRandom rng = new XoshiroRandom(workers);
+                for (Skill sk : Skill.values())
+                {
+                    Board template = TestBoards.empty(sk, 15, 11, 11, 8);
+                    Board net = generator.generate(template, rng);
+                    assertNotNull(sk + " network", net);
+                    assertTrue(sk + " seed", net.hasSeed());
+                    assertTrue(sk + " cells", net.activeCells() >= template.minActiveCells());
+
+                    net.updateConnections();
+                    Board again = TestBoards.solved(sk, 15, 11, 11, 8, net.getSeed());
+                    assertArrayEquals(sk + " again", net.saveBoard(), again.saveBoard());
+                }
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void singleTryKeepsSeedOnlyIfGoodEnough()
+    {
+        int kept = 0;
+        for (long seed = 1; seed <= 40; ++seed)
+        {
+            Board once = TestBoards.empty(Skill.EXPERT, 9, 9, 9, 9);
+            int cells = once.createNet(Skill.EXPERT, seed);
+            Board full = TestBoards.solved(Skill.EXPERT, 9, 9, 9, 9, seed);
+            once.updateConnections();
+            if (cells >= once.minActiveCells())
+            {
+                assertTrue("seed " + seed, once.hasSeed());
+                assertEquals("seed " + seed, seed, once.getSeed());
+                assertArrayEquals("seed " + seed, full.saveBoard(), once.saveBoard());
+                ++kept;
+            }
+            else
+                assertFalse("seed " + seed, once.hasSeed());
+        }
+        assertTrue(kept > 0);
+    }
+}
@@ -0,0 +1,148 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that following the hint engine's hints, turning each hinted tile the way quarters()
+ * says, solves a scrambled board at every skill level; that a tile is never hinted twice over;
+ * that tiles part way through a turn are left alone; and that the solution the engine found,
+ * which the autosolver plays, is a solved board.
+ */
+public class HintEngineTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void hintsSolveTheBoard()
+    {
+        for (Skill sk : Skill.values())
+        {
+            for (long seed = 1; seed <= 3; ++seed)
+            {
+                follow(TestBoards.puzzle(sk, 11, 11, 9, 9, seed), sk + " 9x9 seed " + seed);
+                follow(TestBoards.puzzle(sk, 15, 11, 11, 8, seed), sk + " 11x8 seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void puzzleHasHints()
+    {
+        PuzzleQueue.Puzzle puzzle = TestBoards.puzzle(Skill.EXPERT, 15, 11, 11, 8, 4);
+        assertNotNull(puzzle.hints);
+        assertTrue(puzzle.hints.isSolved());
+        assertNotEquals(HintEngine.NONE, puzzle.hints.hint(puzzle.scrambled));
+    }
+
+    @Test
+    public void rotatingTilesAreLeftAlone()
+    {
+        PuzzleQueue.Puzzle puzzle = TestBoards.puzzle(Skill.NORMAL, 15, 11, 11, 8, 5);
+        Board board = new Board(puzzle.scrambled);
+        int gw = board.getGridWidth();
+
+        // A tile which is turning isn't hinted; another one is
+        int hint = puzzle.hints.hint(board);
+        int tile = HintEngine.tile(hint);
+        board.setRotating(tile % gw, tile / gw, true);
+        int other = puzzle.hints.hint(board);
+        assertNotEquals(HintEngine.NONE, other);
+        assertNotEquals(tile, HintEngine.tile(other));
+
+        // With every tile turning, there's nothing to suggest
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+                board.setRotating(x, y, true);
+        assertEquals(HintEngine.NONE, puzzle.hints.hint(board));
+    }
+
+    @Test
+    public void quartersTurnToTheHint()
+    {
+        PuzzleQueue.Puzzle puzzle = TestBoards.puzzle(Skill.EXPERT, 15, 11, 11, 8, 6);
+        Board board = new Board(puzzle.scrambled);
+        int gw = board.getGridWidth();
+        int hint = puzzle.hints.hint(board);
+        int x = HintEngine.tile(hint) % gw;
+        int y = HintEngine.tile(hint) / gw;
+
+        // Whichever way the tile faces, the turn takes it to the hinted way
+        for (int a = 0; a < 4; ++a)
+        {
+            int q = HintEngine.quarters(board, hint);
+            assertEquals(HintEngine.dirs(hint), board.dirs(x, y).rotated(q * 90));
+            assertEquals(board.dirs(x, y) == HintEngine.dirs(hint), q == 0);
+            board.rotate(x, y, 90);
+        }
+    }
+
+    @Test
+    public void solutionSolvesTheBoard()
+    {
+        for (Skill sk : Skill.values())
+        {
+            PuzzleQueue.Puzzle puzzle = TestBoards.puzzle(sk, 15, 11, 11, 8, 7);
+            Board board = new Board(puzzle.scrambled);
+            int gw = board.getGridWidth();
+            int hint = puzzle.hints.hint(board);
+            board.setRotating(HintEngine.tile(hint) % gw, HintEngine.tile(hint) / gw, true);
+            byte[] before = board.saveBoard();
+
+            Board solution = puzzle.hints.getSolution(board);
+            assertArrayEquals(sk + " board left alone", before, board.saveBoard());
+            solution.updateConnections();
+            assertTrue(sk + " solved", solution.isSolved());
+            assertEquals(sk + " unconnected", 0, solution.unconnectedCells());
+
+            // The autosolver can make its moves from it
+            IntList moves = board.solve(solution, new XoshiroRandom(sk.ordinal()));
+            assertNotNull(sk + " moves", moves);
+        }
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Play a puzzle by following its hints until there are none, turning each hinted tile as
+     * the player would be told to, and check that this solves it. A tile which has been put
+     * where the hint said is never hinted again, so it takes no more hints than there are tiles.
+     *
+     * @param puzzle The puzzle.
+     * @param what   What's being played, for the messages.
+     */
+    private static void follow(PuzzleQueue.Puzzle puzzle, String what)
+    {
+        assertTrue(what + ": engine solved", puzzle.hints.isSolved());
+        Board board = new Board(puzzle.scrambled);
+        board.updateConnections();
+        int gw = board.getGridWidth();
+        boolean[] hinted = new boolean[gw * board.getGridHeight()];
+        for (int hint; (hint = puzzle.hints.hint(board)) != HintEngine.NONE; )
+        {
+            int tile = HintEngine.tile(hint);
+            assertFalse(what + ": tile " + tile + " hinted again", hinted[tile]);
+            hinted[tile] = true;
+
+            int x = tile % gw;
+            int y = tile / gw;
+            int q = HintEngine.quarters(board, hint);
+            assertTrue(what + ": quarters " + q, q >= 1 && q <= 3);
+            board.rotate(x, y, q * 90);
+            assertEquals(what + ": turned", HintEngine.dirs(hint), board.dirs(x, y));
+            board.updateConnections();
+        }
+        assertTrue(what + ": solved", board.isSolved());
+        assertEquals(what + ": unconnected", 0, board.unconnectedCells());
+    }
+}
@@ -0,0 +1,230 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the move log: packing, undo and redo in order without ever changing a logged move, and
+ * saving and restoring it, onto the same board or one rotated to fit a rotated screen.
+ */
+public class MoveLogTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void packing()
+    {
+        for (int tile : new int[] { 0, 1, 77, 4095 })
+        {
+            for (int q = 0; q < 4; ++q)
+            {
+                for (int lock = 0; lock < 2; ++lock)
+                {
+                    int m = MoveLog.entry(tile, q, lock != 0);
+                    assertEquals(tile, MoveLog.tile(m));
+                    assertEquals(q, MoveLog.quarters(m));
+                    assertEquals(lock != 0, MoveLog.isLock(m));
+                }
+            }
+        }
+        assertEquals(0, MoveLog.angle(0));
+        assertEquals(90, MoveLog.angle(1));
+        assertEquals(180, MoveLog.angle(2));
+        assertEquals(-90, MoveLog.angle(3));
+    }
+
+    @Test
+    public void undoAndRedoInOrder()
+    {
+        MoveLog log = new MoveLog(1);
+        assertFalse(log.canUndo());
+        assertFalse(log.canRedo());
+
+        // Moves on the same tile stay separate moves
+        log.rotate(5, 1);
+        log.rotate(5, 1);
+        log.toggleLock(5);
+        log.toggleLock(5);
+        log.rotate(5, 3);
+        int[] made = {
+                MoveLog.entry(5, 1, false), MoveLog.entry(5, 1, false), MoveLog.entry(5, 0, true),
+                MoveLog.entry(5, 0, true), MoveLog.entry(5, 3, false)
+        };
+        for (int i = made.length - 1; i >= 0; --i)
+            assertEquals("undo " + i, made[i], log.undo());
+        assertFalse(log.canUndo());
+        for (int m : made)
+            assertEquals(m, log.redo());
+        assertFalse(log.canRedo());
+    }
+
+    @Test
+    public void newMoveDropsUndone()
+    {
+        MoveLog log = new MoveLog(4);
+        for (int i = 0; i < 100; ++i)
+            log.rotate(i, 1);
+        for (int i = 0; i < 50; ++i)
+            log.undo();
+        assertTrue(log.canRedo());
+
+        log.rotate(7, 2);
+        assertFalse(log.canRedo());
+        assertEquals(MoveLog.entry(7, 2, false), log.undo());
+        assertEquals(MoveLog.entry(49, 1, false), log.undo());
+    }
+
+    @Test
+    public void wholeTurnIsNotAMove()
+    {
+        MoveLog log = new MoveLog(4);
+        log.rotate(3, 1);
+        log.undo();
+        log.rotate(3, 0);
+        log.rotate(3, 4);
+        assertFalse(log.canUndo());
+        assertTrue("undone move kept", log.canRedo());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void undoWithNothingToUndo()
+    {
+        new MoveLog(4).undo();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void redoWithNothingToRedo()
+    {
+        MoveLog log = new MoveLog(4);
+        log.rotate(1, 1);
+        log.redo();
+    }
+
+    @Test
+    public void saveRestore()
+    {
+        Board board = TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8);
+        MoveLog log = play(board);
+        int[] data = log.save(board);
+
+        MoveLog restored = new MoveLog(1);
+        assertTrue(restored.restore(data, board));
+        assertEquals(log.canRedo(), restored.canRedo());
+        while (log.canRedo())
+            assertEquals(log.redo(), restored.redo());
+        assertFalse(restored.canRedo());
+        while (log.canUndo())
+            assertEquals(log.undo(), restored.undo());
+        assertFalse(restored.canUndo());
+    }
+
+    @Test
+    public void restoreRotated()
+    {
+        for (Skill sk : Skill.values())
+        {
+            Board board = TestBoards.empty(sk, 15, 11, 11, 8);
+            MoveLog log = play(board);
+            int[] data = log.save(board);
+
+            // Restore the board and the log onto a rotated screen. Each move must land on the
+            // tile which the board put the moved tile on; lock the moved tile to find it
+            while (log.canUndo())
+            {
+                int m = log.undo();
+                int x = MoveLog.tile(m) % board.getGridWidth();
+                int y = MoveLog.tile(m) / board.getGridWidth();
+                boolean locked = board.isLocked(x, y);
+                board.setLocked(x, y, true);
+                Board rotated = TestBoards.empty(sk, 11, 15, 8, 11);
+                assertTrue(rotated.restoreBoard(board.saveBoard()));
+                board.setLocked(x, y, locked);
+
+                MoveLog moved = new MoveLog(4);
+                assertTrue(moved.restore(data, rotated));
+                int at = MoveLog.tile(m);
+                int n = 0;
+                for (MoveLog orig = restore(data, board); orig.canUndo(); ++n)
+                {
+                    int o = orig.undo();
+                    int r = moved.undo();
+                    assertEquals(MoveLog.quarters(o), MoveLog.quarters(r));
+                    assertEquals(MoveLog.isLock(o), MoveLog.isLock(r));
+                    if (MoveLog.tile(o) == at)
+                    {
+                        int t = MoveLog.tile(r);
+                        assertTrue(sk + " move " + n, rotated.isLocked(t % 11, t / 11));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void refusesWhatDoesNotFit()
+    {
+        Board board = TestBoards.empty(Skill.NORMAL, 15, 11, 11, 8);
+        int[] data = play(board).save(board);
+
+        MoveLog log = new MoveLog(4);
+        assertFalse(log.restore(null, board));
+        assertFalse(log.restore(new int[3], board));
+        assertFalse(log.restore(data, TestBoards.empty(Skill.NORMAL, 15, 11, 9, 8)));
+        assertFalse(log.canUndo() || log.canRedo());
+
+        int[] bad = data.clone();
+        bad[0] = 99;
+        assertFalse("version", log.restore(bad, board));
+        bad = data.clone();
+        bad[5] = data.length;
+        assertFalse("cursor", log.restore(bad, board));
+        assertFalse(log.canUndo() || log.canRedo());
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Log some moves on tiles all over a board's playing area, and undo a few of them.
+     *
+     * @param board The board.
+     * @return The log.
+     */
+    private static MoveLog play(Board board)
+    {
+        MoveLog log = new MoveLog(4);
+        int i = 0;
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                if (i++ % 3 == 0)
+                    log.toggleLock(board.index(x, y));
+                log.rotate(board.index(x, y), 1 + i % 3);
+            }
+        }
+        for (i = 0; i < 10; ++i)
+            log.undo();
+        return log;
+    }
+
+    /**
+     * Restore a saved log.
+     *
+     * @param data  The saved log.
+     * @param board The board to restore it onto.
+     * @return The log.
+     */
+    private static MoveLog restore(int[] data, Board board)
+    {
+        MoveLog log = new MoveLog(4);
+        assertTrue(log.restore(data, board));
+        return log;
+    }
+}
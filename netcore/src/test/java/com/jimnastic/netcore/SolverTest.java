@@ -0,0 +1,117 @@
+package com.jimnastic.netcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the solver works out a solution from a scrambled board alone, at every skill level,
+ * and that its constraints never rule out the layout the board was generated from.
+ */
+public class SolverTest
+{
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    @Test
+    public void solvesScrambledBoards()
+    {
+        for (Skill sk : Skill.values())
+        {
+            for (long seed = 1; seed <= 5; ++seed)
+            {
+                solve(TestBoards.scrambled(sk, 9, 9, 9, 9, seed), sk + " 9x9 seed " + seed);
+                solve(TestBoards.scrambled(sk, 15, 11, 11, 8, seed), sk + " 11x8 seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void settleKeepsGeneratedLayout()
+    {
+        for (Skill sk : Skill.values())
+        {
+            for (long seed = 1; seed <= 5; ++seed)
+            {
+                Board net = TestBoards.solved(sk, 15, 11, 11, 8, seed);
+                Board board = TestBoards.scrambled(sk, 15, 11, 11, 8, seed);
+
+                Solver solver = new Solver(board);
+                assertTrue(sk + " settle", solver.settle());
+                for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+                {
+                    for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+                    {
+                        int opts = solver.getOptions(x, y);
+                        assertTrue(sk + " options " + x + "," + y,
+                                   (opts & 1 << net.dirs(x, y).ordinal()) != 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void noSolutionBeforeSolve()
+    {
+        assertNull(new Solver(TestBoards.scrambled(Skill.NORMAL, 9, 9, 9, 9, 1)).getSolution());
+    }
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Solve a board, and check the solution: each tile is a turn of the tile on the board, every
+     * tile is connected to the server, and the network has no loops.
+     *
+     * @param board The board to solve.
+     * @param what  What's being solved, for the messages.
+     */
+    private static void solve(Board board, String what)
+    {
+        Solver solver = new Solver(board);
+        assertTrue(what + ": solve", solver.solve());
+        Board solution = solver.getSolution();
+        solution.updateConnections();
+        assertTrue(what + ": solved", solution.isSolved());
+        assertEquals(what + ": unconnected", 0, solution.unconnectedCells());
+
+        int gw = board.getGridWidth();
+        int tiles = 0;
+        int links = 0;
+        for (int y = board.getBoardStartY(); y < board.getBoardEndY(); ++y)
+        {
+            for (int x = board.getBoardStartX(); x < board.getBoardEndX(); ++x)
+            {
+                CellDirection d = solution.dirs(x, y);
+                boolean turned = false;
+                for (int a = 0; a < 360; a += 90)
+                    turned |= board.dirs(x, y).rotated(a) == d;
+                assertTrue(what + ": tile " + x + "," + y + " turned", turned);
+                if (d == CellDirection.FREE)
+                    continue;
+
+                ++tiles;
+                for (CellDirection c : FORWARD)
+                {
+                    int n = solution.next(x, y, c);
+                    if (n >= 0 && solution.hasConnection(x, y, c)
+                            && solution.hasConnection(n % gw, n / gw, c.reverse()))
+                        ++links;
+                }
+            }
+        }
+        assertEquals(what + ": loops", tiles - 1, links);
+    }
+
+    // ******************************************************************** //
+    // Class Data.
+    // ******************************************************************** //
+
+    // The directions a link is counted in, from its left or upper end
+    private static final CellDirection[] FORWARD = { CellDirection._R__, CellDirection.__D_ };
+}
@@ -0,0 +1,91 @@
+package com.jimnastic.netcore;
+
+/**
+ * Helpers for setting up boards in the tests. Everything is seeded, so that each run checks the
+ * same layouts.
+ */
+final class TestBoards
+{
+    // ******************************************************************** //
+    // Board Setup.
+    // ******************************************************************** //
+
+    /**
+     * Create a board with nothing on it, ready for generate() or a restore.
+     *
+     * @param sk Skill level for the game.
+     * @param gw Grid width, in tiles.
+     * @param gh Grid height, in tiles.
+     * @param bw Playing area width, in tiles.
+     * @param bh Playing area height, in tiles.
+     * @return The new, empty board.
+     */
+    static Board empty(Skill sk, int gw, int gh, int bw, int bh)
+    {
+        Board board = new Board(gw, gh);
+        board.reset(sk, bw, bh);
+        return board;
+    }
+
+    /**
+     * Create a board with a network generated from a seed, in its solved state, with its
+     * connected flags up to date. The board keeps the seed, as a game's board does.
+     *
+     * @param sk   Skill level for the game.
+     * @param gw   Grid width, in tiles.
+     * @param gh   Grid height, in tiles.
+     * @param bw   Playing area width, in tiles.
+     * @param bh   Playing area height, in tiles.
+     * @param seed Seed for the network.
+     * @return The new, solved board.
+     */
+    static Board solved(Skill sk, int gw, int gh, int bw, int bh, long seed)
+    {
+        Board board = empty(sk, gw, gh, bw, bh);
+        board.generate(sk, seed);
+        board.updateConnections();
+        return board;
+    }
+
+    /**
+     * Create a board with a network generated from a seed, scrambled from the same seed, with
+     * its connected flags up to date. This is the same network as solved() gives for the seed.
+     *
+     * @param sk   Skill level for the game.
+     * @param gw   Grid width, in tiles.
+     * @param gh   Grid height, in tiles.
+     * @param bw   Playing area width, in tiles.
+     * @param bh   Playing area height, in tiles.
+     * @param seed Seed for the network and the scramble.
+     * @return The new, scrambled board.
+     */
+    static Board scrambled(Skill sk, int gw, int gh, int bw, int bh, long seed)
+    {
+        Board board = solved(sk, gw, gh, bw, bh, seed);
+        board.scramble(sk, new XoshiroRandom(seed));
+        board.updateConnections();
+        return board;
+    }
+
+    /**
+     * Create a puzzle from a network generated from a seed, as the puzzle queue does.
+     *
+     * @param sk   Skill level for the game.
+     * @param gw   Grid width, in tiles.
+     * @param gh   Grid height, in tiles.
+     * @param bw   Playing area width, in tiles.
+     * @param bh   Playing area height, in tiles.
+     * @param seed Seed for the network.
+     * @return The new puzzle.
+     */
+    static PuzzleQueue.Puzzle puzzle(Skill sk, int gw, int gh, int bw, int bh, long seed)
+    {
+        Board net = empty(sk, gw, gh, bw, bh);
+        net.generate(sk, seed);
+        return new PuzzleQueue.Puzzle(net);
+    }
+
+    private TestBoards()
+    {
+    }
+}